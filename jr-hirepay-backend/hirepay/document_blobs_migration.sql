@@ -0,0 +1,13 @@
+-- Content-addressed document store
+-- Identical uploads share one blob file; ref_count tracks how many documents point at it.
+-- Only used when storage.dedup=true.
+
+CREATE TABLE IF NOT EXISTS document_blobs (
+    sha256 VARCHAR(64) PRIMARY KEY,
+    location VARCHAR(512) NOT NULL,
+    size BIGINT NOT NULL,
+    ref_count INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_document_blobs_location ON document_blobs (location);
@@ -0,0 +1,19 @@
+-- Per (procedure, document type) version slots
+-- current_version is the last version handed out; current_document_id points at that version.
+-- Slots are created on the next upload of their type; this backfills existing procedures.
+
+CREATE TABLE IF NOT EXISTS document_slots (
+    id BIGSERIAL PRIMARY KEY,
+    procedure_id BIGINT NOT NULL REFERENCES procedures (id),
+    doc_reference VARCHAR(64) NOT NULL,
+    current_version INTEGER NOT NULL,
+    current_document_id BIGINT REFERENCES procedure_documents (id),
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_document_slots_proc_docref UNIQUE (procedure_id, doc_reference)
+);
+
+INSERT INTO document_slots (procedure_id, doc_reference, current_version, current_document_id)
+SELECT DISTINCT ON (procedure_id, doc_reference) procedure_id, doc_reference, version, id
+FROM procedure_documents
+ORDER BY procedure_id, doc_reference, version DESC
+ON CONFLICT (procedure_id, doc_reference) DO NOTHING;
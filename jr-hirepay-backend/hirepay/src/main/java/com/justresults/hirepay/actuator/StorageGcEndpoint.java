@@ -0,0 +1,26 @@
+package com.justresults.hirepay.actuator;
+
+import com.justresults.hirepay.business.services.StorageReconciliationService;
+import com.justresults.hirepay.dto.StorageDTOs.ReconciliationReport;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * /actuator/storagegc: result of the last storage reconciliation run.
+ */
+@Component
+@Endpoint(id = "storagegc")
+public class StorageGcEndpoint {
+
+    private final StorageReconciliationService reconciliationService;
+
+    public StorageGcEndpoint(StorageReconciliationService reconciliationService) {
+        this.reconciliationService = reconciliationService;
+    }
+
+    @ReadOperation
+    public ReconciliationReport lastReport() {
+        return reconciliationService.getLastReport();
+    }
+}
@@ -0,0 +1,56 @@
+package com.justresults.hirepay.actuator;
+
+import com.justresults.hirepay.util.StorageHealthMonitor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleFunction;
+
+/**
+ * "storage" component of /actuator/health: free space and inodes of the storage volume and
+ * rolling write/read latency percentiles. DEGRADED while a storage.health threshold is
+ * crossed; downloads keep working then, but uploads are refused or queued.
+ */
+@Component
+public class StorageHealthIndicator implements HealthIndicator {
+
+    public static final Status DEGRADED = new Status("DEGRADED", "Uploads are being refused or queued");
+
+    private final StorageHealthMonitor monitor;
+
+    public StorageHealthIndicator(StorageHealthMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public Health health() {
+        List<String> problems = monitor.getProblems();
+        StorageHealthMonitor.InodeUsage inodes = monitor.getInodes();
+        Health.Builder health = problems.isEmpty() ? Health.up() : Health.status(DEGRADED);
+        return health
+                .withDetail("path", monitor.getRoot().toString())
+                .withDetail("usableBytes", monitor.getUsableSpace())
+                .withDetail("totalBytes", monitor.getTotalSpace())
+                .withDetail("inodes", inodes != null
+                        ? Map.of("total", inodes.total(), "free", inodes.free())
+                        : "unknown")
+                .withDetail("writeLatencyMsPerMiB", percentiles(monitor::getWriteLatency))
+                .withDetail("readLatencyMs", percentiles(monitor::getReadLatency))
+                .withDetail("problems", problems)
+                .build();
+    }
+
+    private static Map<String, Long> percentiles(DoubleFunction<Duration> latency) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("p50", latency.apply(0.5).toMillis());
+        values.put("p95", latency.apply(0.95).toMillis());
+        values.put("p99", latency.apply(0.99).toMillis());
+        return values;
+    }
+}
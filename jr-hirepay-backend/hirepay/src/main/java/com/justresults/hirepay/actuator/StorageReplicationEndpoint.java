@@ -0,0 +1,37 @@
+package com.justresults.hirepay.actuator;
+
+import com.justresults.hirepay.business.services.StorageReplicationService;
+import com.justresults.hirepay.dto.StorageDTOs.ReplicationStatus;
+import com.justresults.hirepay.dto.StorageDTOs.ResyncReport;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * /actuator/storagereplication: queue depth and lag of the storage mirror. POST to compare
+ * both stores and queue whatever the mirror is missing, including writes whose queue entry
+ * could not be saved. Like every actuator endpoint but health and info, it requires ADMIN.
+ */
+@Component
+@Endpoint(id = "storagereplication")
+public class StorageReplicationEndpoint {
+
+    private final StorageReplicationService replicationService;
+
+    public StorageReplicationEndpoint(StorageReplicationService replicationService) {
+        this.replicationService = replicationService;
+    }
+
+    @ReadOperation
+    public ReplicationStatus status() {
+        return replicationService.getStatus();
+    }
+
+    @WriteOperation
+    public ResyncReport resync() throws IOException {
+        return replicationService.resync();
+    }
+}
@@ -0,0 +1,26 @@
+package com.justresults.hirepay.actuator;
+
+import com.justresults.hirepay.business.services.StorageScrubService;
+import com.justresults.hirepay.dto.StorageDTOs.ScrubReport;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * /actuator/storagescrub: missing and corrupt documents found by the last integrity scrub.
+ */
+@Component
+@Endpoint(id = "storagescrub")
+public class StorageScrubEndpoint {
+
+    private final StorageScrubService scrubService;
+
+    public StorageScrubEndpoint(StorageScrubService scrubService) {
+        this.scrubService = scrubService;
+    }
+
+    @ReadOperation
+    public ScrubReport lastReport() {
+        return scrubService.getLastReport();
+    }
+}
@@ -0,0 +1,36 @@
+package com.justresults.hirepay.actuator;
+
+import com.justresults.hirepay.business.services.StorageQuotaService;
+import com.justresults.hirepay.dto.StorageDTOs.StorageUsageReport;
+import com.justresults.hirepay.dto.StorageDTOs.UsageEntry;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * /actuator/storageusage: largest uploaders and procedures by stored bytes, with their
+ * quotas. /actuator/storageusage/{owner} looks up one email or procedure uuid.
+ */
+@Component
+@Endpoint(id = "storageusage")
+public class StorageUsageEndpoint {
+
+    private final StorageQuotaService quotaService;
+
+    public StorageUsageEndpoint(StorageQuotaService quotaService) {
+        this.quotaService = quotaService;
+    }
+
+    @ReadOperation
+    public StorageUsageReport usage() {
+        return quotaService.getUsage();
+    }
+
+    @ReadOperation
+    public List<UsageEntry> usageOf(@Selector String owner) {
+        return quotaService.getUsage(owner);
+    }
+}
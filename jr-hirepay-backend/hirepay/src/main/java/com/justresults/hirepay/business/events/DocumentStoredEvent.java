@@ -0,0 +1,8 @@
+package com.justresults.hirepay.business.events;
+
+/**
+ * Published when document bytes have been committed to storage. Listeners that need the
+ * document row should run after the surrounding transaction commits.
+ */
+public record DocumentStoredEvent(String location, String sha256, String contentType) {
+}
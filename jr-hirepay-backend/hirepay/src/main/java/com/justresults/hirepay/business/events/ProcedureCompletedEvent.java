@@ -0,0 +1,7 @@
+package com.justresults.hirepay.business.events;
+
+/**
+ * Published when a procedure reaches COMPLETED; listeners run after the transaction commits.
+ */
+public record ProcedureCompletedEvent(String procedureUuid) {
+}
@@ -0,0 +1,10 @@
+package com.justresults.hirepay.business.events;
+
+import com.justresults.hirepay.enumeration.JobStatus;
+
+/**
+ * Published when a task order job reaches COMPLETED or FAILED. documentId is null for
+ * failed jobs.
+ */
+public record TaskOrderJobFinishedEvent(String jobId, String procedureUuid, JobStatus status, Long documentId) {
+}
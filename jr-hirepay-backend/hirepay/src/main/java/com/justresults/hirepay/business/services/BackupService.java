@@ -0,0 +1,25 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.dto.StorageDTOs.BackupSummary;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+public interface BackupService {
+
+    /**
+     * A backup archive written to the response as it is produced.
+     * Fails up front if another backup is running.
+     */
+    StreamingResponseBody streamBackup(String triggeredBy);
+
+    /**
+     * Write a tar of a consistent database snapshot plus every stored object no earlier
+     * completed backup holds. The stream is finished but not closed.
+     */
+    BackupSummary writeBackup(OutputStream out, String triggeredBy) throws IOException;
+
+    List<BackupSummary> getRecentBackups();
+}
@@ -0,0 +1,489 @@
+package com.justresults.hirepay.business.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.justresults.hirepay.config.StorageProperties;
+import com.justresults.hirepay.domain.BackupObject;
+import com.justresults.hirepay.domain.BackupRun;
+import com.justresults.hirepay.dto.StorageDTOs.BackupSummary;
+import com.justresults.hirepay.enumeration.BackupStatus;
+import com.justresults.hirepay.repository.BackupObjectRepository;
+import com.justresults.hirepay.repository.BackupRunRepository;
+import com.justresults.hirepay.storage.StorageBackend;
+import com.justresults.hirepay.storage.StorageObjectInfo;
+import com.justresults.hirepay.storage.TarWriter;
+import com.justresults.hirepay.util.DocumentStorageService;
+import com.justresults.hirepay.util.MaintenanceRunner;
+import com.justresults.hirepay.util.InvalidStateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Incremental backups as one streamed tar:
+ * <pre>
+ *   db/&lt;table&gt;/part-00001.ndjson   one JSON object per row, as stored
+ *   objects/&lt;key&gt;                  stored objects no earlier completed backup holds
+ *   manifest/part-00001.ndjson      every object the snapshot references: key, size,
+ *                                   SHA-256 and the backup whose archive holds it
+ *   backup.json                     counts, the earlier backups this one needs and the
+ *                                   SHA-256 of every db and manifest part
+ * </pre>
+ * Rows are read in one read-only REPEATABLE READ transaction, so the tables agree with each
+ * other and with the object list. The transaction ends once the rows are written and the
+ * object keys are spooled to a temp file; objects are copied after it commits, so a long copy
+ * does not hold a snapshot open on the database. Stored keys never change content, so an object copied
+ * once is never copied again; restoring means unpacking the newest archive and, for each
+ * manifest line, the object from the archive it names. Objects are copied as stored:
+ * compressed, chunked and encrypted ones stay that way, so restoring encrypted documents
+ * needs the same storage.encryption.master-key.
+ * <p>
+ * Only the key list is staged on disk: rows are buffered a few megabytes at a time, objects
+ * are streamed from the backend straight into the archive. An object deleted after the
+ * snapshot was taken is listed as missing rather than failing the backup.
+ */
+@Service
+public class BackupServiceImpl implements BackupService {
+
+    private static final Logger log = LoggerFactory.getLogger(BackupServiceImpl.class);
+    private static final String FORMAT = "hirepay-backup/1";
+    private static final int PART_SIZE = 4 * 1024 * 1024;
+    private static final int FETCH_SIZE = 500;
+    private static final int RECORD_BATCH_SIZE = 200;
+    private static final DateTimeFormatter FILE_TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    // table and a stable order, so parts of successive backups diff well
+    private static final Map<String, String> TABLES = new LinkedHashMap<>();
+    static {
+        TABLES.put("users", "id");
+        TABLES.put("user_roles", "user_id, role");
+        TABLES.put("procedures", "id");
+        TABLES.put("procedure_documents", "id");
+        TABLES.put("document_slots", "id");
+        TABLES.put("document_blobs", "sha256");
+        TABLES.put("scopes", "id");
+    }
+
+    private final BackupRunRepository runRepository;
+    private final BackupObjectRepository objectRepository;
+    private final DocumentStorageService documentStorageService;
+    private final StorageBackend backend;
+    private final MaintenanceRunner maintenance;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final StorageProperties.Backup settings;
+    private final TransactionTemplate snapshotTx;
+    // run bookkeeping commits on its own, next to the read-only snapshot
+    private final TransactionTemplate recordTx;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public BackupServiceImpl(BackupRunRepository runRepository,
+                             BackupObjectRepository objectRepository,
+                             DocumentStorageService documentStorageService,
+                             StorageBackend backend,
+                             JdbcTemplate jdbcTemplate,
+                             ObjectMapper objectMapper,
+                             StorageProperties storageProperties,
+                             PlatformTransactionManager transactionManager,
+                             MaintenanceRunner maintenance) {
+        this.runRepository = runRepository;
+        this.maintenance = maintenance;
+        this.objectRepository = objectRepository;
+        this.documentStorageService = documentStorageService;
+        this.backend = backend;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.settings = storageProperties.getBackup();
+        this.snapshotTx = new TransactionTemplate(transactionManager);
+        this.snapshotTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.snapshotTx.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTx.setReadOnly(true);
+        this.recordTx = new TransactionTemplate(transactionManager);
+        this.recordTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.backup.interval:P1D}", initialDelayString = "${storage.backup.initial-delay:PT3H}")
+    public void scheduledRun() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        // copies every new object: keep it off the scheduler's threads
+        maintenance.run("Scheduled backup", () -> {
+            try {
+                writeToFolder();
+            } catch (Exception e) {
+                log.warn("Scheduled backup failed", e);
+            }
+        });
+    }
+
+    private void writeToFolder() throws IOException {
+        if (settings.getFolder() == null || settings.getFolder().isBlank()) {
+            throw new IllegalStateException("storage.backup.folder is required when storage.backup is enabled");
+        }
+        Path folder = Paths.get(settings.getFolder()).toAbsolutePath().normalize();
+        Files.createDirectories(folder);
+        Path target = folder.resolve("hirepay-backup-" + FILE_TIMESTAMP.format(Instant.now()) + ".tar");
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        try (OutputStream out = Files.newOutputStream(partial)) {
+            writeBackup(out, "scheduled");
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public StreamingResponseBody streamBackup(String triggeredBy) {
+        // checked again when writing starts; this only turns the common case into a 400
+        if (running.get()) {
+            throw new InvalidStateException("A backup is already running");
+        }
+        return out -> writeBackup(out, triggeredBy);
+    }
+
+    @Override
+    public BackupSummary writeBackup(OutputStream out, String triggeredBy) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A backup is already running");
+        }
+        try {
+            BackupRun run = new BackupRun();
+            run.setTriggeredBy(triggeredBy);
+            BackupRun started = recordTx.execute(status -> runRepository.save(run));
+            Archive archive = new Archive(started, new TarWriter(out));
+            try {
+                snapshotTx.executeWithoutResult(status -> {
+                    try {
+                        archive.writeTables();
+                        archive.listObjects();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                archive.writeObjects();
+                archive.finish();
+            } catch (UncheckedIOException e) {
+                fail(started, e.getCause());
+                throw e.getCause();
+            } catch (IOException | RuntimeException e) {
+                fail(started, e);
+                throw e;
+            }
+            started.setStatus(BackupStatus.COMPLETED);
+            started.setFinishedAt(Instant.now());
+            recordTx.executeWithoutResult(status -> runRepository.save(started));
+            log.info("Backup {}: {} rows, {} objects included ({} bytes), {} from earlier backups, {} missing",
+                    started.getId(), started.getRowsExported(), started.getObjectsIncluded(),
+                    started.getBytesIncluded(), started.getObjectsReused(), started.getObjectsMissing());
+            return toSummary(started);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    @Override
+    public List<BackupSummary> getRecentBackups() {
+        return runRepository.findTop20ByOrderByIdDesc().stream().map(this::toSummary).toList();
+    }
+
+    private void fail(BackupRun run, Exception e) {
+        run.setStatus(BackupStatus.FAILED);
+        run.setFinishedAt(Instant.now());
+        String message = String.valueOf(e.getMessage());
+        run.setError(message.length() > 1000 ? message.substring(0, 1000) : message);
+        recordTx.executeWithoutResult(status -> runRepository.save(run));
+        log.warn("Backup {} failed: {}", run.getId(), message);
+    }
+
+    private BackupSummary toSummary(BackupRun run) {
+        return new BackupSummary(run.getId(), run.getStatus(), run.getTriggeredBy(), run.getStartedAt(),
+                run.getFinishedAt(), run.getRowsExported(), run.getObjectsIncluded(), run.getBytesIncluded(),
+                run.getObjectsReused(), run.getObjectsMissing(), run.getError());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * State of one archive being written.
+     */
+    private class Archive {
+        private final BackupRun run;
+        private final TarWriter tar;
+        private final Instant snapshotAt = Instant.now();
+        private final Map<String, Long> tableRows = new LinkedHashMap<>();
+        private final Map<String, String> fileHashes = new TreeMap<>();
+        private final Set<Long> requires = new TreeSet<>();
+        private final List<BackupObject> pendingRecords = new ArrayList<>();
+        private final Parts manifest = new Parts("manifest");
+        private Path keyList;
+        private long keyCount;
+
+        Archive(BackupRun run, TarWriter tar) {
+            this.run = run;
+            this.tar = tar;
+        }
+
+        void writeTables() throws IOException {
+            for (Map.Entry<String, String> table : TABLES.entrySet()) {
+                Parts parts = new Parts("db/" + table.getKey());
+                long rows = query("SELECT * FROM " + table.getKey() + " ORDER BY " + table.getValue(), rs -> {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        row.put(meta.getColumnLabel(i).toLowerCase(), jsonValue(rs.getObject(i)));
+                    }
+                    parts.add(row);
+                });
+                parts.close();
+                tableRows.put(table.getKey(), rows);
+                run.setRowsExported(run.getRowsExported() + rows);
+            }
+        }
+
+        /**
+         * Spool the keys of every object the snapshot references, so they can be copied once
+         * the snapshot transaction has ended. Written with writeUTF, as keys may hold any
+         * character a filename can.
+         */
+        void listObjects() throws IOException {
+            keyList = Files.createTempFile("hirepay-backup-", ".keys");
+            // shared blobs and chunks are listed once by UNION; segment entries share a key
+            Set<String> segmentsSeen = new HashSet<>();
+            try (DataOutputStream keys = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(keyList)))) {
+                query("SELECT location FROM procedure_documents WHERE location IS NOT NULL " +
+                      "UNION SELECT location FROM document_blobs ORDER BY 1", rs -> {
+                    String key = documentStorageService.keyOf(rs.getString(1));
+                    if (key == null) {
+                        return;
+                    }
+                    if (DocumentStorageService.isSegmentKey(key)) {
+                        key = key.substring(0, key.indexOf(DocumentStorageService.SEGMENT_ENTRY_SEPARATOR));
+                        if (!segmentsSeen.add(key)) {
+                            return;
+                        }
+                    }
+                    keys.writeUTF(key);
+                    keyCount++;
+                });
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(keyList);
+                throw e;
+            }
+        }
+
+        void writeObjects() throws IOException {
+            try (DataInputStream keys = new DataInputStream(new BufferedInputStream(Files.newInputStream(keyList)))) {
+                for (long i = 0; i < keyCount; i++) {
+                    writeObject(keys.readUTF());
+                }
+            } finally {
+                Files.deleteIfExists(keyList);
+            }
+            recordPending();
+        }
+
+        private void writeObject(String key) throws IOException {
+            List<BackupObject> earlier = objectRepository.findCompleted(key);
+            if (!earlier.isEmpty()) {
+                BackupObject copy = earlier.get(0);
+                requires.add(copy.getBackupRunId());
+                run.setObjectsReused(run.getObjectsReused() + 1);
+                manifest.add(manifestLine(key, copy.getSize(), copy.getSha256(), copy.getBackupRunId()));
+                return;
+            }
+            Optional<StorageObjectInfo> info = backend.stat(key);
+            if (info.isEmpty()) {
+                run.setObjectsMissing(run.getObjectsMissing() + 1);
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("key", key);
+                line.put("missing", true);
+                manifest.add(line);
+                log.warn("Backup {}: {} is referenced but not in storage", run.getId(), key);
+                return;
+            }
+            long size = info.get().getSize();
+            MessageDigest digest = sha256();
+            try (InputStream in = new DigestInputStream(backend.open(key), digest)) {
+                tar.putEntry("objects/" + key, size, info.get().getLastModified(), in);
+            }
+            String sha = HexFormat.of().formatHex(digest.digest());
+            run.setObjectsIncluded(run.getObjectsIncluded() + 1);
+            run.setBytesIncluded(run.getBytesIncluded() + size);
+            manifest.add(manifestLine(key, size, sha, run.getId()));
+            pendingRecords.add(new BackupObject(run.getId(), key, size, sha));
+            if (pendingRecords.size() >= RECORD_BATCH_SIZE) {
+                recordPending();
+            }
+        }
+
+        // recorded as they are written; they count only once the run is marked COMPLETED
+        private void recordPending() {
+            if (!pendingRecords.isEmpty()) {
+                List<BackupObject> batch = List.copyOf(pendingRecords);
+                recordTx.executeWithoutResult(status -> objectRepository.saveAll(batch));
+                pendingRecords.clear();
+            }
+        }
+
+        void finish() throws IOException {
+            manifest.close();
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("format", FORMAT);
+            summary.put("backup", run.getId());
+            summary.put("snapshotAt", snapshotAt.toString());
+            summary.put("finishedAt", Instant.now().toString());
+            summary.put("tables", tableRows);
+            Map<String, Object> objects = new LinkedHashMap<>();
+            objects.put("included", run.getObjectsIncluded());
+            objects.put("bytesIncluded", run.getBytesIncluded());
+            objects.put("fromEarlierBackups", run.getObjectsReused());
+            objects.put("missing", run.getObjectsMissing());
+            summary.put("objects", objects);
+            summary.put("requires", requires);
+            summary.put("files", fileHashes);
+            tar.putEntry("backup.json", objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(summary),
+                    Instant.now());
+            tar.finish();
+        }
+
+        private Map<String, Object> manifestLine(String key, long size, String sha256, Long backupId) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("key", key);
+            line.put("size", size);
+            line.put("sha256", sha256);
+            line.put("backup", backupId);
+            return line;
+        }
+
+        private long query(String sql, RowWriter writer) throws IOException {
+            long[] rows = {0};
+            try {
+                jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(sql);
+                    statement.setFetchSize(FETCH_SIZE);
+                    return statement;
+                }, (ResultSet rs) -> {
+                    try {
+                        writer.write(rs);
+                        rows[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return rows[0];
+        }
+
+        /**
+         * NDJSON split into numbered tar entries of a few megabytes, so no part is held
+         * whole however large the table.
+         */
+        private class Parts {
+            private final String prefix;
+            private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            private int part;
+
+            Parts(String prefix) {
+                this.prefix = prefix;
+            }
+
+            void add(Map<String, Object> line) throws IOException {
+                buffer.write(objectMapper.writeValueAsBytes(line));
+                buffer.write('\n');
+                if (buffer.size() >= PART_SIZE) {
+                    flush();
+                }
+            }
+
+            void close() throws IOException {
+                if (buffer.size() > 0 || part == 0) {
+                    flush();
+                }
+            }
+
+            private void flush() throws IOException {
+                byte[] content = buffer.toByteArray();
+                buffer.reset();
+                String name = prefix + String.format("/part-%05d.ndjson", ++part);
+                tar.putEntry(name, content, snapshotAt);
+                fileHashes.put(name, HexFormat.of().formatHex(sha256().digest(content)));
+            }
+        }
+    }
+
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException, IOException;
+    }
+
+    // JSON-friendly form of a column value: timestamps as ISO-8601 instants, binary as base64
+    private static Object jsonValue(Object value) throws SQLException {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toInstant().toString();
+        }
+        if (value instanceof Clob clob) {
+            return clob.getSubString(1, (int) clob.length());
+        }
+        if (value instanceof Blob blob) {
+            return blob.getBytes(1, (int) blob.length());
+        }
+        if (value == null || value instanceof byte[] || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+        // strings, dates, times, offset timestamps, UUIDs
+        return value.toString();
+    }
+}
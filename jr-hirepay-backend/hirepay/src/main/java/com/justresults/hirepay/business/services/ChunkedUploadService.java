@@ -0,0 +1,39 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.dto.UploadSessionDTOs.CreateUploadSessionRequest;
+import com.justresults.hirepay.dto.UploadSessionDTOs.UploadSessionResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface ChunkedUploadService {
+
+    /**
+     * Start a resumable upload; the declared size is checked against the limits up front
+     */
+    UploadSessionResponse createSession(CreateUploadSessionRequest request, String callerEmail);
+
+    /**
+     * Append a chunk at the given offset, which must equal the bytes received so far. Only
+     * the caller who started an authenticated upload may add to it. Bytes that arrive before
+     * a dropped connection are kept.
+     */
+    UploadSessionResponse appendChunk(String sessionId, long offset, InputStream chunk, String callerEmail) throws IOException;
+
+    /**
+     * Current progress, used by clients to find where to resume
+     */
+    UploadSessionResponse getSession(String sessionId);
+
+    /**
+     * Hand the completed upload to its target flow (receiveDocument/submitWork). Only the
+     * caller who started an authenticated upload may finalize it; finalizing twice returns
+     * the same document.
+     */
+    UploadSessionResponse finalizeSession(String sessionId, String callerEmail) throws IOException;
+
+    /**
+     * Abandon an upload and delete what was received
+     */
+    void abortSession(String sessionId, String callerEmail) throws IOException;
+}
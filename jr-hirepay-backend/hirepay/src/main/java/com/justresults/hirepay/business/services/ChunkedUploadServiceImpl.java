@@ -0,0 +1,369 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.config.StorageProperties;
+import com.justresults.hirepay.domain.UploadSession;
+import com.justresults.hirepay.dto.DocumentWorkflowDTOs.ReceiveDocumentRequest;
+import com.justresults.hirepay.dto.UmbrellaAgreementDTOs.SubmitWorkRequest;
+import com.justresults.hirepay.dto.UploadSessionDTOs.CreateUploadSessionRequest;
+import com.justresults.hirepay.dto.UploadSessionDTOs.UploadSessionResponse;
+import com.justresults.hirepay.enumeration.UploadTarget;
+import com.justresults.hirepay.repository.UploadSessionRepository;
+import com.justresults.hirepay.storage.StorageBackend;
+import com.justresults.hirepay.util.ForbiddenException;
+import com.justresults.hirepay.util.InvalidStateException;
+import com.justresults.hirepay.util.NotFoundException;
+import com.justresults.hirepay.util.SpooledMultipartFile;
+import com.justresults.hirepay.util.StorageHealthMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Resumable uploads: each chunk is stored as a part on the storage backend, under
+ * uploads/&lt;session&gt;/, and recorded in order on the upload_sessions row. Nothing about an
+ * upload lives on one node, so chunks and the finalize can reach any node behind the load
+ * balancer. A chunk is streamed to a local temp file and stored before its row is locked,
+ * so no DB connection or lock is held while it arrives; it counts only if the row still
+ * expects its offset when recorded, and is deleted otherwise.
+ * <p>
+ * Finalize joins the parts into a local file, then holds the session row lock for the whole
+ * hand-over and records the document in the same transaction that creates it, so a session
+ * yields at most one document however often or wherever it is finalized. The parts are only
+ * removed once that commits.
+ */
+@Service
+public class ChunkedUploadServiceImpl implements ChunkedUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkedUploadServiceImpl.class);
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // not referenced by documents; the reconciliation pass leaves these to the session sweep
+    public static final String PART_PREFIX = "uploads/";
+
+    private final UploadSessionRepository sessionRepository;
+    private final HiringService hiringService;
+    private final DocumentWorkflowService documentWorkflowService;
+    private final UmbrellaAgreementService umbrellaAgreementService;
+    private final StorageQuotaService storageQuotaService;
+    private final StorageHealthMonitor storageHealth;
+    private final StorageProperties storageProperties;
+    private final StorageBackend backend;
+    private final TransactionTemplate sessionTx;
+    // transient per-request files only: incoming chunks and joined parts being finalized
+    private final Path spoolDir;
+
+    public ChunkedUploadServiceImpl(UploadSessionRepository sessionRepository,
+                                    HiringService hiringService,
+                                    DocumentWorkflowService documentWorkflowService,
+                                    UmbrellaAgreementService umbrellaAgreementService,
+                                    StorageQuotaService storageQuotaService,
+                                    StorageHealthMonitor storageHealth,
+                                    StorageProperties storageProperties,
+                                    StorageBackend backend,
+                                    PlatformTransactionManager transactionManager) throws IOException {
+        this.sessionRepository = sessionRepository;
+        this.hiringService = hiringService;
+        this.documentWorkflowService = documentWorkflowService;
+        this.umbrellaAgreementService = umbrellaAgreementService;
+        this.storageQuotaService = storageQuotaService;
+        this.storageHealth = storageHealth;
+        this.storageProperties = storageProperties;
+        this.backend = backend;
+        this.sessionTx = new TransactionTemplate(transactionManager);
+        this.spoolDir = Paths.get(storageProperties.getFolder()).toAbsolutePath().normalize().resolve(".uploads");
+        Files.createDirectories(spoolDir);
+    }
+
+    @Override
+    public UploadSessionResponse createSession(CreateUploadSessionRequest request, String callerEmail) {
+        String actorEmail;
+        if (request.getTarget() == UploadTarget.RECEIVE_DOCUMENT) {
+            if (request.getProcedureUuid() == null || request.getProcedureUuid().isBlank()) {
+                throw new InvalidStateException("procedureUuid is required to receive a document");
+            }
+            if (request.getUploadedBy() == null || request.getUploadedBy().isBlank()) {
+                throw new InvalidStateException("uploadedBy is required to receive a document");
+            }
+            // fail now rather than after the whole file has been sent
+            hiringService.getByUuid(request.getProcedureUuid());
+            actorEmail = request.getUploadedBy();
+        } else {
+            if (callerEmail == null) {
+                throw new InvalidStateException("Work submissions require an authenticated user");
+            }
+            actorEmail = callerEmail;
+        }
+
+        long maxSize = storageProperties.getUpload().maxSizeFor(request.getDocumentType());
+        if (request.getTotalSize() > maxSize) {
+            throw new InvalidStateException("File size cannot exceed " + DataSize.ofBytes(maxSize).toMegabytes() + "MB");
+        }
+        // checked again when the finished upload is recorded
+        storageQuotaService.checkUpload(actorEmail, request.getProcedureUuid(), request.getTotalSize());
+        storageHealth.checkSpace(request.getTotalSize());
+
+        UploadSession session = new UploadSession();
+        session.setTarget(request.getTarget());
+        session.setProcedureUuid(request.getProcedureUuid());
+        session.setDocReference(request.getDocumentType());
+        session.setFilename(request.getFilename());
+        // same as a browser form post would send for this file name
+        session.setContentType(request.getContentType() != null ? request.getContentType()
+                : MediaTypeFactory.getMediaType(request.getFilename()).map(MediaType::toString).orElse(null));
+        session.setTotalSize(request.getTotalSize());
+        session.setActorEmail(actorEmail);
+        session.setNotes(request.getNotes());
+        session.setCreatedBy(callerEmail);
+        return toResponse(sessionRepository.save(session));
+    }
+
+    @Override
+    public UploadSessionResponse appendChunk(String sessionId, long offset, InputStream chunk, String callerEmail) throws IOException {
+        UploadSession session = find(sessionId);
+        checkOwner(session, callerEmail);
+        checkExpects(session, offset);
+        // the chunk is spooled locally before it is stored; a full disk would fail it part-way
+        storageHealth.checkSpace(session.getTotalSize() - offset);
+
+        Path part = Files.createTempFile(spoolDir, sessionId + "-", ".part");
+        try {
+            long received = 0;
+            IOException dropped = null;
+            try (OutputStream out = Files.newOutputStream(part)) {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                while (true) {
+                    int n;
+                    try {
+                        n = chunk.read(buffer);
+                    } catch (IOException e) {
+                        // keep whatever arrived before the connection dropped
+                        dropped = e;
+                        break;
+                    }
+                    if (n == -1) {
+                        break;
+                    }
+                    if (offset + received + n > session.getTotalSize()) {
+                        throw new InvalidStateException("Chunk runs past the declared size of "
+                                + session.getTotalSize() + " bytes");
+                    }
+                    out.write(buffer, 0, n);
+                    received += n;
+                }
+            }
+            UploadSessionResponse response = received > 0 ? recordPart(sessionId, offset, received, part) : toResponse(session);
+            if (dropped != null) {
+                throw dropped;
+            }
+            return response;
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    // store the part, then count it only if no other chunk took this offset in the meantime
+    private UploadSessionResponse recordPart(String sessionId, long offset, long length, Path part) throws IOException {
+        String key = PART_PREFIX + sessionId + "/" + String.format("%016d", offset) + "-" + UUID.randomUUID();
+        backend.put(key, part);
+        try {
+            return sessionTx.execute(status -> {
+                UploadSession session = sessionRepository.findForUpdate(sessionId)
+                        .orElseThrow(() -> new NotFoundException("Upload session not found: " + sessionId));
+                checkExpects(session, offset);
+                session.getPartKeys().add(key);
+                session.setReceivedBytes(offset + length);
+                return toResponse(sessionRepository.save(session));
+            });
+        } catch (RuntimeException e) {
+            deletePart(key);
+            throw e;
+        }
+    }
+
+    @Override
+    public UploadSessionResponse getSession(String sessionId) {
+        return toResponse(find(sessionId));
+    }
+
+    @Override
+    public UploadSessionResponse finalizeSession(String sessionId, String callerEmail) throws IOException {
+        UploadSession session = find(sessionId);
+        checkOwner(session, callerEmail);
+        if (session.getDocumentId() != null) {
+            // retried finalize after a lost response
+            return toResponse(session);
+        }
+        if (session.getReceivedBytes() != session.getTotalSize()) {
+            throw new InvalidStateException("Upload incomplete: " + session.getReceivedBytes() + " of "
+                    + session.getTotalSize() + " bytes received");
+        }
+
+        List<String> parts = List.copyOf(session.getPartKeys());
+        Path staged = join(sessionId, parts);
+        UploadSessionResponse response;
+        try {
+            response = sessionTx.execute(status -> attachDocument(sessionId, parts, staged));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+        deleteParts(sessionId);
+        return response;
+    }
+
+    // runs in sessionTx; the target flows join it, so the document and documentId commit together
+    private UploadSessionResponse attachDocument(String sessionId, List<String> parts, Path staged) {
+        UploadSession session = sessionRepository.findForUpdate(sessionId)
+                .orElseThrow(() -> new NotFoundException("Upload session not found: " + sessionId));
+        if (session.getDocumentId() != null) {
+            // finalized on another node while this one joined the parts
+            return toResponse(session);
+        }
+        if (!session.getPartKeys().equals(parts)) {
+            throw new InvalidStateException("Upload " + sessionId + " changed while it was being finalized");
+        }
+
+        SpooledMultipartFile file = new SpooledMultipartFile(staged, session.getFilename(), session.getContentType());
+        String documentId;
+        try {
+            if (session.getTarget() == UploadTarget.RECEIVE_DOCUMENT) {
+                ReceiveDocumentRequest request = new ReceiveDocumentRequest();
+                request.setDocumentType(session.getDocReference());
+                request.setUploadedBy(session.getActorEmail());
+                request.setNotes(session.getNotes());
+                documentId = documentWorkflowService.receiveDocument(session.getProcedureUuid(), request, file).getDocumentId();
+            } else {
+                SubmitWorkRequest request = new SubmitWorkRequest(session.getNotes(), file, session.getDocReference().name());
+                documentId = umbrellaAgreementService.submitWork(session.getActorEmail(), request).getDocumentId();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        session.setDocumentId(Long.valueOf(documentId));
+        sessionRepository.save(session);
+        return toResponse(session);
+    }
+
+    /**
+     * Join the stored parts into one local file for the target flow, which consumes (moves)
+     * the file it is given. The parts stay in storage until the finalize commits, so a
+     * rolled-back finalize can be retried.
+     */
+    private Path join(String sessionId, List<String> parts) throws IOException {
+        Path staged = Files.createTempFile(spoolDir, sessionId + "-", ".finalize");
+        try (OutputStream out = Files.newOutputStream(staged)) {
+            for (String key : parts) {
+                try (InputStream in = backend.open(key)) {
+                    in.transferTo(out);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(staged);
+            throw e;
+        }
+        return staged;
+    }
+
+    @Override
+    public void abortSession(String sessionId, String callerEmail) throws IOException {
+        sessionTx.executeWithoutResult(status -> {
+            UploadSession session = sessionRepository.findForUpdate(sessionId)
+                    .orElseThrow(() -> new NotFoundException("Upload session not found: " + sessionId));
+            checkOwner(session, callerEmail);
+            if (session.getDocumentId() != null) {
+                throw new InvalidStateException("Upload " + sessionId + " is already finalized");
+            }
+            sessionRepository.delete(session);
+        });
+        deleteParts(sessionId);
+    }
+
+    /**
+     * Drop sessions that have not seen a chunk within the configured TTL, along with their parts.
+     */
+    @Scheduled(fixedDelayString = "PT1H", initialDelayString = "PT10M")
+    public void expireStaleSessions() {
+        Instant cutoff = Instant.now().minus(storageProperties.getUpload().getSessionTtl());
+        for (UploadSession session : sessionRepository.findByUpdatedAtBefore(cutoff)) {
+            try {
+                sessionRepository.delete(session);
+                deleteParts(session.getId());
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not remove expired upload {}", session.getId(), e);
+            }
+        }
+    }
+
+    // every part under the session, including ones stored by chunks that were never recorded
+    private void deleteParts(String sessionId) throws IOException {
+        List<String> keys;
+        try (Stream<String> listed = backend.list(PART_PREFIX + sessionId + "/")) {
+            keys = listed.toList();
+        }
+        for (String key : keys) {
+            deletePart(key);
+        }
+    }
+
+    private void deletePart(String key) {
+        try {
+            backend.delete(key);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not delete upload part {}; the session sweep retries it", key, e);
+        }
+    }
+
+    private static void checkExpects(UploadSession session, long offset) {
+        if (session.getDocumentId() != null) {
+            throw new InvalidStateException("Upload " + session.getId() + " is already finalized");
+        }
+        if (offset != session.getReceivedBytes()) {
+            throw new InvalidStateException("Chunk offset " + offset + " does not match the "
+                    + session.getReceivedBytes() + " bytes received so far");
+        }
+    }
+
+    private UploadSession find(String sessionId) {
+        return sessionRepository.findById(sessionId)
+                .orElseThrow(() -> new NotFoundException("Upload session not found: " + sessionId));
+    }
+
+    // sessions started anonymously are reached by their unguessable id alone
+    private static void checkOwner(UploadSession session, String callerEmail) {
+        if (session.getCreatedBy() != null && !session.getCreatedBy().equalsIgnoreCase(callerEmail)) {
+            throw new ForbiddenException("Upload " + session.getId() + " belongs to another user");
+        }
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session) {
+        return new UploadSessionResponse(
+            session.getId(),
+            session.getTarget(),
+            session.getDocReference(),
+            session.getFilename(),
+            session.getTotalSize(),
+            session.getReceivedBytes(),
+            session.getReceivedBytes() == session.getTotalSize(),
+            session.getDocumentId() != null ? session.getDocumentId().toString() : null
+        );
+    }
+}
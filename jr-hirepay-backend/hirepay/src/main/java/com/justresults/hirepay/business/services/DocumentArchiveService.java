@@ -0,0 +1,12 @@
+package com.justresults.hirepay.business.services;
+
+import java.io.IOException;
+
+public interface DocumentArchiveService {
+
+    /**
+     * Pack the loose document files of a COMPLETED procedure into one new archive segment
+     * and point the documents at it. Returns the number of documents moved.
+     */
+    int archiveProcedure(String procedureUuid) throws IOException;
+}
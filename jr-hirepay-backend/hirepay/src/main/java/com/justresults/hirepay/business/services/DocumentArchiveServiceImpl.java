@@ -0,0 +1,227 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.business.events.ProcedureCompletedEvent;
+import com.justresults.hirepay.config.StorageProperties;
+import com.justresults.hirepay.domain.Procedure;
+import com.justresults.hirepay.domain.ProcedureDocument;
+import com.justresults.hirepay.enumeration.ProcedureStatus;
+import com.justresults.hirepay.repository.ProcedureDocumentRepository;
+import com.justresults.hirepay.repository.ProcedureRepository;
+import com.justresults.hirepay.storage.SegmentWriter;
+import com.justresults.hirepay.storage.StorageBackend;
+import com.justresults.hirepay.storage.StorageObjectInfo;
+import com.justresults.hirepay.storage.StoredContent;
+import com.justresults.hirepay.util.DocumentStorageService;
+import com.justresults.hirepay.util.InvalidStateException;
+import com.justresults.hirepay.util.NotFoundException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Moves the documents of completed procedures from one object per file into a single
+ * segment per procedure (see {@link SegmentWriter}), so cold procedures cost one inode
+ * and one backup entry. Runs on its own thread after archive() commits, with a periodic
+ * sweep to pick up anything missed by a restart.
+ */
+@Service
+public class DocumentArchiveServiceImpl implements DocumentArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentArchiveServiceImpl.class);
+
+    /** Key prefix of all archive segments. */
+    public static final String ARCHIVE_PREFIX = "archive/";
+
+    private record LooseDocument(Long id, String location, String key) { }
+
+    private final ProcedureRepository procedureRepository;
+    private final ProcedureDocumentRepository documentRepository;
+    private final DocumentStorageService documentStorageService;
+    private final StorageBackend backend;
+    private final StorageProperties.Archive settings;
+    private final TransactionTemplate tx;
+    private final Path workDir;
+    // a single packing thread keeps archival from competing with uploads for disk bandwidth
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "document-archiver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+
+    public DocumentArchiveServiceImpl(ProcedureRepository procedureRepository,
+                                      ProcedureDocumentRepository documentRepository,
+                                      DocumentStorageService documentStorageService,
+                                      StorageBackend backend,
+                                      StorageProperties storageProperties,
+                                      PlatformTransactionManager transactionManager) {
+        this.procedureRepository = procedureRepository;
+        this.documentRepository = documentRepository;
+        this.documentStorageService = documentStorageService;
+        this.backend = backend;
+        this.settings = storageProperties.getArchive();
+        this.tx = new TransactionTemplate(transactionManager);
+        this.workDir = Paths.get(storageProperties.getFolder()).toAbsolutePath().normalize().resolve(".incoming");
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onProcedureCompleted(ProcedureCompletedEvent event) {
+        schedule(event.procedureUuid());
+    }
+
+    @Scheduled(fixedDelayString = "${storage.archive.sweep-interval:PT1H}", initialDelayString = "PT5M")
+    public void sweep() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        String archived = DocumentStorageService.LOCATION_SCHEME + ARCHIVE_PREFIX + "%";
+        List<String> pending = tx.execute(status ->
+                documentRepository.findProcedureUuidsWithLooseDocuments(ProcedureStatus.COMPLETED, archived));
+        pending.forEach(this::schedule);
+    }
+
+    private void schedule(String procedureUuid) {
+        if (!settings.isEnabled() || !queued.add(procedureUuid)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                archiveProcedure(procedureUuid);
+            } catch (Exception e) {
+                log.warn("Archiving procedure {} failed; it will be retried by the next sweep", procedureUuid, e);
+            } finally {
+                queued.remove(procedureUuid);
+            }
+        });
+    }
+
+    @Override
+    public int archiveProcedure(String procedureUuid) throws IOException {
+        List<LooseDocument> loose = tx.execute(status -> {
+            Procedure procedure = procedureRepository.findByUuid(procedureUuid)
+                    .orElseThrow(() -> new NotFoundException("Procedure not found: " + procedureUuid));
+            if (procedure.getStatus() != ProcedureStatus.COMPLETED) {
+                throw new InvalidStateException("Only COMPLETED procedures are archived.");
+            }
+            return documentRepository.findByProcedureOrderByCreatedAtDesc(procedure).stream()
+                    .map(doc -> new LooseDocument(doc.getId(), doc.getLocation(), documentStorageService.keyOf(doc.getLocation())))
+                    .filter(doc -> doc.key() != null && !DocumentStorageService.isSegmentKey(doc.key()))
+                    .toList();
+        });
+        if (loose.isEmpty()) {
+            return 0;
+        }
+
+        // a new key every time, so readers never see a segment change under them
+        String segmentKey = ARCHIVE_PREFIX + procedureUuid.substring(0, 2) + "/" + procedureUuid
+                + "-" + Long.toString(System.currentTimeMillis(), 36) + ".seg";
+        Map<String, String> packed = new HashMap<>();
+        Path file = Files.createTempFile(workDir, "segment-", ".part");
+        try {
+            try (SegmentWriter writer = new SegmentWriter(file)) {
+                for (LooseDocument doc : loose) {
+                    if (packed.containsKey(doc.location())) {
+                        // several versions sharing one deduplicated blob
+                        continue;
+                    }
+                    String entry = pack(writer, doc.key(), doc.location());
+                    if (entry == null) {
+                        log.warn("Document {} of procedure {} is missing from storage ({}); leaving it as is",
+                                doc.id(), procedureUuid, doc.location());
+                        continue;
+                    }
+                    packed.put(doc.location(), documentStorageService.toSegmentLocation(segmentKey, entry));
+                }
+                writer.finish();
+            }
+            if (packed.isEmpty()) {
+                return 0;
+            }
+            backend.put(segmentKey, file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        int moved = tx.execute(status -> {
+            int count = 0;
+            for (LooseDocument doc : loose) {
+                String target = packed.get(doc.location());
+                Optional<ProcedureDocument> current = documentRepository.findById(doc.id());
+                // skip documents whose file was replaced while the segment was being written
+                if (target == null || current.isEmpty() || !doc.location().equals(current.get().getLocation())) {
+                    continue;
+                }
+                current.get().setLocation(target);
+                documentStorageService.release(doc.location());
+                count++;
+            }
+            return count;
+        });
+
+        if (moved == 0) {
+            backend.delete(segmentKey);
+        }
+        log.info("Archived {} documents of procedure {} into {}", moved, procedureUuid, segmentKey);
+        return moved;
+    }
+
+    /**
+     * Copy one document into the segment and return the entry name it was written under, or
+     * null if it is missing. Chunked documents are written out whole, since their chunks stay
+     * shared with versions that are not being archived.
+     */
+    private String pack(SegmentWriter writer, String key, String location) throws IOException {
+        if (DocumentStorageService.isChunkedKey(key)) {
+            if (!backend.exists(key)) {
+                return null;
+            }
+            String entry = key.substring(0, key.length() - DocumentStorageService.CHUNKED_SUFFIX.length());
+            StoredContent content = documentStorageService.openContent(location);
+            try (InputStream in = content.open()) {
+                writer.add(entry, in, content.getSize());
+            }
+            return entry;
+        }
+        Optional<Path> local = backend.localPath(key);
+        if (local.isPresent()) {
+            if (!Files.isRegularFile(local.get())) {
+                return null;
+            }
+            writer.add(key, local.get());
+            return key;
+        }
+        Optional<StorageObjectInfo> info = backend.stat(key);
+        if (info.isEmpty()) {
+            return null;
+        }
+        try (InputStream in = backend.open(key)) {
+            writer.add(key, in, info.get().getSize());
+        }
+        return key;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,18 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.dto.DocumentWorkflowDTOs.DocumentPreviewResponse;
+
+import java.io.IOException;
+
+public interface DocumentPreviewService {
+
+    /**
+     * First-page thumbnail of a PDF document
+     */
+    DocumentPreviewResponse getThumbnail(String documentId) throws IOException;
+
+    /**
+     * Low-resolution image of one page (1-based) of a PDF document
+     */
+    DocumentPreviewResponse getPagePreview(String documentId, int page) throws IOException;
+}
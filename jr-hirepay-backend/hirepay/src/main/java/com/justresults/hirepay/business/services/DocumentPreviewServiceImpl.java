@@ -0,0 +1,265 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.business.events.DocumentStoredEvent;
+import com.justresults.hirepay.config.StorageProperties;
+import com.justresults.hirepay.domain.ProcedureDocument;
+import com.justresults.hirepay.dto.DocumentWorkflowDTOs.DocumentPreviewResponse;
+import com.justresults.hirepay.repository.ProcedureDocumentRepository;
+import com.justresults.hirepay.storage.StorageBackend;
+import com.justresults.hirepay.storage.StoredContent;
+import com.justresults.hirepay.util.DocumentStorageService;
+import com.justresults.hirepay.util.NotFoundException;
+import com.justresults.hirepay.util.StoredDocument;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders PDF thumbnails and page previews in the background once a document is stored.
+ * Images are keyed by content hash under previews/, so identical documents share them and
+ * they survive archival. A request for a preview that does not exist yet queues the render,
+ * which also covers documents stored before previews existed.
+ */
+@Service
+public class DocumentPreviewServiceImpl implements DocumentPreviewService {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentPreviewServiceImpl.class);
+
+    /** Key prefix of rendered previews; they are derived data and can be rebuilt at any time. */
+    public static final String PREVIEW_PREFIX = "previews/";
+
+    private static final String PDF = "application/pdf";
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int MAX_REMEMBERED_FAILURES = 1024;
+
+    private final ProcedureDocumentRepository documentRepository;
+    private final DocumentStorageService documentStorageService;
+    private final StorageBackend backend;
+    private final StorageProperties.Preview settings;
+    private final Path workDir;
+    private final ThreadPoolExecutor executor;
+    // documents being rendered or waiting, by hash
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    // hashes of documents PDFBox could not parse or draw, so requests do not retry them forever;
+    // storage errors are not recorded here and are retried on the next request
+    private final Set<String> unrenderable = Collections.newSetFromMap(Collections.synchronizedMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_REMEMBERED_FAILURES;
+                }
+            }));
+
+    public DocumentPreviewServiceImpl(ProcedureDocumentRepository documentRepository,
+                                      DocumentStorageService documentStorageService,
+                                      StorageBackend backend,
+                                      StorageProperties storageProperties) {
+        this.documentRepository = documentRepository;
+        this.documentStorageService = documentStorageService;
+        this.backend = backend;
+        this.settings = storageProperties.getPreview();
+        this.workDir = Paths.get(storageProperties.getFolder()).toAbsolutePath().normalize().resolve(".incoming");
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Math.max(1, settings.getThreads());
+        // a full queue drops the job; the preview is rendered on first request instead
+        this.executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), task -> {
+                    Thread thread = new Thread(task, "document-preview-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDocumentStored(DocumentStoredEvent event) {
+        // images of encrypted documents would be stored in the clear
+        if (PDF.equals(event.contentType()) && !DocumentStorageService.isEncryptedKey(event.location())) {
+            schedule(event.location(), event.sha256());
+        }
+    }
+
+    @Override
+    public DocumentPreviewResponse getThumbnail(String documentId) throws IOException {
+        return open(documentId, "thumbnail");
+    }
+
+    @Override
+    public DocumentPreviewResponse getPagePreview(String documentId, int page) throws IOException {
+        if (page < 1 || page > settings.getMaxPages()) {
+            throw new NotFoundException("No preview for page " + page);
+        }
+        return open(documentId, "page-" + page);
+    }
+
+    private DocumentPreviewResponse open(String documentId, String name) throws IOException {
+        ProcedureDocument document = documentRepository.findById(Long.valueOf(documentId))
+                .orElseThrow(() -> new NotFoundException("Document not found: " + documentId));
+        StoredDocument stored = StoredDocument.fromMetadataJson(document.getLocation(), document.getMetadataJson());
+        if (stored == null || stored.getSha256() == null || !PDF.equals(stored.getContentType())
+                || DocumentStorageService.isEncryptedKey(document.getLocation()) || unrenderable.contains(stored.getSha256())) {
+            throw new NotFoundException("No preview available for document " + documentId);
+        }
+
+        String key = previewKey(stored.getSha256(), name);
+        if (!backend.exists(key)) {
+            if (backend.exists(previewKey(stored.getSha256(), "thumbnail"))) {
+                // rendered, but the document has fewer pages than requested
+                throw new NotFoundException("No preview for " + name + " of document " + documentId);
+            }
+            schedule(document.getLocation(), stored.getSha256());
+            throw new NotFoundException("Preview for document " + documentId + " is being generated");
+        }
+        StoredContent content = documentStorageService.openContent(documentStorageService.toLocation(key));
+        return new DocumentPreviewResponse(content, "\"" + stored.getSha256() + "-" + name + "\"");
+    }
+
+    private void schedule(String location, String sha256) {
+        if (!settings.isEnabled() || sha256 == null || unrenderable.contains(sha256) || !pending.add(sha256)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    render(location, sha256);
+                } catch (UnrenderableDocumentException e) {
+                    unrenderable.add(sha256);
+                    log.warn("Cannot render previews for {}: {}", location, e.getCause().toString());
+                } catch (Exception e) {
+                    // storage trouble, not the document: the next request for a preview tries again
+                    log.warn("Rendering previews for {} failed: {}", location, e.toString());
+                } finally {
+                    pending.remove(sha256);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(sha256);
+            log.debug("Preview queue full, skipping {}", location);
+        }
+    }
+
+    private void render(String location, String sha256) throws IOException, UnrenderableDocumentException {
+        if (backend.exists(previewKey(sha256, "thumbnail"))) {
+            return;
+        }
+        StoredContent content = documentStorageService.openContent(location);
+        Optional<Path> local = content.getLocalFile();
+        // parsing needs random access; spill to a temp file rather than the heap
+        Path copy = local.isPresent() ? null : Files.createTempFile(workDir, "preview-", ".pdf");
+        try {
+            if (copy != null) {
+                try (InputStream in = content.open()) {
+                    Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            try (PDDocument pdf = parse(local.orElse(copy))) {
+                if (pdf == null) {
+                    unrenderable.add(sha256);
+                    log.debug("Skipping previews for encrypted PDF {}", location);
+                    return;
+                }
+                PDFRenderer renderer = new PDFRenderer(pdf);
+                int pages = Math.min(pdf.getNumberOfPages(), settings.getMaxPages());
+                for (int i = 0; i < pages; i++) {
+                    int page = i;
+                    put(previewKey(sha256, "page-" + (i + 1)),
+                            draw(() -> renderer.renderImageWithDPI(page, settings.getDpi(), ImageType.RGB)));
+                }
+                if (pages > 0) {
+                    // written last: its presence marks the whole set as rendered
+                    put(previewKey(sha256, "thumbnail"), draw(() -> renderer.renderImage(0,
+                            settings.getThumbnailWidth() / pdf.getPage(0).getMediaBox().getWidth(), ImageType.RGB)));
+                }
+            }
+        } finally {
+            if (copy != null) {
+                Files.deleteIfExists(copy);
+            }
+        }
+    }
+
+    /**
+     * Parse a PDF already on local disk, so that any failure here is the document's own.
+     * Returns null for password-protected documents.
+     */
+    private static PDDocument parse(Path file) throws UnrenderableDocumentException {
+        try {
+            return PDDocument.load(file.toFile(), MemoryUsageSetting.setupMainMemoryOnly());
+        } catch (InvalidPasswordException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            throw new UnrenderableDocumentException(e);
+        }
+    }
+
+    // page content is read from the parsed document, so a failure here is the document's too
+    private static BufferedImage draw(PageRender render) throws UnrenderableDocumentException {
+        try {
+            return render.render();
+        } catch (IOException | RuntimeException e) {
+            throw new UnrenderableDocumentException(e);
+        }
+    }
+
+    private void put(String key, BufferedImage image) throws IOException {
+        Path file = Files.createTempFile(workDir, "preview-", ".jpg");
+        try {
+            if (!ImageIO.write(image, "jpg", file.toFile())) {
+                throw new IOException("No JPEG writer available");
+            }
+            backend.put(key, file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static String previewKey(String sha256, String name) {
+        return PREVIEW_PREFIX + sha256.substring(0, 2) + "/" + sha256 + "/" + name + ".jpg";
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface PageRender {
+        BufferedImage render() throws IOException;
+    }
+
+    // the document itself cannot be parsed or drawn; retrying will not help
+    private static class UnrenderableDocumentException extends Exception {
+        UnrenderableDocumentException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
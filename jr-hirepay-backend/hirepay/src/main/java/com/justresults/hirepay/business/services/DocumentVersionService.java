@@ -0,0 +1,20 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.domain.Procedure;
+import com.justresults.hirepay.domain.ProcedureDocument;
+import com.justresults.hirepay.enumeration.DocReference;
+
+import java.util.Optional;
+
+public interface DocumentVersionService {
+
+    /**
+     * Save a new document as the next version of its procedure and document type
+     */
+    ProcedureDocument saveNewVersion(ProcedureDocument document);
+
+    /**
+     * Latest version of a document type within a procedure
+     */
+    Optional<ProcedureDocument> findLatest(Procedure procedure, DocReference docReference);
+}
@@ -0,0 +1,89 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.domain.DocumentSlot;
+import com.justresults.hirepay.domain.Procedure;
+import com.justresults.hirepay.domain.ProcedureDocument;
+import com.justresults.hirepay.enumeration.DocReference;
+import com.justresults.hirepay.repository.DocumentSlotRepository;
+import com.justresults.hirepay.repository.ProcedureDocumentRepository;
+import com.justresults.hirepay.repository.ProcedureRepository;
+import com.justresults.hirepay.util.NotFoundException;
+import jakarta.transaction.Transactional;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Version numbers come from the document_slots row of the (procedure, document type) pair,
+ * taken under a row lock, so concurrent uploads queue up instead of colliding on
+ * uk_proc_docref_version. The slot's pointer to the current document makes the latest
+ * version a single lookup.
+ */
+@Service
+@Transactional
+public class DocumentVersionServiceImpl implements DocumentVersionService {
+
+    private final DocumentSlotRepository slotRepository;
+    private final ProcedureDocumentRepository documentRepository;
+    private final ProcedureRepository procedureRepository;
+    private final StorageQuotaService storageQuotaService;
+
+    public DocumentVersionServiceImpl(DocumentSlotRepository slotRepository,
+                                      ProcedureDocumentRepository documentRepository,
+                                      ProcedureRepository procedureRepository,
+                                      StorageQuotaService storageQuotaService) {
+        this.slotRepository = slotRepository;
+        this.documentRepository = documentRepository;
+        this.procedureRepository = procedureRepository;
+        this.storageQuotaService = storageQuotaService;
+    }
+
+    @Override
+    public ProcedureDocument saveNewVersion(ProcedureDocument document) {
+        DocumentSlot slot = lockSlot(document.getProcedure(), document.getDocReference());
+        document.setVersion(slot.getCurrentVersion() + 1);
+        ProcedureDocument saved = documentRepository.save(document);
+
+        slot.setCurrentVersion(saved.getVersion());
+        slot.setCurrentDocument(saved);
+        slot.setUpdatedAt(Instant.now());
+        storageQuotaService.charge(saved);
+        return saved;
+    }
+
+    @Override
+    public Optional<ProcedureDocument> findLatest(Procedure procedure, DocReference docReference) {
+        Optional<ProcedureDocument> current = slotRepository.findCurrentDocument(procedure, docReference);
+        // documents from before slots existed have none until the next upload of their type
+        return current.isPresent() ? current
+                : documentRepository.findFirstByProcedureAndDocReferenceOrderByVersionDesc(procedure, docReference);
+    }
+
+    private DocumentSlot lockSlot(Procedure procedure, DocReference docReference) {
+        Optional<DocumentSlot> slot = slotRepository.findForUpdate(procedure, docReference);
+        if (slot.isPresent()) {
+            return slot.get();
+        }
+
+        // first document of this type: create the slot under the procedure's lock, re-checking
+        // in case a concurrent upload created it while we waited
+        procedureRepository.findForUpdate(procedure.getId())
+                .orElseThrow(() -> new NotFoundException("Procedure not found: " + procedure.getUuid()));
+        slot = slotRepository.findForUpdate(procedure, docReference);
+        if (slot.isPresent()) {
+            return slot.get();
+        }
+
+        DocumentSlot created = new DocumentSlot();
+        created.setProcedure(procedure);
+        created.setDocReference(docReference);
+        // carry on from versions stored before the slot existed
+        documentRepository.findFirstByProcedureAndDocReferenceOrderByVersionDesc(procedure, docReference)
+                .ifPresent(latest -> {
+                    created.setCurrentVersion(latest.getVersion());
+                    created.setCurrentDocument(latest);
+                });
+        return slotRepository.saveAndFlush(created);
+    }
+}
@@ -5,9 +5,11 @@ import com.justresults.hirepay.dto.DocumentWorkflowDTOs.DocumentWorkflowResponse
 import com.justresults.hirepay.dto.DocumentWorkflowDTOs.SendDocumentRequest;
 import com.justresults.hirepay.dto.DocumentWorkflowDTOs.ReceiveDocumentRequest;
 import com.justresults.hirepay.dto.DocumentWorkflowDTOs.UpdateDocumentStatusRequest;
+import com.justresults.hirepay.dto.UmbrellaAgreementDTOs.DocumentDownloadResponse;
 import com.justresults.hirepay.enumeration.DocReference;
 import com.justresults.hirepay.enumeration.DocumentStatus;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.util.List;
@@ -44,13 +46,24 @@ public interface DocumentWorkflowService {
      */
     DocumentWorkflowResponse getLatestDocumentByType(String procedureUuid, DocReference documentType);
 
+    /**
+     * Every document of a procedure as a ZIP archive, written on the fly without a temp file.
+     * The document list is read here; the returned body streams the files.
+     */
+    StreamingResponseBody exportDocuments(String procedureUuid);
+
     /**
      * Validate document upload (file type, size, etc.)
      */
     void validateDocumentUpload(MultipartFile file, DocReference documentType);
 
     /**
-     * Generate document download URL
+     * Generate a signed download URL that stays valid for expiryMinutes
      */
     String generateDownloadUrl(String documentId, int expiryMinutes);
+
+    /**
+     * Resolve a signed download token to the document bytes, without a database lookup
+     */
+    DocumentDownloadResponse openSignedDownload(String token) throws IOException;
 }
@@ -1,39 +1,72 @@
 package com.justresults.hirepay.business.services;
 
 import com.justresults.hirepay.business.services.HiringService;
+import com.justresults.hirepay.config.StorageProperties;
 import com.justresults.hirepay.domain.Procedure;
 import com.justresults.hirepay.domain.ProcedureDocument;
 import com.justresults.hirepay.dto.DocumentWorkflowDTOs.*;
 import com.justresults.hirepay.enumeration.DocReference;
 import com.justresults.hirepay.enumeration.DocumentStatus;
 import com.justresults.hirepay.enumeration.ProcedureStatus;
+import com.justresults.hirepay.dto.UmbrellaAgreementDTOs.DocumentDownloadResponse;
 import com.justresults.hirepay.repository.ProcedureDocumentRepository;
+import com.justresults.hirepay.security.DownloadUrlSigner;
+import com.justresults.hirepay.storage.StoredContent;
 import com.justresults.hirepay.util.DocumentStorageService;
 import com.justresults.hirepay.util.InvalidStateException;
 import com.justresults.hirepay.util.NotFoundException;
+import com.justresults.hirepay.util.StoredDocument;
 import jakarta.transaction.Transactional;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Service
 @Transactional
 public class DocumentWorkflowServiceImpl implements DocumentWorkflowService {
 
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     private final HiringService hiringService;
     private final DocumentStorageService documentStorageService;
     private final ProcedureDocumentRepository documentRepository;
+    private final StorageProperties storageProperties;
+    private final DownloadUrlSigner downloadUrlSigner;
+    private final DocumentVersionService documentVersionService;
+    private final StorageQuotaService storageQuotaService;
 
     public DocumentWorkflowServiceImpl(HiringService hiringService, 
                                      DocumentStorageService documentStorageService,
-                                     ProcedureDocumentRepository documentRepository) {
+                                     ProcedureDocumentRepository documentRepository,
+                                     StorageProperties storageProperties,
+                                     DownloadUrlSigner downloadUrlSigner,
+                                     DocumentVersionService documentVersionService,
+                                     StorageQuotaService storageQuotaService) {
         this.hiringService = hiringService;
         this.documentStorageService = documentStorageService;
         this.documentRepository = documentRepository;
+        this.storageProperties = storageProperties;
+        this.downloadUrlSigner = downloadUrlSigner;
+        this.documentVersionService = documentVersionService;
+        this.storageQuotaService = storageQuotaService;
     }
 
     @Override
@@ -45,20 +78,20 @@ public class DocumentWorkflowServiceImpl implements DocumentWorkflowService {
         byte[] documentContent = generateDocumentContent(procedure, request.getDocumentType());
         
         // Store document
-        String location = documentStorageService.store(procedureUuid, documentContent, 
-            request.getDocumentType().name().toLowerCase() + ".pdf");
+        StoredDocument stored = documentStorageService.store(procedureUuid, documentContent, 
+            request.getDocumentType().name().toLowerCase() + ".pdf", request.getDocumentType());
         
         // Create document record
         ProcedureDocument document = new ProcedureDocument();
         document.setProcedure(procedure);
         document.setDocReference(request.getDocumentType());
-        document.setLocation(location);
+        document.setLocation(stored.getLocation());
+        document.setMetadataJson(stored.toMetadataJson());
         document.setActorEmail(request.getSentBy());
         document.setStatus(DocumentStatus.SENT);
         document.setNotes(request.getNotes());
-        document.setVersion(1);
         
-        ProcedureDocument savedDocument = documentRepository.save(document);
+        ProcedureDocument savedDocument = documentVersionService.saveNewVersion(document);
         
         // Update procedure status based on document type
         updateProcedureStatusForDocument(procedure, request.getDocumentType());
@@ -73,24 +106,23 @@ public class DocumentWorkflowServiceImpl implements DocumentWorkflowService {
         
         // Validate document upload
         validateDocumentUpload(file, request.getDocumentType());
+        storageQuotaService.checkUpload(request.getUploadedBy(), procedureUuid, file.getSize());
         
-        // Store document
-        String location = documentStorageService.store(procedureUuid, file);
-        
-        // Get next version number
-        int nextVersion = getNextVersionNumber(procedure, request.getDocumentType());
+        // Stream document into storage
+        StoredDocument stored = documentStorageService.store(procedureUuid, file, request.getDocumentType());
         
         // Create document record
         ProcedureDocument document = new ProcedureDocument();
         document.setProcedure(procedure);
         document.setDocReference(request.getDocumentType());
-        document.setLocation(location);
+        document.setLocation(stored.getLocation());
+        document.setMetadataJson(stored.toMetadataJson());
         document.setActorEmail(request.getUploadedBy());
         document.setStatus(DocumentStatus.SIGNED);
         document.setNotes(request.getNotes());
-        document.setVersion(nextVersion);
         
-        ProcedureDocument savedDocument = documentRepository.save(document);
+        // Saved as the next version of its type
+        ProcedureDocument savedDocument = documentVersionService.saveNewVersion(document);
         
         // Update procedure status based on document type
         updateProcedureStatusForDocument(procedure, request.getDocumentType());
@@ -138,13 +170,91 @@ public class DocumentWorkflowServiceImpl implements DocumentWorkflowService {
     @Override
     public DocumentWorkflowResponse getLatestDocumentByType(String procedureUuid, DocReference documentType) {
         Procedure procedure = hiringService.getByUuid(procedureUuid);
-        List<ProcedureDocument> documents = documentRepository.findByProcedureAndDocReferenceOrderByVersionDesc(procedure, documentType);
-        
-        if (documents.isEmpty()) {
-            return null;
+        return documentVersionService.findLatest(procedure, documentType)
+            .map(this::createDocumentWorkflowResponse)
+            .orElse(null);
+    }
+
+    @Override
+    public StreamingResponseBody exportDocuments(String procedureUuid) {
+        Procedure procedure = hiringService.getByUuid(procedureUuid);
+        List<ProcedureDocument> documents = documentRepository.findByProcedureOrderByCreatedAtDesc(procedure);
+
+        // capture plain values: the body is written after this transaction has ended
+        List<ExportEntry> entries = new ArrayList<>(documents.size());
+        Set<String> names = new HashSet<>();
+        for (ProcedureDocument document : documents) {
+            StoredDocument stored = StoredDocument.fromMetadataJson(document.getLocation(), document.getMetadataJson());
+            String filename = stored != null && stored.getOriginalFilename() != null
+                    ? stored.getOriginalFilename()
+                    : document.getLocation().substring(document.getLocation().lastIndexOf('/') + 1);
+            String name = uniqueName(names, document.getDocReference().name() + "/v" + document.getVersion()
+                    + "-" + safeEntryName(filename));
+            entries.add(new ExportEntry(name, document.getLocation(), document.getCreatedAt(),
+                    stored != null ? stored.getContentType() : null));
         }
-        
-        return createDocumentWorkflowResponse(documents.get(0));
+        return out -> writeExport(entries, out);
+    }
+
+    private record ExportEntry(String name, String location, Instant createdAt, String contentType) { }
+
+    private void writeExport(List<ExportEntry> entries, OutputStream out) throws IOException {
+        // the deflater writes in small pieces; batch them for the servlet stream
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, EXPORT_BUFFER_SIZE));
+        List<String> failures = new ArrayList<>();
+        for (ExportEntry entry : entries) {
+            StoredContent content;
+            try {
+                content = documentStorageService.openContent(entry.location());
+            } catch (IOException e) {
+                // the response is already committed, so report it inside the archive instead
+                failures.add(entry.name() + ": " + e.getMessage());
+                continue;
+            }
+            ZipEntry zipEntry = new ZipEntry(entry.name());
+            zipEntry.setTime(entry.createdAt().toEpochMilli());
+            zip.setLevel(isPrecompressed(entry.contentType()) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            zip.putNextEntry(zipEntry);
+            try (InputStream in = content.open()) {
+                in.transferTo(zip);
+            }
+            zip.closeEntry();
+        }
+        if (!failures.isEmpty()) {
+            zip.putNextEntry(new ZipEntry("export-errors.txt"));
+            zip.write(String.join("\n", failures).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        // finish rather than close: the container owns the response stream
+        zip.finish();
+        zip.flush();
+    }
+
+    private static String safeEntryName(String filename) {
+        String name = filename.replace('\\', '_').replace('/', '_');
+        return name.isBlank() || name.startsWith(".") ? "document" + name : name;
+    }
+
+    private static String uniqueName(Set<String> names, String name) {
+        if (names.add(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        String base = dot > name.lastIndexOf('/') + 1 ? name.substring(0, dot) : name;
+        String ext = dot > name.lastIndexOf('/') + 1 ? name.substring(dot) : "";
+        for (int i = 2; ; i++) {
+            String candidate = base + " (" + i + ")" + ext;
+            if (names.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private static boolean isPrecompressed(String contentType) {
+        return contentType != null && (contentType.startsWith("image/")
+                || contentType.equals("application/zip")
+                || contentType.equals("application/gzip")
+                || contentType.equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document"));
     }
 
     @Override
@@ -153,13 +263,17 @@ public class DocumentWorkflowServiceImpl implements DocumentWorkflowService {
             throw new InvalidStateException("File cannot be empty");
         }
         
-        // Check file size (10MB limit)
-        if (file.getSize() > 10 * 1024 * 1024) {
-            throw new InvalidStateException("File size cannot exceed 10MB");
+        // Check file size (10MB by default, larger for deliverable bundles)
+        long maxSize = storageProperties.getUpload().maxSizeFor(documentType);
+        if (file.getSize() > maxSize) {
+            throw new InvalidStateException("File size cannot exceed " + DataSize.ofBytes(maxSize).toMegabytes() + "MB");
         }
         
-        // Check file type (PDF, DOC, DOCX)
+        // Check file type (PDF, DOC, DOCX; deliverables may also be a ZIP bundle)
         String contentType = file.getContentType();
+        if (documentType == DocReference.DELIVERABLES_PROOF && isZip(contentType)) {
+            return;
+        }
         if (contentType == null || (!contentType.equals("application/pdf") && 
             !contentType.equals("application/msword") && 
             !contentType.equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document"))) {
@@ -169,23 +283,56 @@ public class DocumentWorkflowServiceImpl implements DocumentWorkflowService {
 
     @Override
     public String generateDownloadUrl(String documentId, int expiryMinutes) {
-        // For now, return a simple download endpoint
-        // In production, this would generate signed URLs for cloud storage
-        return "/api/documents/" + documentId + "/download";
+        if (expiryMinutes <= 0 || expiryMinutes > downloadUrlSigner.getMaxExpiry().toMinutes()) {
+            throw new InvalidStateException("expiryMinutes must be between 1 and " + downloadUrlSigner.getMaxExpiry().toMinutes());
+        }
+        ProcedureDocument document = documentRepository.findById(Long.valueOf(documentId))
+                .orElseThrow(() -> new NotFoundException("Document not found: " + documentId));
+
+        StoredDocument stored = StoredDocument.fromMetadataJson(document.getLocation(), document.getMetadataJson());
+        String filename = stored != null && stored.getOriginalFilename() != null
+                ? stored.getOriginalFilename()
+                : document.getLocation().substring(document.getLocation().lastIndexOf('/') + 1);
+        String contentType = stored != null && stored.getContentType() != null
+                ? stored.getContentType() : "application/octet-stream";
+        DownloadGrant grant = new DownloadGrant(document.getId(), document.getLocation(),
+                filename.replaceAll("[\\p{Cntrl}\"]", "_"), contentType,
+                stored != null ? stored.getSha256() : null,
+                Instant.now().plus(Duration.ofMinutes(expiryMinutes)));
+        return "/api/downloads/" + downloadUrlSigner.sign(grant);
+    }
+
+    @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public DocumentDownloadResponse openSignedDownload(String token) throws IOException {
+        DownloadGrant grant = downloadUrlSigner.verify(token);
+        StoredContent content;
+        try {
+            content = documentStorageService.openContent(grant.getLocation());
+        } catch (FileNotFoundException e) {
+            // the document was moved since the link was issued (archived into a segment);
+            // the content is the same, only its location changed
+            ProcedureDocument document = documentRepository.findById(grant.getDocumentId())
+                    .orElseThrow(() -> new NotFoundException("Document not found: " + grant.getDocumentId()));
+            if (document.getLocation().equals(grant.getLocation())) {
+                throw e;
+            }
+            content = documentStorageService.openContent(document.getLocation());
+        }
+        return new DocumentDownloadResponse(content, grant.getFilename(), grant.getContentType(), grant.getSha256());
     }
 
     // Helper methods
+    private boolean isZip(String contentType) {
+        return "application/zip".equals(contentType) || "application/x-zip-compressed".equals(contentType);
+    }
+
     private byte[] generateDocumentContent(Procedure procedure, DocReference documentType) throws IOException {
         // This will be overridden by specific document type implementations
         // For now, return a simple placeholder
         return ("Placeholder document for " + documentType.name() + " - " + procedure.getConsultantName()).getBytes();
     }
 
-    private int getNextVersionNumber(Procedure procedure, DocReference documentType) {
-        List<ProcedureDocument> existing = documentRepository.findByProcedureAndDocReferenceOrderByVersionDesc(procedure, documentType);
-        return existing.isEmpty() ? 1 : existing.get(0).getVersion() + 1;
-    }
-
     private void updateProcedureStatusForDocument(Procedure procedure, DocReference documentType) {
         switch (documentType) {
             case UMBRELLA_AGREEMENT:
@@ -3,6 +3,7 @@ package com.justresults.hirepay.business.services;
 import com.justresults.hirepay.domain.Procedure;
 import com.justresults.hirepay.domain.ProcedureDocument;
 import com.justresults.hirepay.enumeration.DocReference;
+import com.justresults.hirepay.util.StoredDocument;
 
 public interface HiringService {
 
@@ -13,6 +14,9 @@ public interface HiringService {
     // record a document (controller will handle file upload and pass a storage location)
     ProcedureDocument addDocument(String uuid, DocReference ref, String location, String actorEmail);
 
+    // record a document written through DocumentStorageService, keeping its size/hash/content type
+    ProcedureDocument addDocument(String uuid, DocReference ref, StoredDocument stored, String actorEmail);
+
     // workflow transitions
     Procedure markAgreementSigned(String uuid);
 
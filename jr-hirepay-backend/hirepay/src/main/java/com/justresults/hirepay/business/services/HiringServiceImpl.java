@@ -1,30 +1,34 @@
 package com.justresults.hirepay.business.services;
 
+import com.justresults.hirepay.business.events.ProcedureCompletedEvent;
 import com.justresults.hirepay.domain.Procedure;
 import com.justresults.hirepay.domain.ProcedureDocument;
 import com.justresults.hirepay.enumeration.DocReference;
 import com.justresults.hirepay.enumeration.ProcedureStatus;
 import com.justresults.hirepay.enumeration.ProductType;
-import com.justresults.hirepay.repository.ProcedureDocumentRepository;
 import com.justresults.hirepay.repository.ProcedureRepository;
 import com.justresults.hirepay.util.InvalidStateException;
 import com.justresults.hirepay.util.NotFoundException;
+import com.justresults.hirepay.util.StoredDocument;
 import jakarta.transaction.Transactional;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
-import java.util.List;
 
 @Service
 @Transactional
 public class HiringServiceImpl implements HiringService {
 
     private final ProcedureRepository procedureRepo;
-    private final ProcedureDocumentRepository docRepo;
+    private final DocumentVersionService versionService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public HiringServiceImpl(ProcedureRepository procedureRepo, ProcedureDocumentRepository docRepo) {
+    public HiringServiceImpl(ProcedureRepository procedureRepo, DocumentVersionService versionService,
+                             ApplicationEventPublisher eventPublisher) {
         this.procedureRepo = procedureRepo;
-        this.docRepo = docRepo;
+        this.versionService = versionService;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
@@ -45,23 +49,26 @@ public class HiringServiceImpl implements HiringService {
 
     @Override
     public ProcedureDocument addDocument(String uuid, DocReference ref, String location, String actorEmail) {
-        Procedure proc = getByUuid(uuid);
+        return addDocument(uuid, ref, location, null, actorEmail);
+    }
 
-        // compute next version (latest + 1)
-        int nextVersion = 1;
-        List<ProcedureDocument> existing = docRepo.findByProcedureAndDocReferenceOrderByVersionDesc(proc, ref);
-        if (!existing.isEmpty()) {
-            nextVersion = existing.get(0).getVersion() + 1;
-        }
+    @Override
+    public ProcedureDocument addDocument(String uuid, DocReference ref, StoredDocument stored, String actorEmail) {
+        return addDocument(uuid, ref, stored.getLocation(), stored.toMetadataJson(), actorEmail);
+    }
+
+    private ProcedureDocument addDocument(String uuid, DocReference ref, String location, String metadataJson, String actorEmail) {
+        Procedure proc = getByUuid(uuid);
 
         ProcedureDocument doc = new ProcedureDocument();
         doc.setProcedure(proc);
         doc.setDocReference(ref);
         doc.setLocation(location);
+        doc.setMetadataJson(metadataJson);
         doc.setActorEmail(actorEmail);
-        doc.setVersion(nextVersion);
 
-        return docRepo.save(doc);
+        // next version (latest + 1)
+        return versionService.saveNewVersion(doc);
     }
 
     @Override
@@ -138,6 +145,9 @@ public class HiringServiceImpl implements HiringService {
             throw new InvalidStateException("Archive requires TASK_ORDER_SUBMITTED.");
         }
         p.setStatus(ProcedureStatus.COMPLETED);
-        return procedureRepo.save(p);
+        Procedure saved = procedureRepo.save(p);
+        // its documents are packed into an archive segment once this commits
+        eventPublisher.publishEvent(new ProcedureCompletedEvent(saved.getUuid()));
+        return saved;
     }
 }
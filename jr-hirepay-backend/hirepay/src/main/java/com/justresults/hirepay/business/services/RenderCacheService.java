@@ -0,0 +1,20 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.util.StoredDocument;
+
+import java.util.Optional;
+
+public interface RenderCacheService {
+
+    /**
+     * Store a fresh copy of the document rendered earlier under {@code renderKey}, so the
+     * caller can skip rendering. Empty when nothing is cached for the key, or the cached
+     * copy is gone or no longer has the recorded bytes.
+     */
+    Optional<StoredDocument> reuse(String renderKey, String procedureUuid, String filename);
+
+    /**
+     * Record a freshly stored render under its key.
+     */
+    void remember(String renderKey, String template, StoredDocument stored);
+}
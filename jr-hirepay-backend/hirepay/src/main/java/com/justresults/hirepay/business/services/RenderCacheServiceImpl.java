@@ -0,0 +1,153 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.domain.RenderCacheEntry;
+import com.justresults.hirepay.repository.RenderCacheEntryRepository;
+import com.justresults.hirepay.util.DocumentStorageService;
+import com.justresults.hirepay.util.StoredDocument;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+/**
+ * Memoizes rendered documents in render_cache. A hit is served by copying the earlier
+ * output through DocumentStorageService, which costs a read and, with dedup on, only a
+ * blob reference, rather than a render. The copy is hashed on the way in, so a cached
+ * document that has since changed or disappeared is dropped from the cache and rendered
+ * afresh instead of being handed out.
+ * <p>
+ * Each entry points at a copy of its own under render-cache/, stored when the render is
+ * remembered and released only when the entry is forgotten or replaced. The document the
+ * render was made for can then be released, for instance when recording it fails, without
+ * emptying the cache that its retry is meant to hit.
+ * <p>
+ * Keys include the template's version, so editing a template simply stops old entries
+ * from matching.
+ */
+@Service
+public class RenderCacheServiceImpl implements RenderCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(RenderCacheServiceImpl.class);
+
+    private static final String CACHE_FOLDER = "render-cache";
+
+    /** Key prefix of the copies cache entries own; no document row points at them. */
+    public static final String CACHE_PREFIX = CACHE_FOLDER + "/";
+
+    private final RenderCacheEntryRepository entryRepository;
+    private final DocumentStorageService documentStorageService;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate entryTx;
+    private final boolean enabled;
+
+    public RenderCacheServiceImpl(RenderCacheEntryRepository entryRepository,
+                                  DocumentStorageService documentStorageService,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${pdf.render.cache.enabled:true}") boolean enabled) {
+        this.entryRepository = entryRepository;
+        this.documentStorageService = documentStorageService;
+        this.meterRegistry = meterRegistry;
+        this.entryTx = new TransactionTemplate(transactionManager);
+        this.entryTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Optional<StoredDocument> reuse(String renderKey, String procedureUuid, String filename) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        RenderCacheEntry entry = entryRepository.findByRenderKey(renderKey).orElse(null);
+        if (entry == null) {
+            count("miss");
+            return Optional.empty();
+        }
+
+        InputStream cached;
+        try {
+            cached = documentStorageService.openContent(entry.getLocation()).open();
+        } catch (IOException | RuntimeException e) {
+            log.info("Cached render {} at {} is no longer readable: {}", renderKey, entry.getLocation(), e.getMessage());
+            forget(entry);
+            count("stale");
+            return Optional.empty();
+        }
+
+        StoredDocument copy;
+        try (InputStream in = cached) {
+            copy = documentStorageService.store(procedureUuid, in, filename);
+        } catch (IOException e) {
+            log.warn("Could not reuse cached render {}; rendering instead", renderKey, e);
+            count("miss");
+            return Optional.empty();
+        }
+        if (!entry.getSha256().equals(copy.getSha256())) {
+            log.warn("Cached render {} at {} no longer matches its hash; rendering instead", renderKey, entry.getLocation());
+            documentStorageService.release(copy.getLocation());
+            forget(entry);
+            count("stale");
+            return Optional.empty();
+        }
+        count("hit");
+        return Optional.of(copy);
+    }
+
+    @Override
+    public void remember(String renderKey, String template, StoredDocument stored) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            entryTx.executeWithoutResult(status -> {
+                // copied in the transaction that records it, so a rollback takes the copy with it
+                // and nothing the caller's own failure undoes can reach it
+                StoredDocument own = copyOf(stored);
+                RenderCacheEntry entry = entryRepository.findByRenderKey(renderKey).orElseGet(RenderCacheEntry::new);
+                // released once the new copy is recorded
+                documentStorageService.release(entry.getLocation());
+                entry.setRenderKey(renderKey);
+                entry.setTemplate(template);
+                entry.setLocation(own.getLocation());
+                entry.setSha256(own.getSha256());
+                entry.setSize(own.getSize());
+                entryRepository.save(entry);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // the same render was remembered concurrently; either copy will do
+        } catch (RuntimeException e) {
+            log.warn("Could not cache render {}; it will be rendered again next time", renderKey, e);
+        }
+    }
+
+    private StoredDocument copyOf(StoredDocument stored) {
+        try (InputStream in = documentStorageService.openContent(stored.getLocation()).open()) {
+            return documentStorageService.store(CACHE_FOLDER, in, stored.getOriginalFilename());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // only the run that removes the entry releases its copy, once
+    private void forget(RenderCacheEntry entry) {
+        entryTx.executeWithoutResult(status -> {
+            if (entryRepository.deleteByRenderKeyAndLocation(entry.getRenderKey(), entry.getLocation()) > 0) {
+                documentStorageService.release(entry.getLocation());
+            }
+        });
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("hirepay.pdf.render.cache", "result", result).increment();
+    }
+}
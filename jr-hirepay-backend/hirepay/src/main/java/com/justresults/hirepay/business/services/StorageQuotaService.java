@@ -0,0 +1,43 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.domain.ProcedureDocument;
+import com.justresults.hirepay.dto.StorageDTOs.StorageUsageReport;
+import com.justresults.hirepay.dto.StorageDTOs.UsageEntry;
+
+import java.util.List;
+
+public interface StorageQuotaService {
+
+    /**
+     * Reject an upload of the given size before any of it is stored, if it would take the
+     * uploader or the procedure over quota. Either may be null when not known yet.
+     */
+    void checkUpload(String actorEmail, String procedureUuid, long size);
+
+    /**
+     * Count a newly recorded file against its document's actorEmail and procedure. Runs in
+     * the transaction that records the document, so a rollback undoes it.
+     */
+    void charge(ProcedureDocument document);
+
+    /**
+     * As {@link #charge(ProcedureDocument)}, but counts the file against the account that
+     * uploaded it when that is not the document's actorEmail, e.g. a signed copy.
+     */
+    void charge(ProcedureDocument document, String uploaderEmail);
+
+    /**
+     * Take a document's current file off the totals, before it is replaced.
+     */
+    void refund(ProcedureDocument document);
+
+    /**
+     * Largest users and procedures by stored bytes
+     */
+    StorageUsageReport getUsage();
+
+    /**
+     * Usage of one user (by email) or procedure (by uuid)
+     */
+    List<UsageEntry> getUsage(String owner);
+}
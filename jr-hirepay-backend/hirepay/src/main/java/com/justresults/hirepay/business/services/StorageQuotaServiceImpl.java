@@ -0,0 +1,160 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.config.StorageProperties;
+import com.justresults.hirepay.domain.ProcedureDocument;
+import com.justresults.hirepay.domain.StorageUsage;
+import com.justresults.hirepay.dto.StorageDTOs.StorageUsageReport;
+import com.justresults.hirepay.dto.StorageDTOs.UsageEntry;
+import com.justresults.hirepay.enumeration.UsageScope;
+import com.justresults.hirepay.repository.StorageUsageRepository;
+import com.justresults.hirepay.util.QuotaExceededException;
+import com.justresults.hirepay.util.StoredDocument;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Usage is kept as running totals in storage_usage, one row per uploader and per procedure,
+ * so enforcing a quota or reporting usage is a row lookup instead of a walk over storage.
+ * Totals change with a single conditional UPDATE, which checks the limit and adds in one
+ * statement; concurrent uploads of the same owner queue on the row instead of both slipping
+ * under the limit.
+ */
+@Service
+@Transactional
+public class StorageQuotaServiceImpl implements StorageQuotaService {
+
+    private final StorageUsageRepository usageRepository;
+    private final StorageProperties.Quota quota;
+    private final TransactionTemplate rowTx;
+    private final MeterRegistry meterRegistry;
+
+    public StorageQuotaServiceImpl(StorageUsageRepository usageRepository,
+                                   StorageProperties storageProperties,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry) {
+        this.usageRepository = usageRepository;
+        this.quota = storageProperties.getQuota();
+        this.rowTx = new TransactionTemplate(transactionManager);
+        this.rowTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void checkUpload(String actorEmail, String procedureUuid, long size) {
+        check(UsageScope.USER, actorEmail, size);
+        check(UsageScope.PROCEDURE, procedureUuid, size);
+    }
+
+    @Override
+    public void charge(ProcedureDocument document) {
+        charge(document, document.getActorEmail());
+    }
+
+    @Override
+    public void charge(ProcedureDocument document, String uploaderEmail) {
+        long size = sizeOf(document);
+        add(UsageScope.USER, uploaderEmail, size, 1, true);
+        add(UsageScope.PROCEDURE, document.getProcedure().getUuid(), size, 1, true);
+    }
+
+    @Override
+    public void refund(ProcedureDocument document) {
+        long size = sizeOf(document);
+        add(UsageScope.USER, document.getActorEmail(), -size, -1, false);
+        add(UsageScope.PROCEDURE, document.getProcedure().getUuid(), -size, -1, false);
+    }
+
+    @Override
+    public StorageUsageReport getUsage() {
+        return new StorageUsageReport(
+            usageRepository.findTop20ByScopeOrderByBytesDesc(UsageScope.USER).stream().map(this::toEntry).toList(),
+            usageRepository.findTop20ByScopeOrderByBytesDesc(UsageScope.PROCEDURE).stream().map(this::toEntry).toList()
+        );
+    }
+
+    @Override
+    public List<UsageEntry> getUsage(String owner) {
+        return usageRepository.findByOwner(owner).stream().map(this::toEntry).toList();
+    }
+
+    private void check(UsageScope scope, String owner, long size) {
+        if (owner == null || !quota.isEnabled()) {
+            return;
+        }
+        StorageUsage usage = usageRepository.findByScopeAndOwner(scope, owner).orElse(null);
+        long bytes = usage != null ? usage.getBytes() : 0;
+        long files = usage != null ? usage.getFiles() : 0;
+        if (exceeds(bytes + size, quota.maxBytes(scope)) || exceeds(files + 1, quota.maxFiles(scope))) {
+            throw rejected(scope, owner);
+        }
+    }
+
+    private void add(UsageScope scope, String owner, long bytes, int files, boolean enforce) {
+        if (owner == null) {
+            return;
+        }
+        long maxBytes = enforce ? quota.maxBytes(scope) : -1;
+        long maxFiles = enforce ? quota.maxFiles(scope) : -1;
+        if (usageRepository.addWithinLimits(scope, owner, bytes, files, maxBytes, maxFiles, Instant.now()) == 1) {
+            return;
+        }
+        if (usageRepository.findByScopeAndOwner(scope, owner).isPresent()) {
+            throw rejected(scope, owner);
+        }
+        // first document of this owner
+        createRow(scope, owner);
+        if (usageRepository.addWithinLimits(scope, owner, bytes, files, maxBytes, maxFiles, Instant.now()) != 1) {
+            throw rejected(scope, owner);
+        }
+    }
+
+    // committed on its own so the row is there for the caller's UPDATE, and so a concurrent
+    // first upload for the same owner finds it rather than inserting a second one
+    private void createRow(UsageScope scope, String owner) {
+        try {
+            rowTx.executeWithoutResult(status -> {
+                if (usageRepository.findByScopeAndOwner(scope, owner).isEmpty()) {
+                    StorageUsage usage = new StorageUsage();
+                    usage.setScope(scope);
+                    usage.setOwner(owner);
+                    usageRepository.saveAndFlush(usage);
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            // created by a concurrent upload in the meantime
+        }
+    }
+
+    private QuotaExceededException rejected(UsageScope scope, String owner) {
+        meterRegistry.counter("hirepay.storage.quota.rejected", "scope", scope.name().toLowerCase()).increment();
+        DataSize maxSize = DataSize.ofBytes(quota.maxBytes(scope));
+        return new QuotaExceededException("Storage quota exceeded for "
+                + (scope == UsageScope.USER ? "user " : "procedure ") + owner + ": the limit is "
+                + (maxSize.toMegabytes() > 0 ? maxSize.toMegabytes() + "MB" : maxSize.toKilobytes() + "KB")
+                + " in " + quota.maxFiles(scope) + " files");
+    }
+
+    private UsageEntry toEntry(StorageUsage usage) {
+        return new UsageEntry(usage.getScope(), usage.getOwner(), usage.getBytes(), usage.getFiles(),
+                quota.maxBytes(usage.getScope()), quota.maxFiles(usage.getScope()));
+    }
+
+    private static boolean exceeds(long value, long limit) {
+        return limit >= 0 && value > limit;
+    }
+
+    // size as uploaded; documents recorded by hand-entered path have none
+    private static long sizeOf(ProcedureDocument document) {
+        StoredDocument stored = StoredDocument.fromMetadataJson(document.getLocation(), document.getMetadataJson());
+        return stored != null ? stored.getSize() : 0;
+    }
+}
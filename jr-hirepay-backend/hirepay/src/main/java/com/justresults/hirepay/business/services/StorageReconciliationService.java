@@ -0,0 +1,19 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.dto.StorageDTOs.ReconciliationReport;
+
+import java.io.IOException;
+
+public interface StorageReconciliationService {
+
+    /**
+     * Walk the storage listing and the referenced locations side by side and count (or, with
+     * delete, remove) stored objects that no document points at.
+     */
+    ReconciliationReport reconcile(boolean delete) throws IOException;
+
+    /**
+     * Outcome of the most recent run, or null before the first one
+     */
+    ReconciliationReport getLastReport();
+}
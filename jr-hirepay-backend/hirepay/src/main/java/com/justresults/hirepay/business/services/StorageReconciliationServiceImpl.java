@@ -0,0 +1,373 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.config.StorageProperties;
+import com.justresults.hirepay.domain.DocumentBlob;
+import com.justresults.hirepay.dto.StorageDTOs.ReconciliationReport;
+import com.justresults.hirepay.repository.DocumentBlobRepository;
+import com.justresults.hirepay.repository.ProcedureDocumentRepository;
+import com.justresults.hirepay.storage.StorageBackend;
+import com.justresults.hirepay.storage.StorageObjectInfo;
+import com.justresults.hirepay.util.DocumentStorageService;
+import com.justresults.hirepay.util.MaintenanceRunner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Finds stored objects that no procedure_documents row points at: files left behind by
+ * transactions that rolled back before cleanup existed, replaced versions, crashes between
+ * storing and committing. Both sides are consumed as sorted streams and merged, so memory use
+ * does not grow with the number of documents.
+ * <p>
+ * Referenced locations are read in keyset pages, each in a short query of its own, so the
+ * walk holds no transaction or snapshot open however long it takes. The database orders
+ * locations by its own collation, which need not match Java string order, so every candidate
+ * is checked once more with an exact lookup before it is counted.
+ * <p>
+ * Shared blobs and chunks are only deleted under their row lock and while their reference
+ * count is zero: an upload that has just taken a reference to an old blob has not committed
+ * its document row yet, and the blob's age does not protect it.
+ */
+@Service
+public class StorageReconciliationServiceImpl implements StorageReconciliationService {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageReconciliationServiceImpl.class);
+    private static final int LOCATION_PAGE_SIZE = 1000;
+
+    private final ProcedureDocumentRepository documentRepository;
+    private final DocumentBlobRepository blobRepository;
+    private final DocumentStorageService documentStorageService;
+    private final StorageBackend backend;
+    private final MaintenanceRunner maintenance;
+    private final StorageProperties.Gc settings;
+    private final Path root;
+    private final TransactionTemplate writeTx;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile ReconciliationReport lastReport;
+
+    private final Counter orphansFound;
+    private final Counter orphansDeleted;
+    private final Counter bytesReclaimed;
+    private final AtomicLong pendingOrphanBytes = new AtomicLong();
+    private final AtomicLong missingObjects = new AtomicLong();
+
+    public StorageReconciliationServiceImpl(ProcedureDocumentRepository documentRepository,
+                                            DocumentBlobRepository blobRepository,
+                                            DocumentStorageService documentStorageService,
+                                            StorageBackend backend,
+                                            StorageProperties storageProperties,
+                                            PlatformTransactionManager transactionManager,
+                                            MaintenanceRunner maintenance,
+                                            MeterRegistry meterRegistry) {
+        this.documentRepository = documentRepository;
+        this.maintenance = maintenance;
+        this.blobRepository = blobRepository;
+        this.documentStorageService = documentStorageService;
+        this.backend = backend;
+        this.settings = storageProperties.getGc();
+        this.root = Paths.get(storageProperties.getFolder()).toAbsolutePath().normalize();
+        this.writeTx = new TransactionTemplate(transactionManager);
+        this.writeTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        this.orphansFound = Counter.builder("hirepay.storage.gc.orphans")
+                .description("Unreferenced stored objects found")
+                .tag("action", "found")
+                .register(meterRegistry);
+        this.orphansDeleted = Counter.builder("hirepay.storage.gc.orphans")
+                .description("Unreferenced stored objects deleted")
+                .tag("action", "deleted")
+                .register(meterRegistry);
+        this.bytesReclaimed = Counter.builder("hirepay.storage.gc.reclaimed")
+                .description("Bytes freed by deleting unreferenced objects")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("hirepay.storage.gc.orphan.bytes", pendingOrphanBytes, AtomicLong::get)
+                .description("Bytes held by unreferenced objects left in place by the last run")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("hirepay.storage.gc.missing", missingObjects, AtomicLong::get)
+                .description("Referenced locations with no stored object at the last run")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.gc.interval:PT24H}", initialDelayString = "${storage.gc.initial-delay:PT30M}")
+    public void scheduledRun() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        // walks the whole store: keep it off the scheduler's threads
+        maintenance.run("Storage reconciliation", () -> {
+            try {
+                reconcile(settings.isDelete());
+            } catch (Exception e) {
+                log.warn("Storage reconciliation failed", e);
+            }
+        });
+    }
+
+    @Override
+    public ReconciliationReport reconcile(boolean delete) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Storage reconciliation is already running");
+        }
+        try {
+            ReconciliationReport report = new ReconciliationReport(Instant.now(), delete);
+            Instant cutoff = report.getStartedAt().minus(settings.getMinAge());
+            merge(report, cutoff, delete);
+            report.setFinishedAt(Instant.now());
+            pendingOrphanBytes.set(report.getOrphanBytes() - report.getBytesReclaimed());
+            missingObjects.set(report.getMissingObjects());
+            lastReport = report;
+            log.info("Storage reconciliation: {} objects, {} orphans ({} bytes), {} deleted ({} bytes), {} missing",
+                    report.getObjectsScanned(), report.getOrphansFound(), report.getOrphanBytes(),
+                    report.getOrphansDeleted(), report.getBytesReclaimed(), report.getMissingObjects());
+            return report;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    @Override
+    public ReconciliationReport getLastReport() {
+        return lastReport;
+    }
+
+    private void merge(ReconciliationReport report, Instant cutoff, boolean delete) throws IOException {
+        String scheme = DocumentStorageService.LOCATION_SCHEME + "%";
+        try (Stream<String> stored = backend.list("")) {
+            Iterator<String> current = new LocationPages(after ->
+                    documentRepository.findLocationsStartingWithAfter(scheme, after, LOCATION_PAGE_SIZE));
+            Iterator<String> legacy = new LocationPages(after ->
+                    documentRepository.findLocationsNotStartingWithAfter(scheme, after, LOCATION_PAGE_SIZE));
+
+            // absolute paths sort before "storage://", so the two are separate sorted runs
+            Iterator<String> referenced = new SortedMerge(keys(current), keys(legacy));
+            String ref = referenced.hasNext() ? referenced.next() : null;
+            String lastMissing = null;
+
+            for (Iterator<String> it = stored.iterator(); it.hasNext(); ) {
+                String key = it.next();
+                if (key.startsWith(DocumentPreviewServiceImpl.PREVIEW_PREFIX)
+                        || key.startsWith(ChunkedUploadServiceImpl.PART_PREFIX)
+                        || key.startsWith(RenderCacheServiceImpl.CACHE_PREFIX)) {
+                    // derived images keyed by content hash, parts of uploads in progress and
+                    // the render cache's own copies: none is referenced by a document row
+                    continue;
+                }
+                report.setObjectsScanned(report.getObjectsScanned() + 1);
+                while (ref != null && ref.compareTo(key) < 0) {
+                    if (!ref.equals(lastMissing)) {
+                        report.setMissingObjects(report.getMissingObjects() + 1);
+                        lastMissing = ref;
+                    }
+                    ref = referenced.hasNext() ? referenced.next() : null;
+                }
+                if (ref != null && ref.equals(key)) {
+                    // several documents may share one blob or segment
+                    while (ref != null && ref.equals(key)) {
+                        ref = referenced.hasNext() ? referenced.next() : null;
+                    }
+                    continue;
+                }
+                handleCandidate(key, report, cutoff, delete);
+            }
+            while (ref != null) {
+                if (!ref.equals(lastMissing)) {
+                    report.setMissingObjects(report.getMissingObjects() + 1);
+                    lastMissing = ref;
+                }
+                ref = referenced.hasNext() ? referenced.next() : null;
+            }
+        }
+    }
+
+    private void handleCandidate(String key, ReconciliationReport report, Instant cutoff, boolean delete) throws IOException {
+        Optional<StorageObjectInfo> info = backend.stat(key);
+        // gone already, or possibly written by a transaction that has not committed yet
+        if (info.isEmpty() || info.get().getLastModified().isAfter(cutoff) || isReferenced(key)) {
+            return;
+        }
+        long size = info.get().getSize();
+        report.setOrphansFound(report.getOrphansFound() + 1);
+        report.setOrphanBytes(report.getOrphanBytes() + size);
+        orphansFound.increment();
+        if (!delete) {
+            log.debug("Orphaned object {} ({} bytes)", key, size);
+            return;
+        }
+
+        boolean deleted;
+        if (key.startsWith(DocumentStorageService.BLOB_PREFIX) || key.startsWith(DocumentStorageService.CHUNK_PREFIX)) {
+            deleted = writeTx.execute(status -> deleteSharedObject(key));
+        } else {
+            deleted = backend.delete(key);
+        }
+        if (deleted) {
+            report.setOrphansDeleted(report.getOrphansDeleted() + 1);
+            report.setBytesReclaimed(report.getBytesReclaimed() + size);
+            orphansDeleted.increment();
+            bytesReclaimed.increment(size);
+            log.info("Deleted orphaned object {} ({} bytes)", key, size);
+        }
+    }
+
+    /**
+     * Runs in writeTx. Deletes a blob or chunk, row and object together, under the row lock
+     * uploads take their references with, and only if the row still counts no references. A
+     * row without documents would otherwise resurrect the file on the next upload.
+     */
+    private boolean deleteSharedObject(String key) {
+        Optional<DocumentBlob> row = blobRepository.findByLocation(documentStorageService.toLocation(key))
+                .flatMap(blob -> blobRepository.findForUpdate(blob.getSha256()));
+        if (row.isPresent()) {
+            if (row.get().getRefCount() > 0) {
+                log.info("Kept {}: an upload took a reference to it during the pass", key);
+                return false;
+            }
+            blobRepository.delete(row.get());
+        }
+        try {
+            return backend.delete(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isReferenced(String key) {
+        String location = documentStorageService.toLocation(key);
+        if (key.startsWith(DocumentStorageService.CHUNK_PREFIX)) {
+            // chunks are referenced from recipes, which the blob row's count stands in for
+            return blobRepository.findByLocation(location).isPresent();
+        }
+        if (key.startsWith(DocumentStorageService.BLOB_PREFIX)
+                && blobRepository.findByLocation(location).map(blob -> blob.getRefCount() > 0).orElse(false)) {
+            // counted by an upload whose document row may not have committed yet
+            return true;
+        }
+        return documentRepository.existsByLocation(location)
+                || documentRepository.existsByLocationStartingWith(location + DocumentStorageService.SEGMENT_ENTRY_SEPARATOR)
+                || documentRepository.existsByLocation(root.resolve(key).toString());
+    }
+
+    /**
+     * Storage keys of the given locations, in order. Archived documents reference their
+     * segment; truncating at the separator keeps the sequence sorted.
+     */
+    private Iterator<String> keys(Iterator<String> locations) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(locations, Spliterator.ORDERED), false)
+                .map(documentStorageService::keyOf)
+                .filter(Objects::nonNull)
+                .map(key -> DocumentStorageService.isSegmentKey(key)
+                        ? key.substring(0, key.indexOf(DocumentStorageService.SEGMENT_ENTRY_SEPARATOR))
+                        : key)
+                .iterator();
+    }
+
+    /**
+     * Distinct locations read a page at a time, each page starting after the last location of
+     * the one before.
+     */
+    private static final class LocationPages implements Iterator<String> {
+        private final Function<String, List<String>> pageAfter;
+        private Iterator<String> page = Collections.emptyIterator();
+        private String last = "";
+        private boolean exhausted;
+
+        LocationPages(Function<String, List<String>> pageAfter) {
+            this.pageAfter = pageAfter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!page.hasNext() && !exhausted) {
+                List<String> next = pageAfter.apply(last);
+                exhausted = next.size() < LOCATION_PAGE_SIZE;
+                page = next.iterator();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = page.next();
+            return last;
+        }
+    }
+
+    /**
+     * Merges two sorted iterators into one sorted sequence.
+     */
+    private static final class SortedMerge implements Iterator<String> {
+        private final Iterator<String> a;
+        private final Iterator<String> b;
+        private String nextA;
+        private String nextB;
+
+        SortedMerge(Iterator<String> a, Iterator<String> b) {
+            this.a = a;
+            this.b = b;
+            this.nextA = a.hasNext() ? a.next() : null;
+            this.nextB = b.hasNext() ? b.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextA != null || nextB != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result;
+            if (nextB == null || (nextA != null && nextA.compareTo(nextB) <= 0)) {
+                result = nextA;
+                nextA = advance(a, result);
+            } else {
+                result = nextB;
+                nextB = advance(b, result);
+            }
+            return result;
+        }
+
+        // an input out of order would silently skew the counts, so refuse to go on
+        private static String advance(Iterator<String> it, String previous) {
+            String next = it.hasNext() ? it.next() : null;
+            if (next != null && next.compareTo(previous) < 0) {
+                throw new IllegalStateException("Document locations are not sorted bytewise: "
+                        + next + " came after " + previous);
+            }
+            return next;
+        }
+    }
+}
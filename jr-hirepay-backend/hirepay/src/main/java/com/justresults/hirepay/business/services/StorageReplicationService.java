@@ -0,0 +1,30 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.dto.StorageDTOs.ReplicationStatus;
+import com.justresults.hirepay.dto.StorageDTOs.ResyncReport;
+
+import java.io.IOException;
+
+public interface StorageReplicationService {
+
+    /**
+     * Queue a stored object for copying to the mirror (or removal from it, if it is gone by
+     * the time the queue gets to it). Durable once this returns, unless the queue itself
+     * cannot be written: the object is already on the primary then, so the failure is logged
+     * and counted as unqueued rather than failing the write, and a resync picks the key up.
+     */
+    void enqueue(String key);
+
+    /**
+     * Copy everything queued and due now; returns the number of objects brought up to date
+     */
+    int drain();
+
+    /**
+     * Walk both stores side by side and queue every object that differs, to catch the mirror
+     * up after it was added, lost or restored from an old copy.
+     */
+    ResyncReport resync() throws IOException;
+
+    ReplicationStatus getStatus();
+}
@@ -0,0 +1,329 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.config.StorageBackendConfig;
+import com.justresults.hirepay.config.StorageProperties;
+import com.justresults.hirepay.domain.ReplicationTask;
+import com.justresults.hirepay.dto.StorageDTOs.ReplicationStatus;
+import com.justresults.hirepay.dto.StorageDTOs.ResyncReport;
+import com.justresults.hirepay.repository.ReplicationTaskRepository;
+import com.justresults.hirepay.storage.StorageBackend;
+import com.justresults.hirepay.storage.StorageObjectInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a mirror of the document store. Every key the primary backend writes or deletes is
+ * queued in replication_queue, in a transaction of its own so the entry survives a rollback
+ * of the upload that wrote it; a background pass then makes the mirror match the primary for
+ * each queued key. A pass compares rather than replays, so queue rows can be duplicated,
+ * reordered or processed by two nodes at once without harm.
+ * <p>
+ * Copies that fail stay queued and are retried with doubling delays. Lag is the age of the
+ * oldest queued key.
+ */
+@Service
+public class StorageReplicationServiceImpl implements StorageReplicationService {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageReplicationServiceImpl.class);
+    private static final Duration FIRST_RETRY_DELAY = Duration.ofSeconds(5);
+    private static final int RESYNC_BATCH_SIZE = 500;
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final ReplicationTaskRepository taskRepository;
+    private final StorageBackend backend;
+    // null when storage.replication is disabled
+    private final StorageBackend replica;
+    private final StorageProperties.Replication settings;
+    private final TransactionTemplate taskTx;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean resyncing = new AtomicBoolean();
+
+    private final AtomicLong pendingObjects = new AtomicLong();
+    private final AtomicLong failingObjects = new AtomicLong();
+    private final AtomicLong unqueuedObjects = new AtomicLong();
+    private volatile Instant oldestPendingAt;
+    private volatile String lastError;
+    private volatile ResyncReport lastResync;
+
+    private final Counter copied;
+    private final Counter deleted;
+    private final Counter failures;
+    private final Counter unqueued;
+    private final Counter bytesCopied;
+
+    public StorageReplicationServiceImpl(ReplicationTaskRepository taskRepository,
+                                         StorageBackend backend,
+                                         StorageProperties storageProperties,
+                                         PlatformTransactionManager transactionManager,
+                                         MeterRegistry meterRegistry) throws IOException {
+        this.taskRepository = taskRepository;
+        this.backend = backend;
+        this.settings = storageProperties.getReplication();
+        this.replica = settings.isEnabled() ? StorageBackendConfig.replicaBackend(storageProperties) : null;
+        this.taskTx = new TransactionTemplate(transactionManager);
+        this.taskTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        this.copied = Counter.builder("hirepay.storage.replication.objects")
+                .description("Objects copied to, removed from or failed to reach the storage mirror")
+                .tag("result", "copied")
+                .register(meterRegistry);
+        this.deleted = Counter.builder("hirepay.storage.replication.objects")
+                .description("Objects copied to, removed from or failed to reach the storage mirror")
+                .tag("result", "deleted")
+                .register(meterRegistry);
+        this.failures = Counter.builder("hirepay.storage.replication.objects")
+                .description("Objects copied to, removed from or failed to reach the storage mirror")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        this.unqueued = Counter.builder("hirepay.storage.replication.objects")
+                .description("Objects copied to, removed from or failed to reach the storage mirror")
+                .tag("result", "unqueued")
+                .register(meterRegistry);
+        this.bytesCopied = Counter.builder("hirepay.storage.replication.bytes")
+                .description("Bytes copied to the mirror")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("hirepay.storage.replication.pending", pendingObjects, AtomicLong::get)
+                .description("Objects queued for the mirror")
+                .register(meterRegistry);
+        Gauge.builder("hirepay.storage.replication.failing", failingObjects, AtomicLong::get)
+                .description("Queued objects whose last copy attempt failed")
+                .register(meterRegistry);
+        Gauge.builder("hirepay.storage.replication.lag", this, service -> service.lag().toMillis() / 1000.0)
+                .description("Age of the oldest object not yet on the mirror")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+
+        if (replica != null) {
+            refreshLag();
+        }
+    }
+
+    @Override
+    public void enqueue(String key) {
+        ReplicationTask task = new ReplicationTask();
+        task.setObjectKey(key);
+        try {
+            taskTx.executeWithoutResult(status -> taskRepository.save(task));
+        } catch (RuntimeException e) {
+            // the primary already holds the change; failing the write now would not undo it
+            String error = abbreviate(e.getClass().getSimpleName() + ": " + e.getMessage());
+            lastError = key + ": not queued: " + error;
+            unqueuedObjects.incrementAndGet();
+            unqueued.increment();
+            log.error("Could not queue {} for the storage mirror; it stays missing there until a resync: {}",
+                    key, error);
+            return;
+        }
+        pendingObjects.incrementAndGet();
+        if (oldestPendingAt == null) {
+            oldestPendingAt = task.getEnqueuedAt();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.replication.poll-interval:PT5S}")
+    public void scheduledDrain() {
+        if (replica == null) {
+            return;
+        }
+        try {
+            drain();
+        } catch (Exception e) {
+            log.warn("Storage replication pass failed", e);
+        }
+    }
+
+    @Override
+    public int drain() {
+        if (replica == null || !draining.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            int replicated = 0;
+            List<ReplicationTask> due;
+            // failed keys are rescheduled into the future, so this ends once the due ones are done
+            while (!(due = taskRepository.findTop200ByNextAttemptAtLessThanEqualOrderByIdAsc(Instant.now())).isEmpty()) {
+                // a key written several times since the last pass is compared once
+                Map<String, ReplicationTask> latest = new LinkedHashMap<>();
+                for (ReplicationTask task : due) {
+                    latest.put(task.getObjectKey(), task);
+                }
+                for (ReplicationTask task : latest.values()) {
+                    if (replicate(task)) {
+                        replicated++;
+                    }
+                }
+            }
+            return replicated;
+        } finally {
+            refreshLag();
+            draining.set(false);
+        }
+    }
+
+    @Override
+    public ResyncReport resync() throws IOException {
+        if (replica == null) {
+            throw new IllegalStateException("Storage replication is not enabled");
+        }
+        if (!resyncing.compareAndSet(false, true)) {
+            throw new IllegalStateException("Storage resync is already running");
+        }
+        try {
+            ResyncReport report = new ResyncReport(Instant.now());
+            List<String> queued = new ArrayList<>();
+            // both listings are sorted, so one pass over each finds every difference
+            try (Stream<String> primaryKeys = backend.list("");
+                 Stream<String> mirrorKeys = replica.list("")) {
+                Iterator<String> primaryIt = primaryKeys.iterator();
+                Iterator<String> mirrorIt = mirrorKeys.iterator();
+                String primaryKey = primaryIt.hasNext() ? primaryIt.next() : null;
+                String mirrorKey = mirrorIt.hasNext() ? mirrorIt.next() : null;
+                while (primaryKey != null || mirrorKey != null) {
+                    report.setObjectsScanned(report.getObjectsScanned() + 1);
+                    int order = primaryKey == null ? 1 : mirrorKey == null ? -1 : primaryKey.compareTo(mirrorKey);
+                    if (order < 0) {
+                        report.setMissing(report.getMissing() + 1);
+                        queue(queued, primaryKey);
+                        primaryKey = primaryIt.hasNext() ? primaryIt.next() : null;
+                    } else if (order > 0) {
+                        report.setExtraneous(report.getExtraneous() + 1);
+                        queue(queued, mirrorKey);
+                        mirrorKey = mirrorIt.hasNext() ? mirrorIt.next() : null;
+                    } else {
+                        if (!sameSize(primaryKey)) {
+                            report.setMismatched(report.getMismatched() + 1);
+                            queue(queued, primaryKey);
+                        }
+                        primaryKey = primaryIt.hasNext() ? primaryIt.next() : null;
+                        mirrorKey = mirrorIt.hasNext() ? mirrorIt.next() : null;
+                    }
+                }
+            }
+            flush(queued);
+            report.setFinishedAt(Instant.now());
+            lastResync = report;
+            log.info("Storage resync: {} objects, {} missing from the mirror, {} only on the mirror, {} differing; {} queued",
+                    report.getObjectsScanned(), report.getMissing(), report.getExtraneous(),
+                    report.getMismatched(), report.getQueued());
+            return report;
+        } finally {
+            refreshLag();
+            resyncing.set(false);
+        }
+    }
+
+    @Override
+    public ReplicationStatus getStatus() {
+        return new ReplicationStatus(replica != null, pendingObjects.get(), failingObjects.get(),
+                unqueuedObjects.get(), oldestPendingAt, lag().toSeconds(), lastError, lastResync);
+    }
+
+    private boolean replicate(ReplicationTask task) {
+        String key = task.getObjectKey();
+        try {
+            copy(key);
+            taskTx.executeWithoutResult(status -> taskRepository.deleteUpTo(key, task.getId()));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            int attempts = task.getAttempts() + 1;
+            Duration delay = retryDelay(attempts);
+            String error = abbreviate(e.getClass().getSimpleName() + ": " + e.getMessage());
+            taskTx.executeWithoutResult(status -> taskRepository.postponeUpTo(key, task.getId(),
+                    Instant.now().plus(delay), error));
+            lastError = key + ": " + error;
+            failures.increment();
+            log.warn("Replicating {} failed (attempt {}), retrying in {}: {}", key, attempts, delay, error);
+            return false;
+        }
+    }
+
+    private void copy(String key) throws IOException {
+        Optional<StorageObjectInfo> source = backend.stat(key);
+        if (source.isEmpty()) {
+            if (replica.delete(key)) {
+                deleted.increment();
+            }
+            return;
+        }
+        long size = source.get().getSize();
+        Optional<StorageObjectInfo> copy = replica.stat(key);
+        // keys are written once and never change content, so an equal size means it is there
+        if (copy.isPresent() && copy.get().getSize() == size) {
+            return;
+        }
+        try (InputStream in = backend.open(key)) {
+            replica.put(key, in, size);
+        }
+        copied.increment();
+        bytesCopied.increment(size);
+    }
+
+    private boolean sameSize(String key) throws IOException {
+        Optional<StorageObjectInfo> source = backend.stat(key);
+        Optional<StorageObjectInfo> copy = replica.stat(key);
+        return source.isPresent() && copy.isPresent() && source.get().getSize() == copy.get().getSize();
+    }
+
+    private void queue(List<String> queued, String key) {
+        queued.add(key);
+        if (queued.size() >= RESYNC_BATCH_SIZE) {
+            flush(queued);
+        }
+    }
+
+    private void flush(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<ReplicationTask> tasks = keys.stream().map(key -> {
+            ReplicationTask task = new ReplicationTask();
+            task.setObjectKey(key);
+            return task;
+        }).toList();
+        taskTx.executeWithoutResult(status -> taskRepository.saveAll(tasks));
+        keys.clear();
+    }
+
+    private void refreshLag() {
+        pendingObjects.set(taskRepository.count());
+        failingObjects.set(taskRepository.countByAttemptsGreaterThan(0));
+        oldestPendingAt = taskRepository.findFirstByOrderByIdAsc().map(ReplicationTask::getEnqueuedAt).orElse(null);
+    }
+
+    private Duration lag() {
+        Instant oldest = oldestPendingAt;
+        return oldest == null ? Duration.ZERO : Duration.between(oldest, Instant.now());
+    }
+
+    private Duration retryDelay(int attempts) {
+        Duration delay = FIRST_RETRY_DELAY.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(settings.getMaxRetryDelay()) > 0 ? settings.getMaxRetryDelay() : delay;
+    }
+
+    private static String abbreviate(String message) {
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,17 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.dto.StorageDTOs.ScrubReport;
+
+public interface StorageScrubService {
+
+    /**
+     * Re-read every stored document and compare its SHA-256 with the one recorded at upload,
+     * counting documents whose bytes are missing or no longer match.
+     */
+    ScrubReport scrub() throws InterruptedException;
+
+    /**
+     * Outcome of the most recent run, or null before the first one
+     */
+    ScrubReport getLastReport();
+}
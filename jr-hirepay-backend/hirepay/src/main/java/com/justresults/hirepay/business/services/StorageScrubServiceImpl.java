@@ -0,0 +1,252 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.config.StorageProperties;
+import com.justresults.hirepay.domain.ProcedureDocument;
+import com.justresults.hirepay.dto.StorageDTOs.ScrubFinding;
+import com.justresults.hirepay.dto.StorageDTOs.ScrubReport;
+import com.justresults.hirepay.repository.ProcedureDocumentRepository;
+import com.justresults.hirepay.storage.ByteRateLimiter;
+import com.justresults.hirepay.util.DocumentStorageService;
+import com.justresults.hirepay.util.MaintenanceRunner;
+import com.justresults.hirepay.util.StoredDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detects silent corruption: every document is read back through the same path downloads use
+ * (so compressed, chunked and archived documents are decoded first) and its SHA-256 compared
+ * with the one captured at upload. Documents are hashed in parallel on a small fork-join pool
+ * of its own, and all threads share one read budget so a run never saturates the disk.
+ * <p>
+ * Documents are paged by id rather than held in one transaction; a document whose file was
+ * replaced or released while the run was under way is re-read from the database before it
+ * is reported.
+ */
+@Service
+public class StorageScrubServiceImpl implements StorageScrubService {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageScrubServiceImpl.class);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FINDINGS = 100;
+
+    private final ProcedureDocumentRepository documentRepository;
+    private final DocumentStorageService documentStorageService;
+    private final StorageProperties.Scrub settings;
+    private final MaintenanceRunner maintenance;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile ScrubReport lastReport;
+
+    private final Counter bytesVerified;
+    private final AtomicLong missingDocuments = new AtomicLong();
+    private final AtomicLong corruptDocuments = new AtomicLong();
+
+    public StorageScrubServiceImpl(ProcedureDocumentRepository documentRepository,
+                                   DocumentStorageService documentStorageService,
+                                   StorageProperties storageProperties,
+                                   MaintenanceRunner maintenance,
+                                   MeterRegistry meterRegistry) {
+        this.documentRepository = documentRepository;
+        this.maintenance = maintenance;
+        this.documentStorageService = documentStorageService;
+        this.settings = storageProperties.getScrub();
+
+        this.bytesVerified = Counter.builder("hirepay.storage.scrub.verified")
+                .description("Document bytes re-read and hashed by the integrity scrubber")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("hirepay.storage.scrub.problems", missingDocuments, AtomicLong::get)
+                .description("Documents whose stored bytes were missing at the last scrub")
+                .tag("problem", "missing")
+                .register(meterRegistry);
+        Gauge.builder("hirepay.storage.scrub.problems", corruptDocuments, AtomicLong::get)
+                .description("Documents whose stored bytes no longer match their checksum at the last scrub")
+                .tag("problem", "corrupt")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.scrub.interval:P7D}", initialDelayString = "${storage.scrub.initial-delay:PT2H}")
+    public void scheduledRun() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        // rate-limited, so it runs for hours: keep it off the scheduler's threads
+        maintenance.run("Storage scrub", () -> {
+            try {
+                scrub();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("Storage scrub failed", e);
+            }
+        });
+    }
+
+    @Override
+    public ScrubReport scrub() throws InterruptedException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Storage scrub is already running");
+        }
+        try {
+            ScrubReport report = new ScrubReport(Instant.now());
+            Tally tally = new Tally(report);
+            ByteRateLimiter limiter = new ByteRateLimiter(settings.getMaxReadRate().toBytes());
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, settings.getParallelism()));
+            try {
+                long after = 0;
+                List<ProcedureDocument> page;
+                while (!(page = documentRepository.findTop200ByIdGreaterThanOrderByIdAsc(after)).isEmpty()) {
+                    after = page.get(page.size() - 1).getId();
+                    List<ProcedureDocument> documents = page;
+                    // a parallel stream started from inside the pool runs on the pool's threads
+                    pool.submit(() -> documents.parallelStream().forEach(doc -> verify(doc, tally, limiter))).get();
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof CancellationException) {
+                    throw new InterruptedException("Storage scrub interrupted");
+                }
+                throw new IllegalStateException("Storage scrub failed", e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+
+            tally.copyTo(report);
+            report.setFinishedAt(Instant.now());
+            missingDocuments.set(report.getMissing());
+            corruptDocuments.set(report.getCorrupt());
+            lastReport = report;
+            log.info("Storage scrub: {} documents, {} verified ({} bytes), {} unverifiable, {} missing, {} corrupt",
+                    report.getDocumentsScanned(), report.getVerified(), report.getBytesVerified(),
+                    report.getUnverifiable(), report.getMissing(), report.getCorrupt());
+            return report;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    @Override
+    public ScrubReport getLastReport() {
+        return lastReport;
+    }
+
+    private void verify(ProcedureDocument document, Tally tally, ByteRateLimiter limiter) {
+        tally.scanned.increment();
+        String location = document.getLocation();
+        StoredDocument stored = StoredDocument.fromMetadataJson(location, document.getMetadataJson());
+        if (location == null || stored == null || stored.getSha256() == null) {
+            tally.unverifiable.increment();
+            return;
+        }
+
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (InputStream in = documentStorageService.openFromStorage(location).open()) {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+                size += n;
+                limiter.acquire(n);
+            }
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            if (stillAt(document)) {
+                tally.missing.increment();
+                tally.add(new ScrubFinding(document.getId(), location, "MISSING", e.getMessage()));
+                log.error("Document {} is missing from storage ({})", document.getId(), location);
+            }
+            return;
+        } catch (IOException e) {
+            // undecodable gzip, truncated segment and the like
+            if (stillAt(document)) {
+                tally.corrupt.increment();
+                tally.add(new ScrubFinding(document.getId(), location, "CORRUPT", "Unreadable: " + e.getMessage()));
+                log.error("Document {} could not be read back ({})", document.getId(), location, e);
+            }
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Storage scrub interrupted");
+        }
+        bytesVerified.increment(size);
+        tally.bytes.add(size);
+
+        String actual = HexFormat.of().formatHex(digest.digest());
+        if (actual.equalsIgnoreCase(stored.getSha256())) {
+            tally.verified.increment();
+        } else if (stillAt(document)) {
+            tally.corrupt.increment();
+            tally.add(new ScrubFinding(document.getId(), location, "CORRUPT",
+                    "Expected SHA-256 " + stored.getSha256() + ", read " + actual + " over " + size + " bytes"));
+            log.error("Document {} does not match its recorded checksum ({})", document.getId(), location);
+        }
+    }
+
+    // false when the document was deleted or moved to another file since its page was read
+    private boolean stillAt(ProcedureDocument document) {
+        return documentRepository.findById(document.getId())
+                .map(current -> document.getLocation().equals(current.getLocation()))
+                .orElse(false);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Counters updated from the pool's threads, copied into the report when the run ends.
+     */
+    private static class Tally {
+        final LongAdder scanned = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder verified = new LongAdder();
+        final LongAdder unverifiable = new LongAdder();
+        final LongAdder missing = new LongAdder();
+        final LongAdder corrupt = new LongAdder();
+        private final List<ScrubFinding> findings;
+
+        Tally(ScrubReport report) {
+            this.findings = report.getFindings();
+        }
+
+        void add(ScrubFinding finding) {
+            synchronized (findings) {
+                if (findings.size() < MAX_FINDINGS) {
+                    findings.add(finding);
+                }
+            }
+        }
+
+        void copyTo(ScrubReport report) {
+            report.setDocumentsScanned(scanned.sum());
+            report.setBytesVerified(bytes.sum());
+            report.setVerified(verified.sum());
+            report.setUnverifiable(unverifiable.sum());
+            report.setMissing(missing.sum());
+            report.setCorrupt(corrupt.sum());
+        }
+    }
+}
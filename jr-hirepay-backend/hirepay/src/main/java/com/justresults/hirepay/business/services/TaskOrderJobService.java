@@ -0,0 +1,34 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.dto.TaskOrderDTOs.TaskOrderJobResponse;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface TaskOrderJobService {
+
+    /**
+     * Queue generation of the procedure's task order. The procedure must be in
+     * PAYMENT_TAX_APPROVED; if a job for it is already queued or running, that job is
+     * returned instead of a second one.
+     */
+    TaskOrderJobResponse submit(String procedureUuid, String actorEmail);
+
+    TaskOrderJobResponse getJob(String jobId);
+
+    /**
+     * The job once it finishes, or as it stands after {@code wait}, whichever comes first.
+     */
+    CompletableFuture<TaskOrderJobResponse> awaitJob(String jobId, Duration wait);
+
+    /**
+     * Queue a job for each procedure, or for every HIRING procedure in PAYMENT_TAX_APPROVED
+     * when {@code procedureUuids} is null, and stream one NDJSON line per procedure as its
+     * job finishes. A procedure that cannot be queued gets a FAILED line without a job id;
+     * one still unfinished after task-order.bulk.wait is reported as it stands.
+     */
+    StreamingResponseBody generateAll(List<String> procedureUuids, String actorEmail);
+}
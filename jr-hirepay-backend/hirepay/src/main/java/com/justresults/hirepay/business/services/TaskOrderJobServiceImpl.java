@@ -0,0 +1,358 @@
+package com.justresults.hirepay.business.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.justresults.hirepay.business.events.TaskOrderJobFinishedEvent;
+import com.justresults.hirepay.domain.Procedure;
+import com.justresults.hirepay.domain.ProcedureDocument;
+import com.justresults.hirepay.domain.TaskOrderJob;
+import com.justresults.hirepay.dto.TaskOrderDTOs.TaskOrderJobResponse;
+import com.justresults.hirepay.enumeration.JobStatus;
+import com.justresults.hirepay.enumeration.ProcedureStatus;
+import com.justresults.hirepay.enumeration.ProductType;
+import com.justresults.hirepay.repository.ProcedureRepository;
+import com.justresults.hirepay.repository.TaskOrderJobRepository;
+import com.justresults.hirepay.util.InvalidStateException;
+import com.justresults.hirepay.util.NotFoundException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates task orders in the background. A submitted job is a row in task_order_jobs,
+ * committed before the caller gets its id, so it survives a restart. A fixed number of
+ * worker threads per node claim QUEUED rows with a conditional update and run them; new
+ * jobs are dispatched as soon as they are submitted, and a periodic pass picks up the
+ * rest: jobs queued on other nodes, retries, and jobs whose node died mid-run.
+ * <p>
+ * Each pass also refreshes the heartbeat of the jobs running on this node, and a job is
+ * only presumed dead once its heartbeat is older than task-order.jobs.stale-after, so a
+ * slow run is never requeued under a live worker.
+ * <p>
+ * The periodic pass runs on a thread of its own rather than the shared scheduler, so jobs
+ * keep moving while other scheduled work is busy. Results are written with conditional
+ * updates keyed on the run, as claims are, so a worker that was presumed dead cannot
+ * overwrite the run that replaced it.
+ * <p>
+ * A failure on a procedure in the wrong state is final. Anything else, such as storage
+ * being briefly unavailable, is retried up to task-order.jobs.max-attempts, after a delay
+ * that doubles with each attempt.
+ * Callers waiting on a job are completed when it finishes on this node; a job finished
+ * elsewhere is seen when their wait runs out.
+ * <p>
+ * Bulk generation queues one job per procedure, so it runs on the same bounded pool and
+ * each procedure still gets its own short transactions.
+ */
+@Service
+public class TaskOrderJobServiceImpl implements TaskOrderJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskOrderJobServiceImpl.class);
+    private static final Set<JobStatus> ACTIVE = EnumSet.of(JobStatus.QUEUED, JobStatus.RUNNING);
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final Duration FIRST_RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final TaskOrderJobRepository jobRepository;
+    private final ProcedureRepository procedureRepository;
+    private final TaskOrderService taskOrderService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate jobTx;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService dispatcher;
+    // one permit per worker; a job is only claimed once a worker is free to run it
+    private final Semaphore workerSlots;
+    private final int maxAttempts;
+    private final Duration staleAfter;
+    private final Duration bulkWait;
+    private final Map<String, List<CompletableFuture<TaskOrderJobResponse>>> waiters = new ConcurrentHashMap<>();
+    private final Set<String> runningHere = ConcurrentHashMap.newKeySet();
+
+    public TaskOrderJobServiceImpl(TaskOrderJobRepository jobRepository,
+                                   ProcedureRepository procedureRepository,
+                                   TaskOrderService taskOrderService,
+                                   ApplicationEventPublisher eventPublisher,
+                                   ObjectMapper objectMapper,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${task-order.jobs.workers:2}") int workers,
+                                   @Value("${task-order.jobs.max-attempts:3}") int maxAttempts,
+                                   @Value("${task-order.jobs.stale-after:PT2M}") Duration staleAfter,
+                                   @Value("${task-order.jobs.poll-interval:PT5S}") Duration pollInterval,
+                                   @Value("${task-order.bulk.wait:PT10M}") Duration bulkWait) {
+        this.jobRepository = jobRepository;
+        this.procedureRepository = procedureRepository;
+        this.taskOrderService = taskOrderService;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.jobTx = new TransactionTemplate(transactionManager);
+        this.jobTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.staleAfter = staleAfter;
+        this.bulkWait = bulkWait;
+
+        int threads = Math.max(1, workers);
+        this.workerSlots = new Semaphore(threads);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), task -> {
+                    Thread thread = new Thread(task, "task-order-job-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+
+        Gauge.builder("hirepay.taskorder.jobs.running", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Task order jobs running on this node")
+                .register(meterRegistry);
+
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "task-order-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher.scheduleWithFixedDelay(this::scheduledDispatch, pollInterval.toMillis(),
+                pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        dispatcher.shutdownNow();
+    }
+
+    @Override
+    public TaskOrderJobResponse submit(String procedureUuid, String actorEmail) {
+        Procedure procedure = procedureRepository.findByUuid(procedureUuid)
+                .orElseThrow(() -> new NotFoundException("Procedure not found: " + procedureUuid));
+        TaskOrderJob job = jobTx.execute(status -> {
+            TaskOrderJob active = jobRepository.findFirstByProcedureUuidAndStatusIn(procedureUuid, ACTIVE).orElse(null);
+            if (active != null) {
+                return active;
+            }
+            if (procedure.getStatus() != ProcedureStatus.PAYMENT_TAX_APPROVED) {
+                throw new InvalidStateException("Task Order can only be generated from PAYMENT_TAX_APPROVED status. Current status: " + procedure.getStatus());
+            }
+            TaskOrderJob created = new TaskOrderJob();
+            created.setProcedureUuid(procedureUuid);
+            created.setActorEmail(actorEmail);
+            return jobRepository.save(created);
+        });
+        dispatch();
+        return toResponse(job);
+    }
+
+    @Override
+    public TaskOrderJobResponse getJob(String jobId) {
+        return jobRepository.findById(jobId)
+                .map(TaskOrderJobServiceImpl::toResponse)
+                .orElseThrow(() -> new NotFoundException("Task order job not found: " + jobId));
+    }
+
+    @Override
+    public CompletableFuture<TaskOrderJobResponse> awaitJob(String jobId, Duration wait) {
+        TaskOrderJobResponse current = getJob(jobId);
+        if (current.isFinished() || wait.isZero() || wait.isNegative()) {
+            return CompletableFuture.completedFuture(current);
+        }
+        CompletableFuture<TaskOrderJobResponse> finished = new CompletableFuture<>();
+        waiters.computeIfAbsent(jobId, id -> new CopyOnWriteArrayList<>()).add(finished);
+        finished.whenComplete((response, e) -> waiters.computeIfPresent(jobId, (id, futures) -> {
+            futures.remove(finished);
+            return futures.isEmpty() ? null : futures;
+        }));
+        // it may have finished between the first read and registering
+        TaskOrderJobResponse again = getJob(jobId);
+        if (again.isFinished()) {
+            finished.complete(again);
+        }
+        return finished.completeOnTimeout(null, wait.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(response -> response != null ? response : getJob(jobId));
+    }
+
+    @Override
+    public StreamingResponseBody generateAll(List<String> procedureUuids, String actorEmail) {
+        List<String> selected = procedureUuids != null
+                ? procedureUuids.stream().distinct().toList()
+                : procedureRepository.findByProductAndStatus(ProductType.HIRING, ProcedureStatus.PAYMENT_TAX_APPROVED)
+                        .stream().map(Procedure::getUuid).toList();
+        return out -> {
+            BlockingQueue<TaskOrderJobResponse> finished = new LinkedBlockingQueue<>();
+            int pending = 0;
+            for (String procedureUuid : selected) {
+                TaskOrderJobResponse job;
+                try {
+                    job = submit(procedureUuid, actorEmail);
+                } catch (NotFoundException | InvalidStateException e) {
+                    writeLine(out, new TaskOrderJobResponse(null, procedureUuid, JobStatus.FAILED, 0,
+                            null, null, null, null, e.getMessage()));
+                    continue;
+                }
+                awaitJob(job.getJobId(), bulkWait)
+                        .whenComplete((response, e) -> finished.add(response != null ? response : job));
+                pending++;
+            }
+            // in the order jobs finish, not the order they were asked for
+            try {
+                for (; pending > 0; pending--) {
+                    writeLine(out, finished.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted with " + pending + " task order(s) unreported");
+            }
+        };
+    }
+
+    private void writeLine(OutputStream out, TaskOrderJobResponse result) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(result));
+        out.write('\n');
+        out.flush();
+    }
+
+    void scheduledDispatch() {
+        try {
+            if (!runningHere.isEmpty()) {
+                List<String> running = List.copyOf(runningHere);
+                jobTx.executeWithoutResult(status -> jobRepository.heartbeat(running, Instant.now()));
+            }
+            int requeued = jobTx.execute(status -> jobRepository.requeueStale(Instant.now().minus(staleAfter)));
+            if (requeued > 0) {
+                log.warn("Requeued {} task order job(s) that stopped running", requeued);
+            }
+            dispatch();
+        } catch (Exception e) {
+            log.warn("Task order job dispatch failed", e);
+        }
+    }
+
+    private void dispatch() {
+        if (workerSlots.availablePermits() == 0) {
+            return;
+        }
+        for (TaskOrderJob job : jobRepository.findDue(Instant.now())) {
+            if (!workerSlots.tryAcquire()) {
+                return;
+            }
+            boolean claimed = jobTx.execute(status -> jobRepository.claim(job.getId(), Instant.now()) == 1);
+            if (claimed) {
+                runningHere.add(job.getId());
+                executor.execute(() -> run(job.getId()));
+            } else {
+                workerSlots.release();
+            }
+        }
+    }
+
+    private void run(String jobId) {
+        boolean retry = false;
+        try {
+            TaskOrderJob job = jobRepository.findById(jobId).orElse(null);
+            if (job == null) {
+                return;
+            }
+            try {
+                ProcedureDocument document = taskOrderService.generateTaskOrder(job.getProcedureUuid(), job.getActorEmail());
+                finish(job, JobStatus.COMPLETED, document.getId(), null);
+            } catch (NotFoundException | InvalidStateException e) {
+                finish(job, JobStatus.FAILED, null, e.getMessage());
+            } catch (RuntimeException e) {
+                if (job.getAttempts() < maxAttempts) {
+                    log.warn("Task order job {} failed on attempt {}; will retry", jobId, job.getAttempts(), e);
+                    String error = truncate(e.getMessage());
+                    Instant next = Instant.now().plus(retryDelay(job.getAttempts()));
+                    boolean requeued = jobTx.execute(status ->
+                            jobRepository.requeueForRetry(jobId, job.getAttempts(), next, error) == 1);
+                    if (requeued) {
+                        meterRegistry.counter("hirepay.taskorder.jobs", "result", "retried").increment();
+                        retry = true;
+                    } else {
+                        log.warn("Task order job {} was taken over while attempt {} ran; leaving it", jobId, job.getAttempts());
+                    }
+                } else {
+                    log.error("Task order job {} failed after {} attempts", jobId, job.getAttempts(), e);
+                    finish(job, JobStatus.FAILED, null, e.getMessage());
+                }
+            }
+        } catch (RuntimeException e) {
+            // the job row itself could not be read or written; the stale check requeues it
+            log.error("Task order job {} could not be recorded", jobId, e);
+        } finally {
+            runningHere.remove(jobId);
+            workerSlots.release();
+        }
+        if (!retry) {
+            // take the next queued job straight away rather than at the next poll
+            try {
+                dispatch();
+            } catch (RuntimeException e) {
+                log.warn("Task order job dispatch failed", e);
+            }
+        }
+    }
+
+    private void finish(TaskOrderJob job, JobStatus status, Long documentId, String error) {
+        job.setStatus(status);
+        job.setFinishedAt(Instant.now());
+        job.setDocumentId(documentId);
+        job.setError(truncate(error));
+        boolean recorded = jobTx.execute(tx -> jobRepository.finish(job.getId(), job.getAttempts(), status,
+                job.getFinishedAt(), documentId, job.getError()) == 1);
+        if (!recorded) {
+            // requeued as stale and claimed again; the newer run reports the job
+            log.warn("Task order job {} was taken over while attempt {} ran; dropping its {} result",
+                    job.getId(), job.getAttempts(), status);
+            return;
+        }
+        meterRegistry.counter("hirepay.taskorder.jobs", "result", status.name().toLowerCase()).increment();
+
+        eventPublisher.publishEvent(new TaskOrderJobFinishedEvent(job.getId(), job.getProcedureUuid(), status, documentId));
+        List<CompletableFuture<TaskOrderJobResponse>> waiting = waiters.remove(job.getId());
+        if (waiting != null) {
+            TaskOrderJobResponse response = toResponse(job);
+            waiting.forEach(future -> future.complete(response));
+        }
+    }
+
+    private static Duration retryDelay(int attempts) {
+        return FIRST_RETRY_DELAY.multipliedBy(1L << Math.min(attempts - 1, 20));
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    private static TaskOrderJobResponse toResponse(TaskOrderJob job) {
+        return new TaskOrderJobResponse(job.getId(), job.getProcedureUuid(), job.getStatus(), job.getAttempts(),
+                job.getCreatedAt(), job.getStartedAt(), job.getFinishedAt(), job.getDocumentId(), job.getError());
+    }
+}
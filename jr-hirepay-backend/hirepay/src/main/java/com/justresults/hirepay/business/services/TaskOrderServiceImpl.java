@@ -4,85 +4,137 @@ import com.justresults.hirepay.domain.Procedure;
 import com.justresults.hirepay.domain.ProcedureDocument;
 import com.justresults.hirepay.enumeration.DocReference;
 import com.justresults.hirepay.enumeration.ProcedureStatus;
-import com.justresults.hirepay.repository.ProcedureDocumentRepository;
 import com.justresults.hirepay.repository.ProcedureRepository;
 import com.justresults.hirepay.util.DocumentStorageService;
+import com.justresults.hirepay.util.InvalidStateException;
 import com.justresults.hirepay.util.NotFoundException;
-import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import com.justresults.hirepay.util.PdfRenderingEngine;
+import com.justresults.hirepay.util.StoredDocument;
 import jakarta.transaction.Transactional;
 import org.springframework.stereotype.Service;
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 @Transactional
 public class TaskOrderServiceImpl implements TaskOrderService {
 
-    private final TemplateEngine templateEngine;
+    private static final String TEMPLATE = "task-order";
+    private static final String FILENAME = "task-order.pdf";
+
+    private final PdfRenderingEngine pdfRenderingEngine;
     private final DocumentStorageService documentStorageService;
     private final ProcedureRepository procedureRepository;
-    private final ProcedureDocumentRepository documentRepository;
+    private final DocumentVersionService documentVersionService;
+    private final RenderCacheService renderCacheService;
+    private final TransactionTemplate writeTx;
 
-    public TaskOrderServiceImpl(TemplateEngine templateEngine, 
+    public TaskOrderServiceImpl(PdfRenderingEngine pdfRenderingEngine,
                               DocumentStorageService documentStorageService,
                               ProcedureRepository procedureRepository,
-                              ProcedureDocumentRepository documentRepository) {
-        this.templateEngine = templateEngine;
+                              DocumentVersionService documentVersionService,
+                              RenderCacheService renderCacheService,
+                              PlatformTransactionManager transactionManager) {
+        this.pdfRenderingEngine = pdfRenderingEngine;
         this.documentStorageService = documentStorageService;
         this.procedureRepository = procedureRepository;
-        this.documentRepository = documentRepository;
+        this.documentVersionService = documentVersionService;
+        this.renderCacheService = renderCacheService;
+        this.writeTx = new TransactionTemplate(transactionManager);
     }
 
+    /**
+     * Renders and stores the PDF before any transaction is opened, so a slow render holds
+     * neither a database connection nor row locks; only recording the document and moving
+     * the procedure on happen in a short transaction at the end.
+     */
     @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
     public ProcedureDocument generateTaskOrder(String procedureUuid, String actorEmail) {
         // Get the procedure
-        Procedure procedure = procedureRepository.findByUuid(procedureUuid)
-                .orElseThrow(() -> new NotFoundException("Procedure not found: " + procedureUuid));
+        Procedure procedure = requireApproved(procedureUuid);
 
-        // Verify the procedure is in the correct state
-        if (procedure.getStatus() != ProcedureStatus.PAYMENT_TAX_APPROVED) {
-            throw new IllegalStateException("Task Order can only be generated from PAYMENT_TAX_APPROVED status. Current status: " + procedure.getStatus());
+        StoredDocument stored;
+        try {
+            stored = renderOrReuse(procedure);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to generate Task Order PDF", e);
         }
 
         try {
-            // Generate PDF content
-            byte[] pdfBytes = generatePdfContent(procedure);
-
-            // Store the PDF file
-            String fileLocation = documentStorageService.store(procedureUuid, pdfBytes, "task-order.pdf");
-
-            // Create the document record
-            ProcedureDocument document = new ProcedureDocument();
-            document.setProcedure(procedure);
-            document.setDocReference(DocReference.TASK_ORDER);
-            document.setLocation(fileLocation);
-            document.setActorEmail(actorEmail);
-            document.setVersion(1); // First version
-
-            // Save the document
-            ProcedureDocument savedDocument = documentRepository.save(document);
+            return writeTx.execute(status -> {
+                // checked again under the row lock, since another request may have generated
+                // one during the render
+                Procedure current = procedureRepository.findForUpdate(procedure.getId())
+                        .orElseThrow(() -> new NotFoundException("Procedure not found: " + procedureUuid));
+                if (current.getStatus() != ProcedureStatus.PAYMENT_TAX_APPROVED) {
+                    throw new InvalidStateException("Task Order can only be generated from PAYMENT_TAX_APPROVED status. Current status: " + current.getStatus());
+                }
+
+                // Create the document record
+                ProcedureDocument document = new ProcedureDocument();
+                document.setProcedure(current);
+                document.setDocReference(DocReference.TASK_ORDER);
+                document.setLocation(stored.getLocation());
+                document.setMetadataJson(stored.toMetadataJson());
+                document.setActorEmail(actorEmail);
+
+                // Save the document as the next task order version
+                ProcedureDocument savedDocument = documentVersionService.saveNewVersion(document);
+
+                // Update procedure status to TASK_ORDER_GENERATED
+                current.setStatus(ProcedureStatus.TASK_ORDER_GENERATED);
+                procedureRepository.save(current);
+
+                return savedDocument;
+            });
+        } catch (RuntimeException e) {
+            // stored outside the transaction that failed, so nothing else cleans it up. The
+            // render cache keeps a copy of its own, so a retry still skips the render
+            documentStorageService.release(stored.getLocation());
+            throw e;
+        }
+    }
 
-            // Update procedure status to TASK_ORDER_GENERATED
-            procedure.setStatus(ProcedureStatus.TASK_ORDER_GENERATED);
-            procedureRepository.save(procedure);
+    /**
+     * Reuse an identical earlier render, or render the PDF straight into a stored document.
+     * Every variable is part of the cache key, so the template carries no render time: a
+     * reused PDF would otherwise show the date of an earlier render.
+     */
+    private StoredDocument renderOrReuse(Procedure procedure) throws IOException {
+        Map<String, Object> variables = taskOrderVariables(procedure);
+        String renderKey = pdfRenderingEngine.cacheKey(TEMPLATE, variables);
+
+        String procedureUuid = procedure.getUuid();
+        Optional<StoredDocument> cached = renderCacheService.reuse(renderKey, procedureUuid, FILENAME);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        StoredDocument stored = documentStorageService.store(procedureUuid, FILENAME,
+                out -> pdfRenderingEngine.render(TEMPLATE, variables, out));
+        renderCacheService.remember(renderKey, TEMPLATE, stored);
+        return stored;
+    }
 
-            return savedDocument;
+    private Procedure requireApproved(String procedureUuid) {
+        Procedure procedure = procedureRepository.findByUuid(procedureUuid)
+                .orElseThrow(() -> new NotFoundException("Procedure not found: " + procedureUuid));
 
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to generate Task Order PDF", e);
+        // Verify the procedure is in the correct state
+        if (procedure.getStatus() != ProcedureStatus.PAYMENT_TAX_APPROVED) {
+            throw new InvalidStateException("Task Order can only be generated from PAYMENT_TAX_APPROVED status. Current status: " + procedure.getStatus());
         }
+        return procedure;
     }
 
-    private byte[] generatePdfContent(Procedure procedure) throws IOException {
-        // Prepare template context with procedure data
-        Context context = new Context();
+    private Map<String, Object> taskOrderVariables(Procedure procedure) {
         Map<String, Object> variables = new HashMap<>();
         
         variables.put("procedureUuid", procedure.getUuid());
@@ -97,22 +149,7 @@ public class TaskOrderServiceImpl implements TaskOrderService {
         variables.put("clientProject", "Client Project");
         variables.put("scopeSummary", "Consulting services as outlined in the agreement");
         variables.put("notes", "Standard consulting terms apply");
-        variables.put("generatedAt", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-        
-        context.setVariables(variables);
-
-        // Render the HTML template
-        String htmlContent = templateEngine.process("task-order", context);
-
-        // Convert HTML to PDF
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         
-        PdfRendererBuilder builder = new PdfRendererBuilder();
-        builder.withUri("data:application/pdf;base64,");
-        builder.toStream(outputStream);
-        builder.withHtmlContent(htmlContent, "/");
-        builder.run();
-
-        return outputStream.toByteArray();
+        return variables;
     }
 }
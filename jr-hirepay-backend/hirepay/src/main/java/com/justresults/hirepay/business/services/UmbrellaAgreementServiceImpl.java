@@ -8,11 +8,12 @@ import com.justresults.hirepay.enumeration.DocumentStatus;
 import com.justresults.hirepay.repository.ProcedureDocumentRepository;
 import com.justresults.hirepay.repository.ProcedureRepository;
 import com.justresults.hirepay.repository.UserRepository;
+import com.justresults.hirepay.storage.StoredContent;
 import com.justresults.hirepay.util.DocumentStorageService;
 import com.justresults.hirepay.util.InvalidStateException;
 import com.justresults.hirepay.util.NotFoundException;
+import com.justresults.hirepay.util.StoredDocument;
 import jakarta.transaction.Transactional;
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -34,15 +35,21 @@ public class UmbrellaAgreementServiceImpl implements UmbrellaAgreementService {
     private final ProcedureRepository procedureRepository;
     private final ProcedureDocumentRepository documentRepository;
     private final UserRepository userRepository;
+    private final DocumentVersionService documentVersionService;
+    private final StorageQuotaService storageQuotaService;
 
     public UmbrellaAgreementServiceImpl(DocumentStorageService documentStorageService,
                                        ProcedureRepository procedureRepository,
                                        ProcedureDocumentRepository documentRepository,
-                                       UserRepository userRepository) {
+                                       UserRepository userRepository,
+                                       DocumentVersionService documentVersionService,
+                                       StorageQuotaService storageQuotaService) {
         this.documentStorageService = documentStorageService;
         this.procedureRepository = procedureRepository;
         this.documentRepository = documentRepository;
         this.userRepository = userRepository;
+        this.documentVersionService = documentVersionService;
+        this.storageQuotaService = storageQuotaService;
     }
 
     @Override
@@ -50,6 +57,9 @@ public class UmbrellaAgreementServiceImpl implements UmbrellaAgreementService {
         // Get the front office user
         User frontOfficeUser = userRepository.findById(Long.valueOf(request.getFrontOfficeUserId()))
             .orElseThrow(() -> new NotFoundException("Front office user not found"));
+        if (request.getDocument() != null && !request.getDocument().isEmpty()) {
+            storageQuotaService.checkUpload(sentBy, null, request.getDocument().getSize());
+        }
 
         // Create a new procedure for this agreement
         Procedure procedure = new Procedure();
@@ -59,37 +69,34 @@ public class UmbrellaAgreementServiceImpl implements UmbrellaAgreementService {
         procedure.setStatus(com.justresults.hirepay.enumeration.ProcedureStatus.DRAFT);
         procedure = procedureRepository.save(procedure);
 
+        // Determine document reference based on document type
+        DocReference docReference = determineDocReference(request.getDocumentType());
+
         // Handle document upload
-        byte[] agreementContent;
+        StoredDocument stored;
         String filename;
         
         if (request.getDocument() != null && !request.getDocument().isEmpty()) {
-            // Use uploaded document
-            agreementContent = request.getDocument().getBytes();
+            // Stream the uploaded document straight into storage
             filename = request.getDocument().getOriginalFilename();
+            stored = documentStorageService.store(procedure.getUuid(), request.getDocument(), docReference);
         } else {
             // Generate default umbrella agreement content
-            agreementContent = generateUmbrellaAgreementContent(frontOfficeUser);
             filename = "umbrella-agreement.pdf";
+            stored = documentStorageService.store(procedure.getUuid(), generateUmbrellaAgreementContent(frontOfficeUser), filename, docReference);
         }
 
-        // Store the document
-        String location = documentStorageService.store(procedure.getUuid(), agreementContent, filename);
-
-        // Determine document reference based on document type
-        DocReference docReference = determineDocReference(request.getDocumentType());
-
         // Create document record
         ProcedureDocument document = new ProcedureDocument();
         document.setProcedure(procedure);
         document.setDocReference(docReference);
-        document.setLocation(location);
+        document.setLocation(stored.getLocation());
+        document.setMetadataJson(stored.toMetadataJson());
         document.setActorEmail(sentBy);
         document.setStatus(DocumentStatus.SENT);
         document.setNotes(request.getNotes());
-        document.setVersion(1);
 
-        ProcedureDocument savedDocument = documentRepository.save(document);
+        ProcedureDocument savedDocument = documentVersionService.saveNewVersion(document);
 
         // Update procedure status
         procedure.setStatus(com.justresults.hirepay.enumeration.ProcedureStatus.AGREEMENT_SENT);
@@ -103,6 +110,10 @@ public class UmbrellaAgreementServiceImpl implements UmbrellaAgreementService {
         // Get the front office user who is submitting the work
         User frontOfficeUser = userRepository.findByEmail(submittedBy)
             .orElseThrow(() -> new NotFoundException("Front office user not found"));
+        if (request.getDocument() != null && !request.getDocument().isEmpty()) {
+            // repeated deliverable uploads are what fills the disk; refuse before anything is written
+            storageQuotaService.checkUpload(submittedBy, null, request.getDocument().getSize());
+        }
 
         // Create a new procedure for this work submission
         Procedure procedure = new Procedure();
@@ -117,26 +128,25 @@ public class UmbrellaAgreementServiceImpl implements UmbrellaAgreementService {
             throw new InvalidStateException("Document is required for work submission");
         }
 
-        byte[] workContent = request.getDocument().getBytes();
         String filename = request.getDocument().getOriginalFilename();
 
-        // Store the document
-        String location = documentStorageService.store(procedure.getUuid(), workContent, filename);
-
         // Determine document reference based on document type
         DocReference docReference = determineDocReference(request.getDocumentType());
 
+        // Stream the document into storage
+        StoredDocument stored = documentStorageService.store(procedure.getUuid(), request.getDocument(), docReference);
+
         // Create document record - set status directly to SUBMITTED for work submissions
         ProcedureDocument document = new ProcedureDocument();
         document.setProcedure(procedure);
         document.setDocReference(docReference);
-        document.setLocation(location);
+        document.setLocation(stored.getLocation());
+        document.setMetadataJson(stored.toMetadataJson());
         document.setActorEmail(submittedBy);
         document.setStatus(DocumentStatus.SUBMITTED); // Directly submitted for review
         document.setNotes(request.getNotes());
-        document.setVersion(1);
 
-        ProcedureDocument savedDocument = documentRepository.save(document);
+        ProcedureDocument savedDocument = documentVersionService.saveNewVersion(document);
 
         // Update procedure status
         procedure.setStatus(com.justresults.hirepay.enumeration.ProcedureStatus.AGREEMENT_SUBMITTED);
@@ -161,23 +171,25 @@ public class UmbrellaAgreementServiceImpl implements UmbrellaAgreementService {
             throw new InvalidStateException("Document must be in SENT status to be signed");
         }
 
-        // Create signed version content or use uploaded document
-        byte[] signedContent;
-        String finalFileName;
+        // Store the uploaded signed document, or a generated signed version
+        StoredDocument signed;
         if (signedDocument != null && !signedDocument.isEmpty()) {
-            signedContent = signedDocument.getBytes();
-            finalFileName = signedDocument.getOriginalFilename();
+            storageQuotaService.checkUpload(signerEmail, document.getProcedure().getUuid(), signedDocument.getSize());
+            signed = documentStorageService.store(document.getProcedure().getUuid(), signedDocument, document.getDocReference());
         } else {
-            signedContent = generateSignedAgreementContent(document, request.getSignerName(), request.getHasReviewed());
-            finalFileName = "signed-" + extractDocumentName(document.getLocation());
+            byte[] signedContent = generateSignedAgreementContent(document, request.getSignerName(), request.getHasReviewed());
+            String finalFileName = "signed-" + extractDocumentName(document.getLocation());
+            signed = documentStorageService.store(document.getProcedure().getUuid(), signedContent, finalFileName, document.getDocReference());
         }
 
-        // Store signed document
-        String signedLocation = documentStorageService.store(document.getProcedure().getUuid(), signedContent, finalFileName);
-
         // Update the original document status based on document type
         // Persist the new file location so subsequent downloads return the submitted version
-        document.setLocation(signedLocation);
+        documentStorageService.release(document.getLocation());
+        storageQuotaService.refund(document);
+        document.setLocation(signed.getLocation());
+        document.setMetadataJson(signed.toMetadataJson());
+        // the signed copy counts against the signer; the refund above went to the sender
+        storageQuotaService.charge(document, signerEmail);
         
         // Determine if this is a form document
         boolean isFormDocument = isFormDocumentType(document.getDocReference());
@@ -282,16 +294,17 @@ public class UmbrellaAgreementServiceImpl implements UmbrellaAgreementService {
         ProcedureDocument document = documentRepository.findById(Long.valueOf(documentId))
             .orElseThrow(() -> new NotFoundException("Document not found"));
 
-        // Load the document from storage
-        Resource resource = documentStorageService.loadAsResource(document.getLocation());
-        
-        // Determine content type based on file extension
-        String contentType = determineContentType(document.getLocation());
+        // Resolve the stored bytes; the controller serves ranges from this
+        StoredContent content = documentStorageService.openContent(document.getLocation());
+        StoredDocument stored = StoredDocument.fromMetadataJson(document.getLocation(), document.getMetadataJson());
         
         // Extract filename from location
         String filename = extractDocumentName(document.getLocation());
 
-        return new DocumentDownloadResponse(resource, filename, contentType);
+        // Determine content type based on file extension
+        String contentType = determineContentType(filename);
+
+        return new DocumentDownloadResponse(content, filename, contentType, stored != null ? stored.getSha256() : null);
     }
 
     @Override
@@ -392,13 +405,14 @@ public class UmbrellaAgreementServiceImpl implements UmbrellaAgreementService {
 
     private String extractDocumentName(String location) {
         if (location != null && location.contains("/")) {
-            return location.substring(location.lastIndexOf("/") + 1);
+            // without the suffix of a compressed, chunked or encrypted object
+            return DocumentStorageService.documentName(location);
         }
         return "document";
     }
 
     private UmbrellaAgreementResponse createUmbrellaAgreementResponse(ProcedureDocument document, User frontOfficeUser, String sentBy, String documentName) {
-        return new UmbrellaAgreementResponse(
+        UmbrellaAgreementResponse response = new UmbrellaAgreementResponse(
             document.getId().toString(),
             document.getStatus().name(),
             frontOfficeUser.getEmail(),
@@ -416,6 +430,14 @@ public class UmbrellaAgreementServiceImpl implements UmbrellaAgreementService {
             document.getDocReference().name(),
             document.getNotes()
         );
+        // lets review lists show what a document is without downloading it
+        StoredDocument stored = StoredDocument.fromMetadataJson(document.getLocation(), document.getMetadataJson());
+        // no previews of documents encrypted at rest; the images would be stored in the clear
+        if (stored != null && "application/pdf".equals(stored.getContentType())
+                && !DocumentStorageService.isEncryptedKey(document.getLocation())) {
+            response.setThumbnailUrl("/api/documents/" + document.getId() + "/thumbnail");
+        }
+        return response;
     }
 
     private UmbrellaAgreementResponse createUmbrellaAgreementResponseFromDocument(ProcedureDocument document) {
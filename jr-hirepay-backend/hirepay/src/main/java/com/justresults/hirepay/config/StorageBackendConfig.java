@@ -0,0 +1,98 @@
+package com.justresults.hirepay.config;
+
+import com.justresults.hirepay.business.services.StorageReplicationService;
+import com.justresults.hirepay.storage.FilesystemStorageBackend;
+import com.justresults.hirepay.storage.ReplicatingStorageBackend;
+import com.justresults.hirepay.storage.S3StorageBackend;
+import com.justresults.hirepay.storage.StorageBackend;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Configuration
+public class StorageBackendConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "filesystem", matchIfMissing = true)
+    public StorageBackend filesystemStorageBackend(StorageProperties props,
+                                                   ObjectProvider<StorageReplicationService> replication) throws IOException {
+        return replicated(new FilesystemStorageBackend(Paths.get(props.getFolder())), props, replication);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+    public StorageBackend s3StorageBackend(StorageProperties props,
+                                           ObjectProvider<StorageReplicationService> replication) {
+        return replicated(s3Backend(props.getS3(), "storage.s3"), props, replication);
+    }
+
+    /**
+     * The mirror storage.replication copies to. Not a bean, so StorageBackend stays the one
+     * primary store everywhere it is injected.
+     */
+    public static StorageBackend replicaBackend(StorageProperties props) throws IOException {
+        StorageProperties.Replication replication = props.getReplication();
+        if ("s3".equals(replication.getBackend())) {
+            return s3Backend(replication.getS3(), "storage.replication.s3");
+        }
+        if (replication.getFolder() == null || replication.getFolder().isBlank()) {
+            throw new IllegalStateException("storage.replication.folder is required when storage.replication.backend=filesystem");
+        }
+        // a mirror inside the store (or around it) would be listed, scrubbed and collected as documents
+        Path folder = resolve(replication.getFolder());
+        Path primary = resolve(props.getFolder());
+        if (folder.startsWith(primary) || primary.startsWith(folder)) {
+            throw new IllegalStateException("storage.replication.folder (" + folder + ") must be outside storage.folder ("
+                    + primary + ") and must not contain it");
+        }
+        return new FilesystemStorageBackend(folder);
+    }
+
+    private static Path resolve(String folder) throws IOException {
+        Path path = Paths.get(folder).toAbsolutePath().normalize();
+        return Files.exists(path) ? path.toRealPath() : path;
+    }
+
+    private static StorageBackend replicated(StorageBackend primary, StorageProperties props,
+                                             ObjectProvider<StorageReplicationService> replication) {
+        if (!props.getReplication().isEnabled()) {
+            return primary;
+        }
+        // looked up on first write: the replication service itself reads through this backend
+        return new ReplicatingStorageBackend(primary, key -> replication.getObject().enqueue(key));
+    }
+
+    private static S3StorageBackend s3Backend(StorageProperties.S3 s3, String prefix) {
+        if (s3.getBucket() == null || s3.getBucket().isBlank()) {
+            throw new IllegalStateException(prefix + ".bucket is required when S3 storage is used");
+        }
+
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(s3.getRegion()))
+                .forcePathStyle(s3.isPathStyleAccess());
+        if (s3.getEndpoint() != null && !s3.getEndpoint().isBlank()) {
+            builder.endpointOverride(URI.create(s3.getEndpoint()));
+        }
+        if (s3.getAccessKey() != null && !s3.getAccessKey().isBlank()) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(
+                    AwsBasicCredentials.create(s3.getAccessKey(), s3.getSecretKey())));
+        } else {
+            builder.credentialsProvider(DefaultCredentialsProvider.builder().build());
+        }
+
+        return new S3StorageBackend(builder.build(), s3.getBucket(), s3.getPrefix());
+    }
+}
@@ -1,7 +1,14 @@
 package com.justresults.hirepay.config;
 
+import com.justresults.hirepay.enumeration.DocReference;
+import com.justresults.hirepay.enumeration.UsageScope;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Component
 @ConfigurationProperties(prefix = "storage")
@@ -12,6 +19,525 @@ public class StorageProperties {
      */
     private String folder = "uploads";
 
+    /**
+     * Store files by content hash so identical uploads share one copy on disk.
+     * e.g., storage.dedup=true
+     */
+    private boolean dedup = false;
+
+    /**
+     * Where document bytes live: "filesystem" (below storage.folder) or "s3".
+     * Uploads are always spooled under storage.folder first.
+     */
+    private String backend = "filesystem";
+
+    private final S3 s3 = new S3();
+
+    private final Upload upload = new Upload();
+
+    private final Compression compression = new Compression();
+
+    private final Archive archive = new Archive();
+
+    private final Gc gc = new Gc();
+
+    private final Scrub scrub = new Scrub();
+
+    private final Quota quota = new Quota();
+
+    private final Health health = new Health();
+
+    private final Preview preview = new Preview();
+
+    private final Cache cache = new Cache();
+
+    private final Delta delta = new Delta();
+
+    private final Encryption encryption = new Encryption();
+
+    private final Replication replication = new Replication();
+
+    private final Backup backup = new Backup();
+
     public String getFolder() { return folder; }
     public void setFolder(String folder) { this.folder = folder; }
+
+    public boolean isDedup() { return dedup; }
+    public void setDedup(boolean dedup) { this.dedup = dedup; }
+
+    public String getBackend() { return backend; }
+    public void setBackend(String backend) { this.backend = backend; }
+
+    public S3 getS3() { return s3; }
+
+    public Upload getUpload() { return upload; }
+
+    public Compression getCompression() { return compression; }
+
+    public Archive getArchive() { return archive; }
+
+    public Gc getGc() { return gc; }
+
+    public Scrub getScrub() { return scrub; }
+
+    public Quota getQuota() { return quota; }
+
+    public Health getHealth() { return health; }
+
+    public Preview getPreview() { return preview; }
+
+    public Cache getCache() { return cache; }
+
+    public Delta getDelta() { return delta; }
+
+    public Encryption getEncryption() { return encryption; }
+
+    public Replication getReplication() { return replication; }
+
+    public Backup getBackup() { return backup; }
+
+    /**
+     * Scheduled incremental backups written as tar files to a folder. Admins can also
+     * download one at any time from /api/admin/backup.
+     */
+    public static class Backup {
+        /** e.g., storage.backup.enabled=true to write a backup every storage.backup.interval */
+        private boolean enabled = false;
+        /** Where scheduled backups are written; should be on another disk or host. */
+        private String folder;
+        private Duration interval = Duration.ofHours(24);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getFolder() { return folder; }
+        public void setFolder(String folder) { this.folder = folder; }
+
+        public Duration getInterval() { return interval; }
+        public void setInterval(Duration interval) { this.interval = interval; }
+    }
+
+    /**
+     * Asynchronous copy of every stored object to a second backend. Writes are queued in the
+     * database and copied in the background, so uploads never wait for the mirror.
+     */
+    public static class Replication {
+        /** e.g., storage.replication.enabled=true */
+        private boolean enabled = false;
+        /** Mirror type: "filesystem" (storage.replication.folder) or "s3" (storage.replication.s3.*). */
+        private String backend = "filesystem";
+        /** Mirror directory, e.g. a second disk or a network mount; must not be under storage.folder. */
+        private String folder;
+        private final S3 s3 = new S3();
+        /** How often the queue is polled for objects to copy. */
+        private Duration pollInterval = Duration.ofSeconds(5);
+        /** Failed copies are retried with doubling delays up to this. */
+        private Duration maxRetryDelay = Duration.ofHours(1);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getBackend() { return backend; }
+        public void setBackend(String backend) { this.backend = backend; }
+
+        public String getFolder() { return folder; }
+        public void setFolder(String folder) { this.folder = folder; }
+
+        public S3 getS3() { return s3; }
+
+        public Duration getPollInterval() { return pollInterval; }
+        public void setPollInterval(Duration pollInterval) { this.pollInterval = pollInterval; }
+
+        public Duration getMaxRetryDelay() { return maxRetryDelay; }
+        public void setMaxRetryDelay(Duration maxRetryDelay) { this.maxRetryDelay = maxRetryDelay; }
+    }
+
+    /**
+     * Document types encrypted at rest (AES-GCM, one data key per object). Other types are
+     * stored and served as plain files.
+     */
+    public static class Encryption {
+        /** Off unless configured, so a checkout without a master key still starts. */
+        private boolean enabled = false;
+        private List<DocReference> docReferences = new ArrayList<>(
+                List.of(DocReference.TAX_FORM_W9, DocReference.TAX_FORM_W8BEN, DocReference.PAYMENT_AUTH_FORM));
+        /**
+         * Secret the key-encryption key is derived from. Changing it makes documents already
+         * encrypted unreadable. It has no default and shares nothing with other secrets.
+         * Startup fails if encryption is enabled without it, or if it is shorter than 32
+         * characters. Documents already encrypted stay readable while it is set, even with
+         * encryption disabled.
+         */
+        private String masterKey;
+        /** Plaintext per sealed chunk; a range read decrypts whole chunks. */
+        private DataSize chunkSize = DataSize.ofKilobytes(64);
+
+        public boolean appliesTo(DocReference docReference) {
+            return enabled && docReference != null && docReferences.contains(docReference);
+        }
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public List<DocReference> getDocReferences() { return docReferences; }
+        public void setDocReferences(List<DocReference> docReferences) { this.docReferences = docReferences; }
+
+        public String getMasterKey() { return masterKey; }
+        public void setMasterKey(String masterKey) { this.masterKey = masterKey; }
+
+        public DataSize getChunkSize() { return chunkSize; }
+        public void setChunkSize(DataSize chunkSize) { this.chunkSize = chunkSize; }
+    }
+
+    /**
+     * Document types whose successive versions are stored as content-defined chunks, so a new
+     * version only adds the chunks that changed.
+     */
+    public static class Delta {
+        /** e.g., storage.delta.enabled=false to store every version as a full copy */
+        private boolean enabled = true;
+        private List<DocReference> docReferences = new ArrayList<>(
+                List.of(DocReference.AGREEMENT_MODIFICATION, DocReference.TASK_ORDER_MODIFICATION));
+        /** Smaller files are stored whole; chunking them saves little. */
+        private DataSize minFileSize = DataSize.ofKilobytes(256);
+        private DataSize minChunkSize = DataSize.ofKilobytes(16);
+        /** Expected chunk size beyond the minimum; rounded down to a power of two. */
+        private DataSize avgChunkSize = DataSize.ofKilobytes(32);
+        private DataSize maxChunkSize = DataSize.ofKilobytes(128);
+
+        public boolean appliesTo(DocReference docReference, long size) {
+            return enabled && docReference != null && docReferences.contains(docReference)
+                    && size >= minFileSize.toBytes();
+        }
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public List<DocReference> getDocReferences() { return docReferences; }
+        public void setDocReferences(List<DocReference> docReferences) { this.docReferences = docReferences; }
+
+        public DataSize getMinFileSize() { return minFileSize; }
+        public void setMinFileSize(DataSize minFileSize) { this.minFileSize = minFileSize; }
+
+        public DataSize getMinChunkSize() { return minChunkSize; }
+        public void setMinChunkSize(DataSize minChunkSize) { this.minChunkSize = minChunkSize; }
+
+        public DataSize getAvgChunkSize() { return avgChunkSize; }
+        public void setAvgChunkSize(DataSize avgChunkSize) { this.avgChunkSize = avgChunkSize; }
+
+        public DataSize getMaxChunkSize() { return maxChunkSize; }
+        public void setMaxChunkSize(DataSize maxChunkSize) { this.maxChunkSize = maxChunkSize; }
+    }
+
+    /**
+     * In-memory cache of small stored objects that are read over and over.
+     */
+    public static class Cache {
+        /** e.g., storage.cache.enabled=false to always read from the backend */
+        private boolean enabled = true;
+        /** Heap held by cached objects at most. */
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+        /** Larger objects are streamed from the backend; sendfile serves them better anyway. */
+        private DataSize maxEntrySize = DataSize.ofKilobytes(512);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public DataSize getMaxSize() { return maxSize; }
+        public void setMaxSize(DataSize maxSize) { this.maxSize = maxSize; }
+
+        public DataSize getMaxEntrySize() { return maxEntrySize; }
+        public void setMaxEntrySize(DataSize maxEntrySize) { this.maxEntrySize = maxEntrySize; }
+    }
+
+    /**
+     * Thumbnails and low-resolution page previews rendered in the background for PDFs.
+     */
+    public static class Preview {
+        /** e.g., storage.preview.enabled=false to skip rendering */
+        private boolean enabled = true;
+        /** Width of the first-page thumbnail in pixels. */
+        private int thumbnailWidth = 200;
+        /** Resolution of page previews. */
+        private int dpi = 72;
+        /** Only the first pages of long documents get a preview. */
+        private int maxPages = 20;
+        /** Rendering threads; PDF rasterising is CPU heavy. */
+        private int threads = 1;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getThumbnailWidth() { return thumbnailWidth; }
+        public void setThumbnailWidth(int thumbnailWidth) { this.thumbnailWidth = thumbnailWidth; }
+
+        public int getDpi() { return dpi; }
+        public void setDpi(int dpi) { this.dpi = dpi; }
+
+        public int getMaxPages() { return maxPages; }
+        public void setMaxPages(int maxPages) { this.maxPages = maxPages; }
+
+        public int getThreads() { return threads; }
+        public void setThreads(int threads) { this.threads = threads; }
+    }
+
+    /**
+     * Periodic reconciliation of stored objects against procedure_documents.location.
+     */
+    public static class Gc {
+        /** e.g., storage.gc.enabled=false to stop the job entirely */
+        private boolean enabled = true;
+        /** Delete orphans; when false they are only counted and logged. */
+        private boolean delete = false;
+        /** Objects younger than this are never orphans; their transaction may still be running. */
+        private Duration minAge = Duration.ofHours(24);
+        /** Time between runs. */
+        private Duration interval = Duration.ofHours(24);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public boolean isDelete() { return delete; }
+        public void setDelete(boolean delete) { this.delete = delete; }
+
+        public Duration getMinAge() { return minAge; }
+        public void setMinAge(Duration minAge) { this.minAge = minAge; }
+
+        public Duration getInterval() { return interval; }
+        public void setInterval(Duration interval) { this.interval = interval; }
+    }
+
+    /**
+     * Periodic re-hashing of every stored document against the checksum recorded at upload.
+     */
+    public static class Scrub {
+        /** e.g., storage.scrub.enabled=false to stop the job entirely */
+        private boolean enabled = true;
+        /** Time between runs. */
+        private Duration interval = Duration.ofDays(7);
+        /** Documents hashed at the same time. */
+        private int parallelism = 2;
+        /** Read budget shared by all scrub threads, so uploads and downloads keep the disk. */
+        private DataSize maxReadRate = DataSize.ofMegabytes(20);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Duration getInterval() { return interval; }
+        public void setInterval(Duration interval) { this.interval = interval; }
+
+        public int getParallelism() { return parallelism; }
+        public void setParallelism(int parallelism) { this.parallelism = parallelism; }
+
+        public DataSize getMaxReadRate() { return maxReadRate; }
+        public void setMaxReadRate(DataSize maxReadRate) { this.maxReadRate = maxReadRate; }
+    }
+
+    /**
+     * Limits on the documents one uploader (actorEmail) or one procedure may hold, counted in
+     * bytes as uploaded and in files.
+     */
+    public static class Quota {
+        /** e.g., storage.quota.enabled=false to keep counting usage without enforcing limits */
+        private boolean enabled = true;
+        private DataSize userMaxSize = DataSize.ofGigabytes(20);
+        private long userMaxFiles = 5000;
+        private DataSize procedureMaxSize = DataSize.ofGigabytes(10);
+        private long procedureMaxFiles = 1000;
+
+        // -1 when unlimited
+        public long maxBytes(UsageScope scope) {
+            return !enabled ? -1 : (scope == UsageScope.USER ? userMaxSize : procedureMaxSize).toBytes();
+        }
+
+        public long maxFiles(UsageScope scope) {
+            return !enabled ? -1 : scope == UsageScope.USER ? userMaxFiles : procedureMaxFiles;
+        }
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public DataSize getUserMaxSize() { return userMaxSize; }
+        public void setUserMaxSize(DataSize userMaxSize) { this.userMaxSize = userMaxSize; }
+
+        public long getUserMaxFiles() { return userMaxFiles; }
+        public void setUserMaxFiles(long userMaxFiles) { this.userMaxFiles = userMaxFiles; }
+
+        public DataSize getProcedureMaxSize() { return procedureMaxSize; }
+        public void setProcedureMaxSize(DataSize procedureMaxSize) { this.procedureMaxSize = procedureMaxSize; }
+
+        public long getProcedureMaxFiles() { return procedureMaxFiles; }
+        public void setProcedureMaxFiles(long procedureMaxFiles) { this.procedureMaxFiles = procedureMaxFiles; }
+    }
+
+    /**
+     * Thresholds at which the storage health indicator reports DEGRADED and new uploads are
+     * held back. Below the free space or inode floor writes are refused; while the 95th
+     * percentile write latency is above its limit they are let through a few at a time.
+     */
+    public static class Health {
+        private DataSize minFreeSpace = DataSize.ofGigabytes(1);
+        private long minFreeInodes = 10000;
+        /** p95 commit time, per MiB for documents over 1MiB. */
+        private Duration maxWriteLatency = Duration.ofSeconds(2);
+        /** Reported only; reads are never held back. */
+        private Duration maxReadLatency = Duration.ofSeconds(1);
+        /** Writes allowed at once while writes are slow. */
+        private int slowWriteConcurrency = 2;
+        /** How long a write waits for one of those slots before it is refused. */
+        private Duration queueTimeout = Duration.ofSeconds(10);
+        /** Sent as Retry-After with refused uploads. */
+        private Duration retryAfter = Duration.ofSeconds(60);
+
+        public DataSize getMinFreeSpace() { return minFreeSpace; }
+        public void setMinFreeSpace(DataSize minFreeSpace) { this.minFreeSpace = minFreeSpace; }
+
+        public long getMinFreeInodes() { return minFreeInodes; }
+        public void setMinFreeInodes(long minFreeInodes) { this.minFreeInodes = minFreeInodes; }
+
+        public Duration getMaxWriteLatency() { return maxWriteLatency; }
+        public void setMaxWriteLatency(Duration maxWriteLatency) { this.maxWriteLatency = maxWriteLatency; }
+
+        public Duration getMaxReadLatency() { return maxReadLatency; }
+        public void setMaxReadLatency(Duration maxReadLatency) { this.maxReadLatency = maxReadLatency; }
+
+        public int getSlowWriteConcurrency() { return slowWriteConcurrency; }
+        public void setSlowWriteConcurrency(int slowWriteConcurrency) { this.slowWriteConcurrency = slowWriteConcurrency; }
+
+        public Duration getQueueTimeout() { return queueTimeout; }
+        public void setQueueTimeout(Duration queueTimeout) { this.queueTimeout = queueTimeout; }
+
+        public Duration getRetryAfter() { return retryAfter; }
+        public void setRetryAfter(Duration retryAfter) { this.retryAfter = retryAfter; }
+    }
+
+    /**
+     * Packing the documents of COMPLETED procedures into one segment file each.
+     */
+    public static class Archive {
+        /** e.g., storage.archive.enabled=false to keep completed procedures as loose files */
+        private boolean enabled = true;
+        /** How often to look for completed procedures that still have loose files. */
+        private Duration sweepInterval = Duration.ofHours(1);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Duration getSweepInterval() { return sweepInterval; }
+        public void setSweepInterval(Duration sweepInterval) { this.sweepInterval = sweepInterval; }
+    }
+
+    /**
+     * At-rest gzip compression of documents whose type compresses well.
+     */
+    public static class Compression {
+        /** e.g., storage.compression.enabled=true */
+        private boolean enabled = false;
+        /**
+         * Sniffed content types to try; a trailing "/*" matches a whole family. PDFs are left
+         * out: their streams are already deflated, and a gzipped copy loses ranged and
+         * zero-copy serving for little saved space.
+         */
+        private List<String> contentTypes = new ArrayList<>(List.of("text/*", "application/msword"));
+        /** Files smaller than this are stored as is. */
+        private DataSize minSize = DataSize.ofBytes(512);
+        /** Keep the compressed copy only if it is at most this fraction of the original. */
+        private double maxRatio = 0.9;
+        /** Deflate level, 1 (fastest) to 9 (smallest). */
+        private int level = 6;
+
+        public boolean appliesTo(String contentType, long size) {
+            if (!enabled || contentType == null || size < minSize.toBytes()) {
+                return false;
+            }
+            for (String candidate : contentTypes) {
+                if (candidate.endsWith("/*")
+                        ? contentType.startsWith(candidate.substring(0, candidate.length() - 1))
+                        : contentType.equals(candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public List<String> getContentTypes() { return contentTypes; }
+        public void setContentTypes(List<String> contentTypes) { this.contentTypes = contentTypes; }
+
+        public DataSize getMinSize() { return minSize; }
+        public void setMinSize(DataSize minSize) { this.minSize = minSize; }
+
+        public double getMaxRatio() { return maxRatio; }
+        public void setMaxRatio(double maxRatio) { this.maxRatio = maxRatio; }
+
+        public int getLevel() { return level; }
+        public void setLevel(int level) { this.level = level; }
+    }
+
+    /**
+     * Upload size limits and resumable upload sessions.
+     */
+    public static class Upload {
+        /** Largest accepted document. */
+        private DataSize maxFileSize = DataSize.ofMegabytes(10);
+        /** Deliverable bundles may be much larger; send them with the resumable upload API. */
+        private DataSize maxDeliverableSize = DataSize.ofGigabytes(2);
+        /** Resumable sessions untouched for this long are discarded with their spool file. */
+        private Duration sessionTtl = Duration.ofHours(24);
+
+        public long maxSizeFor(DocReference documentType) {
+            return documentType == DocReference.DELIVERABLES_PROOF
+                    ? maxDeliverableSize.toBytes()
+                    : maxFileSize.toBytes();
+        }
+
+        public DataSize getMaxFileSize() { return maxFileSize; }
+        public void setMaxFileSize(DataSize maxFileSize) { this.maxFileSize = maxFileSize; }
+
+        public DataSize getMaxDeliverableSize() { return maxDeliverableSize; }
+        public void setMaxDeliverableSize(DataSize maxDeliverableSize) { this.maxDeliverableSize = maxDeliverableSize; }
+
+        public Duration getSessionTtl() { return sessionTtl; }
+        public void setSessionTtl(Duration sessionTtl) { this.sessionTtl = sessionTtl; }
+    }
+
+    /**
+     * S3-compatible object store settings, used when storage.backend=s3.
+     */
+    public static class S3 {
+        /** Custom endpoint for MinIO/Ceph etc.; leave empty for AWS. */
+        private String endpoint;
+        private String region = "us-east-1";
+        private String bucket;
+        /** Optional key prefix inside the bucket. */
+        private String prefix = "";
+        /** Static credentials; when empty the default AWS credential chain is used. */
+        private String accessKey;
+        private String secretKey;
+        /** Most self-hosted S3 implementations need path-style addressing. */
+        private boolean pathStyleAccess = true;
+
+        public String getEndpoint() { return endpoint; }
+        public void setEndpoint(String endpoint) { this.endpoint = endpoint; }
+
+        public String getRegion() { return region; }
+        public void setRegion(String region) { this.region = region; }
+
+        public String getBucket() { return bucket; }
+        public void setBucket(String bucket) { this.bucket = bucket; }
+
+        public String getPrefix() { return prefix; }
+        public void setPrefix(String prefix) { this.prefix = prefix; }
+
+        public String getAccessKey() { return accessKey; }
+        public void setAccessKey(String accessKey) { this.accessKey = accessKey; }
+
+        public String getSecretKey() { return secretKey; }
+        public void setSecretKey(String secretKey) { this.secretKey = secretKey; }
+
+        public boolean isPathStyleAccess() { return pathStyleAccess; }
+        public void setPathStyleAccess(boolean pathStyleAccess) { this.pathStyleAccess = pathStyleAccess; }
+    }
 }
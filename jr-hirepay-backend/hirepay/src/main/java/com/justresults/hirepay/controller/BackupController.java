@@ -0,0 +1,67 @@
+package com.justresults.hirepay.controller;
+
+import com.justresults.hirepay.business.services.BackupService;
+import com.justresults.hirepay.dto.StorageDTOs.BackupSummary;
+import com.justresults.hirepay.security.JwtService;
+import io.jsonwebtoken.Claims;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin")
+public class BackupController {
+
+    private final BackupService backupService;
+    private final JwtService jwtService;
+
+    public BackupController(BackupService backupService, JwtService jwtService) {
+        this.backupService = backupService;
+        this.jwtService = jwtService;
+    }
+
+    // Download a new incremental backup (tar), streamed as it is written
+    @GetMapping("/backup")
+    public ResponseEntity<StreamingResponseBody> downloadBackup(@RequestHeader(value = "Authorization", required = false) String auth) {
+        Claims claims = adminClaims(auth);
+        if (claims == null) {
+            return ResponseEntity.status(403).build();
+        }
+        String filename = "hirepay-backup-"
+                + DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").format(ZonedDateTime.now(ZoneOffset.UTC)) + ".tar";
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(MediaType.parseMediaType("application/x-tar"))
+                .body(backupService.streamBackup(claims.getSubject()));
+    }
+
+    // Recent backups, newest first
+    @GetMapping("/backups")
+    public ResponseEntity<List<BackupSummary>> listBackups(@RequestHeader(value = "Authorization", required = false) String auth) {
+        if (adminClaims(auth) == null) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(backupService.getRecentBackups());
+    }
+
+    // null unless the bearer token belongs to an ADMIN
+    private Claims adminClaims(String auth) {
+        if (auth == null || !auth.startsWith("Bearer ")) {
+            return null;
+        }
+        try {
+            Claims claims = jwtService.parse(auth.substring(7));
+            List<?> roles = claims.get("roles", List.class);
+            return roles != null && roles.contains("ADMIN") ? claims : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
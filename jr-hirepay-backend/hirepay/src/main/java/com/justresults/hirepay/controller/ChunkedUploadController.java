@@ -0,0 +1,91 @@
+package com.justresults.hirepay.controller;
+
+import com.justresults.hirepay.business.services.ChunkedUploadService;
+import com.justresults.hirepay.dto.UploadSessionDTOs.*;
+import com.justresults.hirepay.security.JwtService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@RequestMapping("/api/uploads")
+public class ChunkedUploadController {
+
+    private final ChunkedUploadService chunkedUploadService;
+    private final JwtService jwtService;
+
+    public ChunkedUploadController(ChunkedUploadService chunkedUploadService, JwtService jwtService) {
+        this.chunkedUploadService = chunkedUploadService;
+        this.jwtService = jwtService;
+    }
+
+    // Start a resumable upload
+    @PostMapping
+    public ResponseEntity<UploadSessionResponse> createSession(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Valid @RequestBody CreateUploadSessionRequest request) {
+
+        String callerEmail = authHeader != null ? extractEmailFromAuthHeader(authHeader) : null;
+        return ResponseEntity.ok(chunkedUploadService.createSession(request, callerEmail));
+    }
+
+    // Append a chunk; the raw request body is streamed to a part in storage. Form content types
+    // are refused because the container would consume the body while parsing parameters.
+    @PutMapping(value = "/{sessionId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadSessionResponse> appendChunk(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @PathVariable String sessionId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request) throws IOException {
+
+        String callerEmail = authHeader != null ? extractEmailFromAuthHeader(authHeader) : null;
+        try (InputStream body = request.getInputStream()) {
+            return ResponseEntity.ok(chunkedUploadService.appendChunk(sessionId, offset, body, callerEmail));
+        }
+    }
+
+    // Progress of an upload (where to resume from)
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionResponse> getSession(@PathVariable String sessionId) {
+        return ResponseEntity.ok(chunkedUploadService.getSession(sessionId));
+    }
+
+    // Attach the completed upload to its procedure
+    @PostMapping("/{sessionId}/finalize")
+    public ResponseEntity<UploadSessionResponse> finalizeSession(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @PathVariable String sessionId) throws IOException {
+
+        String callerEmail = authHeader != null ? extractEmailFromAuthHeader(authHeader) : null;
+        return ResponseEntity.ok(chunkedUploadService.finalizeSession(sessionId, callerEmail));
+    }
+
+    // Abandon an upload
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abortSession(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @PathVariable String sessionId) throws IOException {
+
+        String callerEmail = authHeader != null ? extractEmailFromAuthHeader(authHeader) : null;
+        chunkedUploadService.abortSession(sessionId, callerEmail);
+        return ResponseEntity.noContent().build();
+    }
+
+    private String extractEmailFromAuthHeader(String authHeader) {
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            String token = authHeader.substring(7);
+            try {
+                var claims = jwtService.parse(token);
+                return claims.getSubject();
+            } catch (Exception e) {
+                throw new RuntimeException("Invalid JWT token: " + e.getMessage());
+            }
+        }
+        throw new RuntimeException("Invalid authorization header");
+    }
+}
@@ -0,0 +1,232 @@
+package com.justresults.hirepay.controller;
+
+import com.justresults.hirepay.storage.StoredContent;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Writes a stored document to the response with HTTP validators and byte-range support:
+ * strong ETags from the content hash, If-None-Match / If-Modified-Since (304), If-Range and
+ * single-range requests (206). Local files are handed to Tomcat's sendfile or sent with
+ * {@link FileChannel#transferTo} so the bytes never pass through the Java heap. Documents
+ * stored gzip-compressed are sent with Content-Encoding: gzip when the client accepts it.
+ */
+@Component
+public class DocumentDownloadWriter {
+
+    // Tomcat request attributes for asynchronous sendfile (see org.apache.coyote.Constants)
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // below this, a blocking transferTo is cheaper than handing the file to the poller
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    // let the browser keep its copy but check back with the validators on every use
+    static final String REVALIDATE = "private, no-cache";
+    // for content that can never change under its URL
+    static final String IMMUTABLE = "private, max-age=31536000, immutable";
+
+    public void write(HttpServletRequest request, HttpServletResponse response, StoredContent document,
+                      String sha256, String filename, String contentType) throws IOException {
+        write(request, response, document, sha256, filename, contentType, REVALIDATE);
+    }
+
+    public void write(HttpServletRequest request, HttpServletResponse response, StoredContent document,
+                      String sha256, String filename, String contentType, String cacheControl) throws IOException {
+        // documents stored compressed go out as is to clients that accept the encoding;
+        // range requests always address the decoded bytes
+        String encoding = document.getContentEncoding();
+        boolean sendEncoded = encoding != null && request.getHeader(HttpHeaders.RANGE) == null
+                && acceptsEncoding(request, encoding);
+        StoredContent content = sendEncoded ? document.encoded() : document;
+
+        long size = content.getSize();
+        // each representation needs its own strong validator
+        String etag = sha256 == null ? null : sendEncoded ? "\"" + sha256 + "-" + encoding + "\"" : "\"" + sha256 + "\"";
+        // HTTP dates have second precision
+        long lastModified = content.getLastModified().toEpochMilli() / 1000 * 1000;
+
+        if (etag != null) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+        }
+        if (encoding != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+        response.setContentType(contentType);
+        if (sendEncoded) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        }
+
+        long start = 0;
+        long length = size;
+        HttpRange range = requestedRange(request, etag, lastModified);
+        if (range != null) {
+            if (size == 0 || range.getRangeStart(size) >= size) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = range.getRangeStart(size);
+            long end = range.getRangeEnd(size);
+            length = end - start + 1;
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        } else {
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+        response.setContentLengthLong(length);
+
+        if ("HEAD".equals(request.getMethod()) || length == 0) {
+            return;
+        }
+
+        Optional<Path> localFile = content.getLocalFile();
+        if (localFile.isPresent()) {
+            Path file = localFile.get();
+            if (length >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+                // Tomcat writes the file from the kernel page cache after this handler returns
+                request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, start + length);
+                return;
+            }
+            transfer(file, start, length, response.getOutputStream());
+            return;
+        }
+
+        try (InputStream in = content.open(start, length)) {
+            StreamUtils.copy(in, response.getOutputStream());
+        }
+    }
+
+    private static void transfer(Path file, long start, long length, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    private static boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since (RFC 9110 13.2.2)
+            return etag != null && matches(ifNoneMatch, etag);
+        }
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+    }
+
+    /**
+     * The single range to serve, or null for the full body. Multiple ranges are answered with
+     * the whole document, which RFC 9110 allows and which PDF viewers handle fine.
+     */
+    private static HttpRange requestedRange(HttpServletRequest request, String etag, long lastModified) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null) {
+            return null;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null) {
+            boolean current = ifRange.startsWith("\"") || ifRange.startsWith("W/")
+                    ? etag != null && ifRange.equals(etag)
+                    : dateHeader(request, HttpHeaders.IF_RANGE) == lastModified;
+            if (!current) {
+                return null;
+            }
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            // malformed Range headers are ignored
+            return null;
+        }
+    }
+
+    private static boolean acceptsEncoding(HttpServletRequest request, String encoding) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String candidate : acceptEncoding.split(",")) {
+            String[] parts = candidate.trim().split(";");
+            String coding = parts[0].trim();
+            if (!coding.equalsIgnoreCase(encoding) && !coding.equals("*")) {
+                continue;
+            }
+            // "gzip;q=0" means the opposite
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            // weak comparison: W/"x" matches "x"
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
@@ -1,24 +1,36 @@
 package com.justresults.hirepay.controller;
 
+import com.justresults.hirepay.business.services.DocumentPreviewService;
 import com.justresults.hirepay.business.services.DocumentWorkflowService;
 import com.justresults.hirepay.dto.DocumentWorkflowDTOs.*;
 import com.justresults.hirepay.enumeration.DocReference;
+import com.justresults.hirepay.storage.StoredContentResource;
 import jakarta.validation.Valid;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/documents")
 public class DocumentWorkflowController {
 
     private final DocumentWorkflowService documentWorkflowService;
+    private final DocumentPreviewService documentPreviewService;
 
-    public DocumentWorkflowController(DocumentWorkflowService documentWorkflowService) {
+    public DocumentWorkflowController(DocumentWorkflowService documentWorkflowService,
+                                      DocumentPreviewService documentPreviewService) {
         this.documentWorkflowService = documentWorkflowService;
+        this.documentPreviewService = documentPreviewService;
     }
 
     // Send document to consultant/client
@@ -42,6 +54,16 @@ public class DocumentWorkflowController {
         return ResponseEntity.ok(response);
     }
 
+    // Download every document of a procedure as one ZIP, streamed as it is built
+    @GetMapping("/{procedureUuid}/export")
+    public ResponseEntity<StreamingResponseBody> exportDocuments(@PathVariable String procedureUuid) {
+        StreamingResponseBody body = documentWorkflowService.exportDocuments(procedureUuid);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + procedureUuid + "-documents.zip\"")
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(body);
+    }
+
     // Update document status (approve, reject, etc.)
     @PutMapping("/{documentId}/status")
     public ResponseEntity<DocumentWorkflowResponse> updateDocumentStatus(
@@ -93,4 +115,33 @@ public class DocumentWorkflowController {
         String downloadUrl = documentWorkflowService.generateDownloadUrl(documentId, expiryMinutes);
         return ResponseEntity.ok(downloadUrl);
     }
+
+    // First-page thumbnail of a PDF document; 404 until it has been rendered
+    @GetMapping("/{documentId}/thumbnail")
+    public ResponseEntity<Resource> getThumbnail(@PathVariable String documentId, WebRequest webRequest) throws IOException {
+        return preview(documentPreviewService.getThumbnail(documentId), webRequest);
+    }
+
+    // Low-resolution image of one page (1-based) of a PDF document
+    @GetMapping("/{documentId}/preview/{page}")
+    public ResponseEntity<Resource> getPagePreview(
+            @PathVariable String documentId,
+            @PathVariable int page,
+            WebRequest webRequest) throws IOException {
+        return preview(documentPreviewService.getPagePreview(documentId, page), webRequest);
+    }
+
+    private ResponseEntity<Resource> preview(DocumentPreviewResponse preview, WebRequest webRequest) {
+        CacheControl cacheControl = CacheControl.maxAge(1, TimeUnit.DAYS).cachePrivate();
+        // previews are keyed by content hash, so the etag never changes for a given image
+        if (webRequest.checkNotModified(preview.etag())) {
+            return ResponseEntity.status(304).eTag(preview.etag()).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(preview.etag())
+                .cacheControl(cacheControl)
+                .contentType(MediaType.IMAGE_JPEG)
+                .contentLength(preview.content().getSize())
+                .body(new StoredContentResource(preview.content(), "preview.jpg"));
+    }
 }
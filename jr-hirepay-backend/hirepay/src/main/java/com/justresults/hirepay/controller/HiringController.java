@@ -1,33 +1,48 @@
 package com.justresults.hirepay.controller;
 
 import com.justresults.hirepay.business.services.HiringService;
-import com.justresults.hirepay.business.services.TaskOrderService;
+import com.justresults.hirepay.business.services.StorageQuotaService;
+import com.justresults.hirepay.business.services.TaskOrderJobService;
 import com.justresults.hirepay.domain.Procedure;
 import com.justresults.hirepay.domain.ProcedureDocument;
 import com.justresults.hirepay.dto.HiringRequests.CreateProcedureRequest;
 import com.justresults.hirepay.dto.HiringRequests.AddDocumentRequest;
 import com.justresults.hirepay.dto.HiringRequests.ApprovePaymentTaxRequest;
 import com.justresults.hirepay.dto.HiringRequests.AcceptTaskOrderRequest;
+import com.justresults.hirepay.dto.TaskOrderDTOs.BulkTaskOrderRequest;
+import com.justresults.hirepay.dto.TaskOrderDTOs.TaskOrderJobResponse;
 import com.justresults.hirepay.enumeration.DocReference;
 import com.justresults.hirepay.util.DocumentStorageService;
+import com.justresults.hirepay.util.InvalidStateException;
+import com.justresults.hirepay.util.StoredDocument;
 import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/hiring")
 public class HiringController {
 
+    private static final long MAX_JOB_WAIT_SECONDS = 60;
+
     private final HiringService hiringService;
     private final DocumentStorageService documentStorageService;
-    private final TaskOrderService taskOrderService;
+    private final TaskOrderJobService taskOrderJobService;
+    private final StorageQuotaService storageQuotaService;
 
-    public HiringController(HiringService hiringService, DocumentStorageService documentStorageService, TaskOrderService taskOrderService) {
+    public HiringController(HiringService hiringService, DocumentStorageService documentStorageService, TaskOrderJobService taskOrderJobService,
+                            StorageQuotaService storageQuotaService) {
         this.hiringService = hiringService;
         this.documentStorageService = documentStorageService;
-        this.taskOrderService = taskOrderService;
+        this.taskOrderJobService = taskOrderJobService;
+        this.storageQuotaService = storageQuotaService;
     }
 
     // Create a new hiring procedure (DRAFT)
@@ -57,8 +72,16 @@ public class HiringController {
                                                            @RequestParam("type") DocReference docReference,
                                                            @RequestParam("file") MultipartFile file,
                                                            @RequestParam("actorEmail") String actorEmail) throws IOException {
-        String location = documentStorageService.store(uuid, file);
-        ProcedureDocument doc = hiringService.addDocument(uuid, docReference, location, actorEmail);
+        storageQuotaService.checkUpload(actorEmail, uuid, file.getSize());
+        StoredDocument stored = documentStorageService.store(uuid, file, docReference);
+        ProcedureDocument doc;
+        try {
+            doc = hiringService.addDocument(uuid, docReference, stored, actorEmail);
+        } catch (RuntimeException e) {
+            // stored outside the transaction that failed, so nothing else cleans it up
+            documentStorageService.release(stored.getLocation());
+            throw e;
+        }
         return ResponseEntity.ok(doc);
     }
 
@@ -83,11 +106,35 @@ public class HiringController {
         return ResponseEntity.ok(hiringService.approvePaymentTax(uuid, req.isApproved(), req.getNotes()));
     }
 
-    // Generate Task Order PDF
+    // Generate Task Order PDF in the background; poll the job at the Location returned
     @PostMapping("/{uuid}/task-order/generate")
-    public ResponseEntity<ProcedureDocument> generateTaskOrder(@PathVariable String uuid,
-                                                             @RequestParam("actorEmail") String actorEmail) {
-        return ResponseEntity.ok(taskOrderService.generateTaskOrder(uuid, actorEmail));
+    public ResponseEntity<TaskOrderJobResponse> generateTaskOrder(@PathVariable String uuid,
+                                                                  @RequestParam("actorEmail") String actorEmail) {
+        TaskOrderJobResponse job = taskOrderJobService.submit(uuid, actorEmail);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/hiring/task-order/jobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    // Generate Task Orders for many procedures; one NDJSON line per procedure as its job finishes
+    @PostMapping("/task-order/bulk")
+    public ResponseEntity<StreamingResponseBody> generateTaskOrders(@Valid @RequestBody BulkTaskOrderRequest req,
+                                                                    @RequestParam("actorEmail") String actorEmail) {
+        boolean listed = req.getProcedureUuids() != null && !req.getProcedureUuids().isEmpty();
+        if (listed == req.isAllApproved()) {
+            throw new InvalidStateException("Give either procedureUuids or allApproved");
+        }
+        StreamingResponseBody body = taskOrderJobService.generateAll(listed ? req.getProcedureUuids() : null, actorEmail);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    // Task Order job status; waitSeconds holds the request open until the job finishes
+    @GetMapping("/task-order/jobs/{jobId}")
+    public CompletableFuture<TaskOrderJobResponse> getTaskOrderJob(@PathVariable String jobId,
+                                                                   @RequestParam(defaultValue = "0") long waitSeconds) {
+        return taskOrderJobService.awaitJob(jobId, Duration.ofSeconds(Math.min(Math.max(waitSeconds, 0), MAX_JOB_WAIT_SECONDS)));
     }
 
     // BO generated task order
@@ -1,7 +1,12 @@
 package com.justresults.hirepay.controller;
 
+import com.justresults.hirepay.util.ForbiddenException;
+import com.justresults.hirepay.util.InvalidSignatureException;
 import com.justresults.hirepay.util.InvalidStateException;
 import com.justresults.hirepay.util.NotFoundException;
+import com.justresults.hirepay.util.QuotaExceededException;
+import com.justresults.hirepay.util.StorageUnavailableException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -25,6 +30,31 @@ public class RestExceptionAdvice {
                 .body(Map.of("error", "INVALID_STATE", "message", ex.getMessage()));
     }
 
+    @ExceptionHandler(InvalidSignatureException.class)
+    public ResponseEntity<?> forbidden(InvalidSignatureException ex) {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(Map.of("error", "FORBIDDEN", "message", ex.getMessage()));
+    }
+
+    @ExceptionHandler(ForbiddenException.class)
+    public ResponseEntity<?> forbidden(ForbiddenException ex) {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(Map.of("error", "FORBIDDEN", "message", ex.getMessage()));
+    }
+
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<?> quotaExceeded(QuotaExceededException ex) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body(Map.of("error", "QUOTA_EXCEEDED", "message", ex.getMessage()));
+    }
+
+    @ExceptionHandler(StorageUnavailableException.class)
+    public ResponseEntity<?> storageUnavailable(StorageUnavailableException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfter().toSeconds()))
+                .body(Map.of("error", "STORAGE_UNAVAILABLE", "message", ex.getMessage()));
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<?> badRequest(MethodArgumentNotValidException ex) {
         return ResponseEntity.badRequest()
@@ -0,0 +1,43 @@
+package com.justresults.hirepay.controller;
+
+import com.justresults.hirepay.business.services.DocumentWorkflowService;
+import com.justresults.hirepay.dto.UmbrellaAgreementDTOs.DocumentDownloadResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/**
+ * Serves the links issued by /api/documents/{documentId}/download-url. The token is the
+ * authorization, so these requests touch neither the JWT filter nor the database.
+ */
+@RestController
+@RequestMapping("/api/downloads")
+public class SignedDownloadController {
+
+    private final DocumentWorkflowService documentWorkflowService;
+    private final DocumentDownloadWriter downloadWriter;
+
+    public SignedDownloadController(DocumentWorkflowService documentWorkflowService,
+                                    DocumentDownloadWriter downloadWriter) {
+        this.documentWorkflowService = documentWorkflowService;
+        this.downloadWriter = downloadWriter;
+    }
+
+    // Download through a signed link (supports Range, ETag and conditional GET)
+    @GetMapping("/{token}")
+    public void download(@PathVariable String token,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        DocumentDownloadResponse download = documentWorkflowService.openSignedDownload(token);
+        // a document version's bytes never change, so caches may keep hashed content indefinitely
+        String cacheControl = download.sha256() != null
+                ? DocumentDownloadWriter.IMMUTABLE : DocumentDownloadWriter.REVALIDATE;
+        downloadWriter.write(request, response, download.content(), download.sha256(),
+                download.filename(), download.contentType(), cacheControl);
+    }
+}
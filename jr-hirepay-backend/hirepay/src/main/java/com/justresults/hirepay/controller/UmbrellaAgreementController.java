@@ -3,9 +3,9 @@ package com.justresults.hirepay.controller;
 import com.justresults.hirepay.business.services.UmbrellaAgreementService;
 import com.justresults.hirepay.dto.UmbrellaAgreementDTOs.*;
 import com.justresults.hirepay.security.JwtService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,10 +20,13 @@ public class UmbrellaAgreementController {
 
     private final UmbrellaAgreementService umbrellaAgreementService;
     private final JwtService jwtService;
+    private final DocumentDownloadWriter downloadWriter;
 
-    public UmbrellaAgreementController(UmbrellaAgreementService umbrellaAgreementService, JwtService jwtService) {
+    public UmbrellaAgreementController(UmbrellaAgreementService umbrellaAgreementService, JwtService jwtService,
+                                       DocumentDownloadWriter downloadWriter) {
         this.umbrellaAgreementService = umbrellaAgreementService;
         this.jwtService = jwtService;
+        this.downloadWriter = downloadWriter;
     }
 
     // Send umbrella agreement to front office user with document attachment (back office only)
@@ -183,15 +186,14 @@ public class UmbrellaAgreementController {
         return ResponseEntity.ok(agreement);
     }
 
-    // Download document
+    // Download document (supports Range, ETag and conditional GET)
     @GetMapping("/{documentId}/download")
-    public ResponseEntity<Resource> downloadDocument(@PathVariable String documentId) throws IOException {
+    public void downloadDocument(@PathVariable String documentId,
+                                 HttpServletRequest request,
+                                 HttpServletResponse response) throws IOException {
         DocumentDownloadResponse downloadResponse = umbrellaAgreementService.downloadDocument(documentId);
-        
-        return ResponseEntity.ok()
-            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + downloadResponse.filename() + "\"")
-            .contentType(MediaType.parseMediaType(downloadResponse.contentType()))
-            .body(downloadResponse.resource());
+        downloadWriter.write(request, response, downloadResponse.content(), downloadResponse.sha256(),
+                downloadResponse.filename(), downloadResponse.contentType());
     }
 
     // Get pending review agreements (back office only)
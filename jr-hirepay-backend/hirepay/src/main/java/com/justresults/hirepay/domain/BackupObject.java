@@ -0,0 +1,50 @@
+package com.justresults.hirepay.domain;
+
+import jakarta.persistence.*;
+
+/**
+ * A stored object written into a backup archive. Keys never change content, so once a
+ * completed archive holds a key, later archives only point back at it.
+ */
+@Entity
+@Table(
+    name = "backup_objects",
+    indexes = {
+        @Index(name = "idx_backup_objects_key", columnList = "objectKey")
+    }
+)
+public class BackupObject {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long backupRunId;
+
+    @Column(nullable = false, length = 1024)
+    private String objectKey;
+
+    @Column(nullable = false)
+    private long size;
+
+    // hex SHA-256 of the stored bytes, as written to the archive
+    @Column(nullable = false, length = 64)
+    private String sha256;
+
+    public BackupObject() { }
+
+    public BackupObject(Long backupRunId, String objectKey, long size, String sha256) {
+        this.backupRunId = backupRunId;
+        this.objectKey = objectKey;
+        this.size = size;
+        this.sha256 = sha256;
+    }
+
+    // getters
+    public Long getId() { return id; }
+    public Long getBackupRunId() { return backupRunId; }
+    public String getObjectKey() { return objectKey; }
+    public long getSize() { return size; }
+    public String getSha256() { return sha256; }
+}
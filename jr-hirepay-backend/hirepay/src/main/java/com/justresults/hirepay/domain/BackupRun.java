@@ -0,0 +1,84 @@
+package com.justresults.hirepay.domain;
+
+import com.justresults.hirepay.enumeration.BackupStatus;
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * One backup archive: the database snapshot it holds and how many stored objects it carried
+ * itself versus left to earlier archives.
+ */
+@Entity
+@Table(name = "backup_runs")
+public class BackupRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private BackupStatus status = BackupStatus.RUNNING;
+
+    // "scheduled" or the email of the admin who downloaded it
+    @Column(nullable = false, length = 128)
+    private String triggeredBy;
+
+    @Column(nullable = false, updatable = false)
+    private Instant startedAt = Instant.now();
+
+    @Column
+    private Instant finishedAt;
+
+    @Column(nullable = false)
+    private long rowsExported;
+
+    // objects written into this archive
+    @Column(nullable = false)
+    private long objectsIncluded;
+
+    @Column(nullable = false)
+    private long bytesIncluded;
+
+    // objects referenced by the snapshot but already in an earlier archive
+    @Column(nullable = false)
+    private long objectsReused;
+
+    @Column(nullable = false)
+    private long objectsMissing;
+
+    @Column(length = 1000)
+    private String error;
+
+    // getters/setters
+    public Long getId() { return id; }
+
+    public BackupStatus getStatus() { return status; }
+    public void setStatus(BackupStatus status) { this.status = status; }
+
+    public String getTriggeredBy() { return triggeredBy; }
+    public void setTriggeredBy(String triggeredBy) { this.triggeredBy = triggeredBy; }
+
+    public Instant getStartedAt() { return startedAt; }
+
+    public Instant getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; }
+
+    public long getRowsExported() { return rowsExported; }
+    public void setRowsExported(long rowsExported) { this.rowsExported = rowsExported; }
+
+    public long getObjectsIncluded() { return objectsIncluded; }
+    public void setObjectsIncluded(long objectsIncluded) { this.objectsIncluded = objectsIncluded; }
+
+    public long getBytesIncluded() { return bytesIncluded; }
+    public void setBytesIncluded(long bytesIncluded) { this.bytesIncluded = bytesIncluded; }
+
+    public long getObjectsReused() { return objectsReused; }
+    public void setObjectsReused(long objectsReused) { this.objectsReused = objectsReused; }
+
+    public long getObjectsMissing() { return objectsMissing; }
+    public void setObjectsMissing(long objectsMissing) { this.objectsMissing = objectsMissing; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
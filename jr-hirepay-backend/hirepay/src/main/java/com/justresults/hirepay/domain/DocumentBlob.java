@@ -0,0 +1,50 @@
+package com.justresults.hirepay.domain;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * A content-addressed file shared by every document with the same bytes.
+ * refCount tracks how many procedure_documents rows point at it.
+ */
+@Entity
+@Table(
+    name = "document_blobs",
+    indexes = {
+        @Index(name = "idx_document_blobs_location", columnList = "location")
+    }
+)
+public class DocumentBlob {
+
+    // hex SHA-256 of the content
+    @Id
+    @Column(length = 64)
+    private String sha256;
+
+    @Column(nullable = false, length = 512)
+    private String location;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(nullable = false)
+    private int refCount;
+
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt = Instant.now();
+
+    // getters/setters
+    public String getSha256() { return sha256; }
+    public void setSha256(String sha256) { this.sha256 = sha256; }
+
+    public String getLocation() { return location; }
+    public void setLocation(String location) { this.location = location; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public int getRefCount() { return refCount; }
+    public void setRefCount(int refCount) { this.refCount = refCount; }
+
+    public Instant getCreatedAt() { return createdAt; }
+}
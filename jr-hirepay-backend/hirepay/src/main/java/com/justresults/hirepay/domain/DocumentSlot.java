@@ -0,0 +1,62 @@
+package com.justresults.hirepay.domain;
+
+import com.justresults.hirepay.enumeration.DocReference;
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * The version history of one document type within a procedure. Holds the last allocated
+ * version and points at the current document, so allocating a version is a row lock and
+ * reading the latest one a single lookup.
+ */
+@Entity
+@Table(
+    name = "document_slots",
+    uniqueConstraints = {
+        @UniqueConstraint(name = "uk_document_slots_proc_docref",
+                          columnNames = {"procedure_id", "doc_reference"})
+    }
+)
+public class DocumentSlot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "procedure_id")
+    private Procedure procedure;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "doc_reference", nullable = false, length = 64)
+    private DocReference docReference;
+
+    // highest version handed out; 0 before the first document
+    @Column(nullable = false)
+    private int currentVersion;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "current_document_id")
+    private ProcedureDocument currentDocument;
+
+    @Column(nullable = false)
+    private Instant updatedAt = Instant.now();
+
+    // getters/setters
+    public Long getId() { return id; }
+
+    public Procedure getProcedure() { return procedure; }
+    public void setProcedure(Procedure procedure) { this.procedure = procedure; }
+
+    public DocReference getDocReference() { return docReference; }
+    public void setDocReference(DocReference docReference) { this.docReference = docReference; }
+
+    public int getCurrentVersion() { return currentVersion; }
+    public void setCurrentVersion(int currentVersion) { this.currentVersion = currentVersion; }
+
+    public ProcedureDocument getCurrentDocument() { return currentDocument; }
+    public void setCurrentDocument(ProcedureDocument currentDocument) { this.currentDocument = currentDocument; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
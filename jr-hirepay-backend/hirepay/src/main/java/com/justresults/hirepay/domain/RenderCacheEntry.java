@@ -0,0 +1,62 @@
+package com.justresults.hirepay.domain;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * A rendered document that can stand in for rendering the same template and variables
+ * again. renderKey comes from PdfRenderingEngine.cacheKey; location is the entry's own
+ * copy of the output, and sha256 lets a reuse check it still has those bytes.
+ */
+@Entity
+@Table(
+    name = "render_cache",
+    indexes = {
+        @Index(name = "idx_render_cache_key", columnList = "renderKey", unique = true)
+    }
+)
+public class RenderCacheEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
+    private String renderKey;
+
+    @Column(nullable = false, length = 128)
+    private String template;
+
+    @Column(nullable = false, length = 512)
+    private String location;
+
+    @Column(nullable = false, length = 64)
+    private String sha256;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(nullable = false)
+    private Instant createdAt = Instant.now();
+
+    // getters/setters
+    public Long getId() { return id; }
+
+    public String getRenderKey() { return renderKey; }
+    public void setRenderKey(String renderKey) { this.renderKey = renderKey; }
+
+    public String getTemplate() { return template; }
+    public void setTemplate(String template) { this.template = template; }
+
+    public String getLocation() { return location; }
+    public void setLocation(String location) { this.location = location; }
+
+    public String getSha256() { return sha256; }
+    public void setSha256(String sha256) { this.sha256 = sha256; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,56 @@
+package com.justresults.hirepay.domain;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * A stored object whose mirror copy may be out of date. Rows are only a hint: the worker
+ * compares the object on both sides, so an entry for a key written, deleted and written
+ * again comes out right however many rows it left.
+ */
+@Entity
+@Table(
+    name = "replication_queue",
+    indexes = {
+        @Index(name = "idx_replication_queue_next_attempt", columnList = "nextAttemptAt")
+    }
+)
+public class ReplicationTask {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 1024)
+    private String objectKey;
+
+    @Column(nullable = false)
+    private Instant enqueuedAt = Instant.now();
+
+    @Column(nullable = false)
+    private Instant nextAttemptAt = enqueuedAt;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    // getters/setters
+    public Long getId() { return id; }
+
+    public String getObjectKey() { return objectKey; }
+    public void setObjectKey(String objectKey) { this.objectKey = objectKey; }
+
+    public Instant getEnqueuedAt() { return enqueuedAt; }
+    public void setEnqueuedAt(Instant enqueuedAt) { this.enqueuedAt = enqueuedAt; }
+
+    public Instant getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(Instant nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
@@ -0,0 +1,58 @@
+package com.justresults.hirepay.domain;
+
+import com.justresults.hirepay.enumeration.UsageScope;
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Running byte and file totals of the documents held by one uploader or one procedure,
+ * adjusted in the transaction that records or replaces a document.
+ */
+@Entity
+@Table(
+    name = "storage_usage",
+    uniqueConstraints = {
+        @UniqueConstraint(name = "uk_storage_usage_scope_owner", columnNames = {"scope", "owner"})
+    }
+)
+public class StorageUsage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private UsageScope scope;
+
+    @Column(nullable = false)
+    private String owner;
+
+    // logical document bytes, as uploaded (before compression, dedup or encryption)
+    @Column(nullable = false)
+    private long bytes;
+
+    @Column(nullable = false)
+    private long files;
+
+    @Column(nullable = false)
+    private Instant updatedAt = Instant.now();
+
+    // getters/setters
+    public Long getId() { return id; }
+
+    public UsageScope getScope() { return scope; }
+    public void setScope(UsageScope scope) { this.scope = scope; }
+
+    public String getOwner() { return owner; }
+    public void setOwner(String owner) { this.owner = owner; }
+
+    public long getBytes() { return bytes; }
+    public void setBytes(long bytes) { this.bytes = bytes; }
+
+    public long getFiles() { return files; }
+    public void setFiles(long files) { this.files = files; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
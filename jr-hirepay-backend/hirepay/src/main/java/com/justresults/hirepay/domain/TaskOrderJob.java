@@ -0,0 +1,93 @@
+package com.justresults.hirepay.domain;
+
+import com.justresults.hirepay.enumeration.JobStatus;
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A request to generate the task order of one procedure. The table is the queue: workers
+ * claim QUEUED rows with a conditional update, so a job survives restarts and runs on one
+ * node only.
+ */
+@Entity
+@Table(
+    name = "task_order_jobs",
+    indexes = {
+        @Index(name = "idx_task_order_jobs_status", columnList = "status, createdAt"),
+        @Index(name = "idx_task_order_jobs_procedure", columnList = "procedureUuid")
+    }
+)
+public class TaskOrderJob {
+
+    @Id
+    @Column(length = 36)
+    private String id = UUID.randomUUID().toString();
+
+    @Column(nullable = false, length = 64)
+    private String procedureUuid;
+
+    @Column(nullable = false, length = 128)
+    private String actorEmail;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private JobStatus status = JobStatus.QUEUED;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt = Instant.now();
+
+    // when a QUEUED job may next be claimed; later than createdAt once a failed run backs off
+    private Instant nextAttemptAt = createdAt;
+
+    private Instant startedAt;
+
+    // refreshed while a worker runs the job; a RUNNING job without one for long is presumed lost
+    private Instant heartbeatAt;
+
+    private Instant finishedAt;
+
+    // the TASK_ORDER document, once COMPLETED
+    private Long documentId;
+
+    @Column(length = 1000)
+    private String error;
+
+    // getters/setters
+    public String getId() { return id; }
+
+    public String getProcedureUuid() { return procedureUuid; }
+    public void setProcedureUuid(String procedureUuid) { this.procedureUuid = procedureUuid; }
+
+    public String getActorEmail() { return actorEmail; }
+    public void setActorEmail(String actorEmail) { this.actorEmail = actorEmail; }
+
+    public JobStatus getStatus() { return status; }
+    public void setStatus(JobStatus status) { this.status = status; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public Instant getCreatedAt() { return createdAt; }
+
+    public Instant getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(Instant nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+
+    public Instant getStartedAt() { return startedAt; }
+    public void setStartedAt(Instant startedAt) { this.startedAt = startedAt; }
+
+    public Instant getHeartbeatAt() { return heartbeatAt; }
+    public void setHeartbeatAt(Instant heartbeatAt) { this.heartbeatAt = heartbeatAt; }
+
+    public Instant getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; }
+
+    public Long getDocumentId() { return documentId; }
+    public void setDocumentId(Long documentId) { this.documentId = documentId; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
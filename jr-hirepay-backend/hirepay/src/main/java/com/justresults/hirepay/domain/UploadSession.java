@@ -0,0 +1,120 @@
+package com.justresults.hirepay.domain;
+
+import com.justresults.hirepay.enumeration.DocReference;
+import com.justresults.hirepay.enumeration.UploadTarget;
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A resumable upload in progress. Each chunk is stored as a part on the storage backend and
+ * listed here in order, so any node can take the next chunk or finalize; receivedBytes is
+ * the offset the next chunk must start at.
+ */
+@Entity
+@Table(name = "upload_sessions", indexes = @Index(name = "idx_upload_sessions_updated_at", columnList = "updatedAt"))
+public class UploadSession {
+
+    @Id
+    @Column(length = 36)
+    private String id = UUID.randomUUID().toString();
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private UploadTarget target;
+
+    // Procedure to attach to (RECEIVE_DOCUMENT only; SUBMIT_WORK creates its own)
+    @Column(length = 64)
+    private String procedureUuid;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "doc_reference", nullable = false, length = 64)
+    private DocReference docReference;
+
+    @Column(nullable = false, length = 255)
+    private String filename;
+
+    @Column(length = 128)
+    private String contentType;
+
+    @Column(nullable = false)
+    private long totalSize;
+
+    @Column(nullable = false)
+    private long receivedBytes;
+
+    // Storage keys of the received parts, in order; together they are the first receivedBytes bytes
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "upload_session_parts", joinColumns = @JoinColumn(name = "session_id"))
+    @OrderColumn(name = "part_index")
+    @Column(name = "part_key", nullable = false, length = 255)
+    private List<String> partKeys = new ArrayList<>();
+
+    @Column(nullable = false, length = 128)
+    private String actorEmail;
+
+    @Column(columnDefinition = "text")
+    private String notes;
+
+    // Authenticated caller who started the upload; only they may finalize or abort it.
+    // Null for anonymous uploads, where knowing the session id is what grants access.
+    @Column(length = 128)
+    private String createdBy;
+
+    // Set once finalized, so a retried finalize returns the same document
+    private Long documentId;
+
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt = Instant.now();
+
+    @Column(nullable = false)
+    private Instant updatedAt = Instant.now();
+
+    @PreUpdate
+    public void preUpdate() {
+        this.updatedAt = Instant.now();
+    }
+
+    // getters/setters
+    public String getId() { return id; }
+
+    public UploadTarget getTarget() { return target; }
+    public void setTarget(UploadTarget target) { this.target = target; }
+
+    public String getProcedureUuid() { return procedureUuid; }
+    public void setProcedureUuid(String procedureUuid) { this.procedureUuid = procedureUuid; }
+
+    public DocReference getDocReference() { return docReference; }
+    public void setDocReference(DocReference docReference) { this.docReference = docReference; }
+
+    public String getFilename() { return filename; }
+    public void setFilename(String filename) { this.filename = filename; }
+
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+
+    public long getTotalSize() { return totalSize; }
+    public void setTotalSize(long totalSize) { this.totalSize = totalSize; }
+
+    public long getReceivedBytes() { return receivedBytes; }
+    public void setReceivedBytes(long receivedBytes) { this.receivedBytes = receivedBytes; }
+
+    public List<String> getPartKeys() { return partKeys; }
+
+    public String getActorEmail() { return actorEmail; }
+    public void setActorEmail(String actorEmail) { this.actorEmail = actorEmail; }
+
+    public String getNotes() { return notes; }
+    public void setNotes(String notes) { this.notes = notes; }
+
+    public String getCreatedBy() { return createdBy; }
+    public void setCreatedBy(String createdBy) { this.createdBy = createdBy; }
+
+    public Long getDocumentId() { return documentId; }
+    public void setDocumentId(Long documentId) { this.documentId = documentId; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public Instant getUpdatedAt() { return updatedAt; }
+}
@@ -2,6 +2,7 @@ package com.justresults.hirepay.dto;
 
 import com.justresults.hirepay.enumeration.DocReference;
 import com.justresults.hirepay.enumeration.DocumentStatus;
+import com.justresults.hirepay.storage.StoredContent;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 
@@ -90,4 +91,50 @@ public class DocumentWorkflowDTOs {
         public String getNotes() { return notes; }
         public String getProcedureUuid() { return procedureUuid; }
     }
+
+    public static class DocumentPreviewResponse {
+        private final StoredContent content;
+        private final String etag;
+
+        public DocumentPreviewResponse(StoredContent content, String etag) {
+            this.content = content;
+            this.etag = etag;
+        }
+
+        // JPEG image
+        public StoredContent content() { return content; }
+        // changes whenever the document's bytes change
+        public String etag() { return etag; }
+    }
+
+    /**
+     * What a signed download URL grants: everything needed to serve the document without
+     * looking it up again.
+     */
+    public static class DownloadGrant {
+        private final Long documentId;
+        private final String location;
+        private final String filename;
+        private final String contentType;
+        private final String sha256;
+        private final Instant expiresAt;
+
+        public DownloadGrant(Long documentId, String location, String filename, String contentType,
+                             String sha256, Instant expiresAt) {
+            this.documentId = documentId;
+            this.location = location;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.sha256 = sha256;
+            this.expiresAt = expiresAt;
+        }
+
+        public Long getDocumentId() { return documentId; }
+        public String getLocation() { return location; }
+        public String getFilename() { return filename; }
+        public String getContentType() { return contentType; }
+        // null for documents stored before hashes were recorded
+        public String getSha256() { return sha256; }
+        public Instant getExpiresAt() { return expiresAt; }
+    }
 }
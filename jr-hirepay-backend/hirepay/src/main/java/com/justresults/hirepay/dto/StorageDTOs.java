@@ -0,0 +1,245 @@
+package com.justresults.hirepay.dto;
+
+import com.justresults.hirepay.enumeration.BackupStatus;
+import com.justresults.hirepay.enumeration.UsageScope;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StorageDTOs {
+
+    public static class ReconciliationReport {
+        private final Instant startedAt;
+        private final boolean deleteMode;
+        private Instant finishedAt;
+        private long objectsScanned;
+        private long orphansFound;
+        private long orphanBytes;
+        private long orphansDeleted;
+        private long bytesReclaimed;
+        // referenced by a document but not present in storage
+        private long missingObjects;
+
+        public ReconciliationReport(Instant startedAt, boolean deleteMode) {
+            this.startedAt = startedAt;
+            this.deleteMode = deleteMode;
+        }
+
+        public Instant getStartedAt() { return startedAt; }
+        public boolean isDeleteMode() { return deleteMode; }
+        public Instant getFinishedAt() { return finishedAt; }
+        public void setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; }
+        public long getObjectsScanned() { return objectsScanned; }
+        public void setObjectsScanned(long objectsScanned) { this.objectsScanned = objectsScanned; }
+        public long getOrphansFound() { return orphansFound; }
+        public void setOrphansFound(long orphansFound) { this.orphansFound = orphansFound; }
+        public long getOrphanBytes() { return orphanBytes; }
+        public void setOrphanBytes(long orphanBytes) { this.orphanBytes = orphanBytes; }
+        public long getOrphansDeleted() { return orphansDeleted; }
+        public void setOrphansDeleted(long orphansDeleted) { this.orphansDeleted = orphansDeleted; }
+        public long getBytesReclaimed() { return bytesReclaimed; }
+        public void setBytesReclaimed(long bytesReclaimed) { this.bytesReclaimed = bytesReclaimed; }
+        public long getMissingObjects() { return missingObjects; }
+        public void setMissingObjects(long missingObjects) { this.missingObjects = missingObjects; }
+    }
+
+    public static class ScrubReport {
+        private final Instant startedAt;
+        private Instant finishedAt;
+        private long documentsScanned;
+        private long bytesVerified;
+        private long verified;
+        // stored before checksums were recorded, or outside storage://
+        private long unverifiable;
+        private long missing;
+        private long corrupt;
+        // first problems found; the counts above are complete
+        private final List<ScrubFinding> findings = new ArrayList<>();
+
+        public ScrubReport(Instant startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        public Instant getStartedAt() { return startedAt; }
+        public Instant getFinishedAt() { return finishedAt; }
+        public void setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; }
+        public long getDocumentsScanned() { return documentsScanned; }
+        public void setDocumentsScanned(long documentsScanned) { this.documentsScanned = documentsScanned; }
+        public long getBytesVerified() { return bytesVerified; }
+        public void setBytesVerified(long bytesVerified) { this.bytesVerified = bytesVerified; }
+        public long getVerified() { return verified; }
+        public void setVerified(long verified) { this.verified = verified; }
+        public long getUnverifiable() { return unverifiable; }
+        public void setUnverifiable(long unverifiable) { this.unverifiable = unverifiable; }
+        public long getMissing() { return missing; }
+        public void setMissing(long missing) { this.missing = missing; }
+        public long getCorrupt() { return corrupt; }
+        public void setCorrupt(long corrupt) { this.corrupt = corrupt; }
+        public List<ScrubFinding> getFindings() { return findings; }
+    }
+
+    public static class ScrubFinding {
+        private final Long documentId;
+        private final String location;
+        private final String problem;
+        private final String detail;
+
+        public ScrubFinding(Long documentId, String location, String problem, String detail) {
+            this.documentId = documentId;
+            this.location = location;
+            this.problem = problem;
+            this.detail = detail;
+        }
+
+        public Long getDocumentId() { return documentId; }
+        public String getLocation() { return location; }
+        // MISSING or CORRUPT
+        public String getProblem() { return problem; }
+        public String getDetail() { return detail; }
+    }
+
+    public static class StorageUsageReport {
+        private final List<UsageEntry> topUsers;
+        private final List<UsageEntry> topProcedures;
+
+        public StorageUsageReport(List<UsageEntry> topUsers, List<UsageEntry> topProcedures) {
+            this.topUsers = topUsers;
+            this.topProcedures = topProcedures;
+        }
+
+        public List<UsageEntry> getTopUsers() { return topUsers; }
+        public List<UsageEntry> getTopProcedures() { return topProcedures; }
+    }
+
+    public static class UsageEntry {
+        private final UsageScope scope;
+        private final String owner;
+        private final long bytes;
+        private final long files;
+        // -1 when unlimited
+        private final long maxBytes;
+        private final long maxFiles;
+
+        public UsageEntry(UsageScope scope, String owner, long bytes, long files, long maxBytes, long maxFiles) {
+            this.scope = scope;
+            this.owner = owner;
+            this.bytes = bytes;
+            this.files = files;
+            this.maxBytes = maxBytes;
+            this.maxFiles = maxFiles;
+        }
+
+        public UsageScope getScope() { return scope; }
+        public String getOwner() { return owner; }
+        public long getBytes() { return bytes; }
+        public long getFiles() { return files; }
+        public long getMaxBytes() { return maxBytes; }
+        public long getMaxFiles() { return maxFiles; }
+    }
+
+    public static class ReplicationStatus {
+        private final boolean enabled;
+        private final long pendingObjects;
+        // pending objects whose last copy attempt failed
+        private final long failingObjects;
+        // written to the primary but never queued, since startup; a resync copies them
+        private final long unqueuedObjects;
+        private final Instant oldestPendingAt;
+        private final long lagSeconds;
+        private final String lastError;
+        private final ResyncReport lastResync;
+
+        public ReplicationStatus(boolean enabled, long pendingObjects, long failingObjects, long unqueuedObjects,
+                                 Instant oldestPendingAt, long lagSeconds, String lastError, ResyncReport lastResync) {
+            this.enabled = enabled;
+            this.pendingObjects = pendingObjects;
+            this.failingObjects = failingObjects;
+            this.unqueuedObjects = unqueuedObjects;
+            this.oldestPendingAt = oldestPendingAt;
+            this.lagSeconds = lagSeconds;
+            this.lastError = lastError;
+            this.lastResync = lastResync;
+        }
+
+        public boolean isEnabled() { return enabled; }
+        public long getPendingObjects() { return pendingObjects; }
+        public long getFailingObjects() { return failingObjects; }
+        public long getUnqueuedObjects() { return unqueuedObjects; }
+        public Instant getOldestPendingAt() { return oldestPendingAt; }
+        public long getLagSeconds() { return lagSeconds; }
+        public String getLastError() { return lastError; }
+        public ResyncReport getLastResync() { return lastResync; }
+    }
+
+    public static class ResyncReport {
+        private final Instant startedAt;
+        private Instant finishedAt;
+        private long objectsScanned;
+        // on the primary only
+        private long missing;
+        // on the mirror only
+        private long extraneous;
+        // on both, with different sizes
+        private long mismatched;
+
+        public ResyncReport(Instant startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        public Instant getStartedAt() { return startedAt; }
+        public Instant getFinishedAt() { return finishedAt; }
+        public void setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; }
+        public long getObjectsScanned() { return objectsScanned; }
+        public void setObjectsScanned(long objectsScanned) { this.objectsScanned = objectsScanned; }
+        public long getMissing() { return missing; }
+        public void setMissing(long missing) { this.missing = missing; }
+        public long getExtraneous() { return extraneous; }
+        public void setExtraneous(long extraneous) { this.extraneous = extraneous; }
+        public long getMismatched() { return mismatched; }
+        public void setMismatched(long mismatched) { this.mismatched = mismatched; }
+        public long getQueued() { return missing + extraneous + mismatched; }
+    }
+
+    public static class BackupSummary {
+        private final Long id;
+        private final BackupStatus status;
+        private final String triggeredBy;
+        private final Instant startedAt;
+        private final Instant finishedAt;
+        private final long rowsExported;
+        private final long objectsIncluded;
+        private final long bytesIncluded;
+        private final long objectsReused;
+        private final long objectsMissing;
+        private final String error;
+
+        public BackupSummary(Long id, BackupStatus status, String triggeredBy, Instant startedAt, Instant finishedAt,
+                             long rowsExported, long objectsIncluded, long bytesIncluded, long objectsReused,
+                             long objectsMissing, String error) {
+            this.id = id;
+            this.status = status;
+            this.triggeredBy = triggeredBy;
+            this.startedAt = startedAt;
+            this.finishedAt = finishedAt;
+            this.rowsExported = rowsExported;
+            this.objectsIncluded = objectsIncluded;
+            this.bytesIncluded = bytesIncluded;
+            this.objectsReused = objectsReused;
+            this.objectsMissing = objectsMissing;
+            this.error = error;
+        }
+
+        public Long getId() { return id; }
+        public BackupStatus getStatus() { return status; }
+        public String getTriggeredBy() { return triggeredBy; }
+        public Instant getStartedAt() { return startedAt; }
+        public Instant getFinishedAt() { return finishedAt; }
+        public long getRowsExported() { return rowsExported; }
+        public long getObjectsIncluded() { return objectsIncluded; }
+        public long getBytesIncluded() { return bytesIncluded; }
+        public long getObjectsReused() { return objectsReused; }
+        public long getObjectsMissing() { return objectsMissing; }
+        public String getError() { return error; }
+    }
+}
@@ -0,0 +1,61 @@
+package com.justresults.hirepay.dto;
+
+import com.justresults.hirepay.enumeration.JobStatus;
+
+import jakarta.validation.constraints.Size;
+
+import java.time.Instant;
+import java.util.List;
+
+public class TaskOrderDTOs {
+
+    // Either a list of procedures, or allApproved for every one waiting for its task order
+    public static class BulkTaskOrderRequest {
+        @Size(max = 1000)
+        private List<String> procedureUuids;
+        private boolean allApproved;
+
+        public List<String> getProcedureUuids() { return procedureUuids; }
+        public void setProcedureUuids(List<String> procedureUuids) { this.procedureUuids = procedureUuids; }
+        public boolean isAllApproved() { return allApproved; }
+        public void setAllApproved(boolean allApproved) { this.allApproved = allApproved; }
+    }
+
+    public static class TaskOrderJobResponse {
+        private final String jobId;
+        private final String procedureUuid;
+        private final JobStatus status;
+        private final int attempts;
+        private final Instant createdAt;
+        private final Instant startedAt;
+        private final Instant finishedAt;
+        private final Long documentId;
+        private final String error;
+
+        public TaskOrderJobResponse(String jobId, String procedureUuid, JobStatus status, int attempts,
+                                    Instant createdAt, Instant startedAt, Instant finishedAt,
+                                    Long documentId, String error) {
+            this.jobId = jobId;
+            this.procedureUuid = procedureUuid;
+            this.status = status;
+            this.attempts = attempts;
+            this.createdAt = createdAt;
+            this.startedAt = startedAt;
+            this.finishedAt = finishedAt;
+            this.documentId = documentId;
+            this.error = error;
+        }
+
+        public String getJobId() { return jobId; }
+        public String getProcedureUuid() { return procedureUuid; }
+        public JobStatus getStatus() { return status; }
+        public int getAttempts() { return attempts; }
+        public Instant getCreatedAt() { return createdAt; }
+        public Instant getStartedAt() { return startedAt; }
+        public Instant getFinishedAt() { return finishedAt; }
+        // the generated TASK_ORDER document, once COMPLETED
+        public Long getDocumentId() { return documentId; }
+        public String getError() { return error; }
+        public boolean isFinished() { return status == JobStatus.COMPLETED || status == JobStatus.FAILED; }
+    }
+}
@@ -1,8 +1,8 @@
 package com.justresults.hirepay.dto;
 
+import com.justresults.hirepay.storage.StoredContent;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
-import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
 public class UmbrellaAgreementDTOs {
@@ -96,19 +96,23 @@ public class UmbrellaAgreementDTOs {
     }
 
     public static class DocumentDownloadResponse {
-        private final Resource resource;
+        private final StoredContent content;
         private final String filename;
         private final String contentType;
+        private final String sha256;
 
-        public DocumentDownloadResponse(Resource resource, String filename, String contentType) {
-            this.resource = resource;
+        public DocumentDownloadResponse(StoredContent content, String filename, String contentType, String sha256) {
+            this.content = content;
             this.filename = filename;
             this.contentType = contentType;
+            this.sha256 = sha256;
         }
 
-        public Resource resource() { return resource; }
+        public StoredContent content() { return content; }
         public String filename() { return filename; }
         public String contentType() { return contentType; }
+        // null for documents stored before hashes were recorded
+        public String sha256() { return sha256; }
     }
 
     public static class UmbrellaAgreementResponse {
@@ -127,6 +131,7 @@ public class UmbrellaAgreementDTOs {
         private String documentName;
         private String documentType;
         private String notes;
+        private String thumbnailUrl;
 
         public UmbrellaAgreementResponse(String documentId, String status, String frontOfficeUserEmail, 
                                        String frontOfficeUserName, String sentBy, String sentAt, 
@@ -166,5 +171,8 @@ public class UmbrellaAgreementDTOs {
         public String getDocumentName() { return documentName; }
         public String getDocumentType() { return documentType; }
         public String getNotes() { return notes; }
+        // null unless the document is a PDF
+        public String getThumbnailUrl() { return thumbnailUrl; }
+        public void setThumbnailUrl(String thumbnailUrl) { this.thumbnailUrl = thumbnailUrl; }
     }
 }
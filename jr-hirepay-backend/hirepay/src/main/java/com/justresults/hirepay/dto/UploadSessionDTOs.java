@@ -0,0 +1,76 @@
+package com.justresults.hirepay.dto;
+
+import com.justresults.hirepay.enumeration.DocReference;
+import com.justresults.hirepay.enumeration.UploadTarget;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+public class UploadSessionDTOs {
+
+    public static class CreateUploadSessionRequest {
+        @NotNull
+        private UploadTarget target;
+        private String procedureUuid;      // required for RECEIVE_DOCUMENT
+        @NotNull
+        private DocReference documentType;
+        @NotBlank
+        private String filename;
+        private String contentType;
+        @Positive
+        private long totalSize;
+        private String uploadedBy;         // RECEIVE_DOCUMENT; SUBMIT_WORK uses the caller's token
+        private String notes;
+
+        public UploadTarget getTarget() { return target; }
+        public void setTarget(UploadTarget target) { this.target = target; }
+        public String getProcedureUuid() { return procedureUuid; }
+        public void setProcedureUuid(String procedureUuid) { this.procedureUuid = procedureUuid; }
+        public DocReference getDocumentType() { return documentType; }
+        public void setDocumentType(DocReference documentType) { this.documentType = documentType; }
+        public String getFilename() { return filename; }
+        public void setFilename(String filename) { this.filename = filename; }
+        public String getContentType() { return contentType; }
+        public void setContentType(String contentType) { this.contentType = contentType; }
+        public long getTotalSize() { return totalSize; }
+        public void setTotalSize(long totalSize) { this.totalSize = totalSize; }
+        public String getUploadedBy() { return uploadedBy; }
+        public void setUploadedBy(String uploadedBy) { this.uploadedBy = uploadedBy; }
+        public String getNotes() { return notes; }
+        public void setNotes(String notes) { this.notes = notes; }
+    }
+
+    public static class UploadSessionResponse {
+        private String sessionId;
+        private UploadTarget target;
+        private DocReference documentType;
+        private String filename;
+        private long totalSize;
+        private long receivedBytes;
+        private boolean complete;
+        private String documentId;
+
+        public UploadSessionResponse(String sessionId, UploadTarget target, DocReference documentType, String filename,
+                                     long totalSize, long receivedBytes, boolean complete, String documentId) {
+            this.sessionId = sessionId;
+            this.target = target;
+            this.documentType = documentType;
+            this.filename = filename;
+            this.totalSize = totalSize;
+            this.receivedBytes = receivedBytes;
+            this.complete = complete;
+            this.documentId = documentId;
+        }
+
+        public String getSessionId() { return sessionId; }
+        public UploadTarget getTarget() { return target; }
+        public DocReference getDocumentType() { return documentType; }
+        public String getFilename() { return filename; }
+        public long getTotalSize() { return totalSize; }
+        // offset the next chunk must start at
+        public long getReceivedBytes() { return receivedBytes; }
+        public boolean isComplete() { return complete; }
+        // set once the upload has been finalized into a ProcedureDocument
+        public String getDocumentId() { return documentId; }
+    }
+}
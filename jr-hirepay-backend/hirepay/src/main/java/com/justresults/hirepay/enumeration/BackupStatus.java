@@ -0,0 +1,10 @@
+package com.justresults.hirepay.enumeration;
+
+/**
+ * Outcome of a backup run. Only COMPLETED runs count as a base for later incremental ones.
+ */
+public enum BackupStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
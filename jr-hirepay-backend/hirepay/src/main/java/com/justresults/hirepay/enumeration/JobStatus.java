@@ -0,0 +1,12 @@
+package com.justresults.hirepay.enumeration;
+
+/**
+ * Lifecycle of a queued background job. QUEUED jobs are picked up by a worker; a RUNNING job
+ * whose worker died is put back to QUEUED once it has gone stale.
+ */
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,9 @@
+package com.justresults.hirepay.enumeration;
+
+/**
+ * Which existing document flow a finished resumable upload is handed to.
+ */
+public enum UploadTarget {
+    RECEIVE_DOCUMENT,   // DocumentWorkflowService.receiveDocument (consultant/client upload for a procedure)
+    SUBMIT_WORK         // UmbrellaAgreementService.submitWork (invoice/deliverables from front office)
+}
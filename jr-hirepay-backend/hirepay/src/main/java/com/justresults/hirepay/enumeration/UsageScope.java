@@ -0,0 +1,9 @@
+package com.justresults.hirepay.enumeration;
+
+/**
+ * What a storage_usage row counts documents against.
+ */
+public enum UsageScope {
+    USER,       // owner is the document's actorEmail
+    PROCEDURE   // owner is the procedure uuid
+}
@@ -0,0 +1,17 @@
+package com.justresults.hirepay.repository;
+
+import com.justresults.hirepay.domain.BackupObject;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface BackupObjectRepository extends JpaRepository<BackupObject, Long> {
+
+    // Copies of the key in completed archives, oldest first
+    @Query("SELECT o FROM BackupObject o WHERE o.objectKey = :key AND o.backupRunId IN " +
+           "(SELECT r.id FROM BackupRun r WHERE r.status = com.justresults.hirepay.enumeration.BackupStatus.COMPLETED) " +
+           "ORDER BY o.id")
+    List<BackupObject> findCompleted(@Param("key") String key);
+}
@@ -0,0 +1,11 @@
+package com.justresults.hirepay.repository;
+
+import com.justresults.hirepay.domain.BackupRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface BackupRunRepository extends JpaRepository<BackupRun, Long> {
+
+    List<BackupRun> findTop20ByOrderByIdDesc();
+}
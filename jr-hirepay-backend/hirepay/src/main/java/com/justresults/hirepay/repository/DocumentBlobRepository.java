@@ -0,0 +1,20 @@
+package com.justresults.hirepay.repository;
+
+import com.justresults.hirepay.domain.DocumentBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface DocumentBlobRepository extends JpaRepository<DocumentBlob, String> {
+
+    // Row lock so reference counting and blob deletion cannot interleave
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM DocumentBlob b WHERE b.sha256 = :sha256")
+    Optional<DocumentBlob> findForUpdate(@Param("sha256") String sha256);
+
+    Optional<DocumentBlob> findByLocation(String location);
+}
@@ -0,0 +1,24 @@
+package com.justresults.hirepay.repository;
+
+import com.justresults.hirepay.domain.DocumentSlot;
+import com.justresults.hirepay.domain.Procedure;
+import com.justresults.hirepay.domain.ProcedureDocument;
+import com.justresults.hirepay.enumeration.DocReference;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface DocumentSlotRepository extends JpaRepository<DocumentSlot, Long> {
+
+    // Row lock so two uploads of the same document type cannot take the same version
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM DocumentSlot s WHERE s.procedure = :procedure AND s.docReference = :docReference")
+    Optional<DocumentSlot> findForUpdate(@Param("procedure") Procedure procedure, @Param("docReference") DocReference docReference);
+
+    @Query("SELECT s.currentDocument FROM DocumentSlot s WHERE s.procedure = :procedure AND s.docReference = :docReference")
+    Optional<ProcedureDocument> findCurrentDocument(@Param("procedure") Procedure procedure, @Param("docReference") DocReference docReference);
+}
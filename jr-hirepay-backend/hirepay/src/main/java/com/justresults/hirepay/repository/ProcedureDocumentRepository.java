@@ -4,6 +4,8 @@ import com.justresults.hirepay.domain.Procedure;
 import com.justresults.hirepay.domain.ProcedureDocument;
 import com.justresults.hirepay.enumeration.DocReference;
 import com.justresults.hirepay.enumeration.DocumentStatus;
+import com.justresults.hirepay.enumeration.ProcedureStatus;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -16,6 +18,8 @@ public interface ProcedureDocumentRepository extends JpaRepository<ProcedureDocu
     
     List<ProcedureDocument> findByProcedureAndDocReferenceOrderByVersionDesc(Procedure procedure, DocReference ref);
     
+    Optional<ProcedureDocument> findFirstByProcedureAndDocReferenceOrderByVersionDesc(Procedure procedure, DocReference ref);
+
     Optional<ProcedureDocument> findByProcedureAndDocReferenceAndVersion(Procedure procedure, DocReference docReference, int version);
     
     @Query("SELECT pd FROM ProcedureDocument pd WHERE pd.actorEmail = :actorEmail AND pd.docReference = :docReference ORDER BY pd.createdAt DESC")
@@ -38,4 +42,29 @@ public interface ProcedureDocumentRepository extends JpaRepository<ProcedureDocu
     
     @Query("SELECT pd FROM ProcedureDocument pd WHERE pd.status IN :statuses ORDER BY pd.createdAt DESC")
     List<ProcedureDocument> findByStatusInOrderByCreatedAtDesc(@Param("statuses") List<DocumentStatus> statuses);
+
+    // Keyset pages of distinct locations after :after, for the storage reconciliation, so no
+    // transaction stays open across the store walk. Sorted bytewise (COLLATE "C"), the order
+    // the merge compares in, not by the database locale.
+    @Query(value = "SELECT location FROM procedure_documents WHERE location LIKE :prefix " +
+                   "AND location COLLATE \"C\" > :after GROUP BY location ORDER BY location COLLATE \"C\" LIMIT :limit",
+           nativeQuery = true)
+    List<String> findLocationsStartingWithAfter(@Param("prefix") String prefix, @Param("after") String after,
+                                                @Param("limit") int limit);
+
+    @Query(value = "SELECT location FROM procedure_documents WHERE location NOT LIKE :prefix " +
+                   "AND location COLLATE \"C\" > :after GROUP BY location ORDER BY location COLLATE \"C\" LIMIT :limit",
+           nativeQuery = true)
+    List<String> findLocationsNotStartingWithAfter(@Param("prefix") String prefix, @Param("after") String after,
+                                                   @Param("limit") int limit);
+
+    // Keyset pages in id order for the integrity scrubber
+    List<ProcedureDocument> findTop200ByIdGreaterThanOrderByIdAsc(Long id);
+
+    boolean existsByLocation(String location);
+
+    boolean existsByLocationStartingWith(String prefix);
+
+    @Query("SELECT DISTINCT pd.procedure.uuid FROM ProcedureDocument pd WHERE pd.procedure.status = :status AND pd.location NOT LIKE :archivedPrefix")
+    List<String> findProcedureUuidsWithLooseDocuments(@Param("status") ProcedureStatus status, @Param("archivedPrefix") String archivedPrefix);
 }
@@ -3,7 +3,11 @@ package com.justresults.hirepay.repository;
 import com.justresults.hirepay.domain.Procedure;
 import com.justresults.hirepay.enumeration.ProductType;
 import com.justresults.hirepay.enumeration.ProcedureStatus;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -11,4 +15,9 @@ import java.util.Optional;
 public interface ProcedureRepository extends JpaRepository<Procedure, Long> {
     Optional<Procedure> findByUuid(String uuid);
     List<Procedure> findByProductAndStatus(ProductType product, ProcedureStatus status);
+
+    // Serializes the creation of a procedure's document slots
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Procedure p WHERE p.id = :id")
+    Optional<Procedure> findForUpdate(@Param("id") Long id);
 }
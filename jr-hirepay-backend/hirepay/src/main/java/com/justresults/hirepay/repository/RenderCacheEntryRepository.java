@@ -0,0 +1,13 @@
+package com.justresults.hirepay.repository;
+
+import com.justresults.hirepay.domain.RenderCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface RenderCacheEntryRepository extends JpaRepository<RenderCacheEntry, Long> {
+
+    Optional<RenderCacheEntry> findByRenderKey(String renderKey);
+
+    long deleteByRenderKeyAndLocation(String renderKey, String location);
+}
@@ -0,0 +1,31 @@
+package com.justresults.hirepay.repository;
+
+import com.justresults.hirepay.domain.ReplicationTask;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface ReplicationTaskRepository extends JpaRepository<ReplicationTask, Long> {
+
+    List<ReplicationTask> findTop200ByNextAttemptAtLessThanEqualOrderByIdAsc(Instant now);
+
+    Optional<ReplicationTask> findFirstByOrderByIdAsc();
+
+    long countByAttemptsGreaterThan(int attempts);
+
+    // Everything queued for the key up to the task just replicated; later rows still need a pass
+    @Modifying
+    @Query("DELETE FROM ReplicationTask t WHERE t.objectKey = :key AND t.id <= :id")
+    int deleteUpTo(@Param("key") String key, @Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE ReplicationTask t SET t.attempts = t.attempts + 1, t.nextAttemptAt = :next, t.lastError = :error " +
+           "WHERE t.objectKey = :key AND t.id <= :id")
+    int postponeUpTo(@Param("key") String key, @Param("id") Long id,
+                     @Param("next") Instant next, @Param("error") String error);
+}
@@ -0,0 +1,31 @@
+package com.justresults.hirepay.repository;
+
+import com.justresults.hirepay.domain.StorageUsage;
+import com.justresults.hirepay.enumeration.UsageScope;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface StorageUsageRepository extends JpaRepository<StorageUsage, Long> {
+
+    Optional<StorageUsage> findByScopeAndOwner(UsageScope scope, String owner);
+
+    List<StorageUsage> findByOwner(String owner);
+
+    List<StorageUsage> findTop20ByScopeOrderByBytesDesc(UsageScope scope);
+
+    // Adds to the totals only if they stay within the limits (negative = unlimited); 0 when over quota or no row yet
+    @Modifying
+    @Query("UPDATE StorageUsage u SET u.bytes = u.bytes + :bytes, u.files = u.files + :files, u.updatedAt = :now " +
+           "WHERE u.scope = :scope AND u.owner = :owner " +
+           "AND (:maxBytes < 0 OR u.bytes + :bytes <= :maxBytes) AND (:maxFiles < 0 OR u.files + :files <= :maxFiles)")
+    int addWithinLimits(@Param("scope") UsageScope scope, @Param("owner") String owner,
+                        @Param("bytes") long bytes, @Param("files") long files,
+                        @Param("maxBytes") long maxBytes, @Param("maxFiles") long maxFiles,
+                        @Param("now") Instant now);
+}
@@ -0,0 +1,63 @@
+package com.justresults.hirepay.repository;
+
+import com.justresults.hirepay.domain.TaskOrderJob;
+import com.justresults.hirepay.enumeration.JobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface TaskOrderJobRepository extends JpaRepository<TaskOrderJob, String> {
+
+    // QUEUED jobs that are due; a job backing off after a failed run waits for its nextAttemptAt
+    @Query("SELECT j FROM TaskOrderJob j WHERE j.status = com.justresults.hirepay.enumeration.JobStatus.QUEUED " +
+           "AND (j.nextAttemptAt IS NULL OR j.nextAttemptAt <= :now) ORDER BY j.createdAt ASC LIMIT 50")
+    List<TaskOrderJob> findDue(@Param("now") Instant now);
+
+    Optional<TaskOrderJob> findFirstByProcedureUuidAndStatusIn(String procedureUuid, Collection<JobStatus> statuses);
+
+    long countByStatus(JobStatus status);
+
+    // 1 if this caller won the job, 0 if another worker or node got there first
+    @Modifying
+    @Query("UPDATE TaskOrderJob j SET j.status = com.justresults.hirepay.enumeration.JobStatus.RUNNING, " +
+           "j.startedAt = :now, j.heartbeatAt = :now, j.attempts = j.attempts + 1 " +
+           "WHERE j.id = :id AND j.status = com.justresults.hirepay.enumeration.JobStatus.QUEUED")
+    int claim(@Param("id") String id, @Param("now") Instant now);
+
+    // Keeps the jobs running on this node from looking stale, however long they take
+    @Modifying
+    @Query("UPDATE TaskOrderJob j SET j.heartbeatAt = :now " +
+           "WHERE j.id IN :ids AND j.status = com.justresults.hirepay.enumeration.JobStatus.RUNNING")
+    int heartbeat(@Param("ids") Collection<String> ids, @Param("now") Instant now);
+
+    // Jobs whose worker went away mid-run, e.g. with a node that was restarted: no heartbeat since the cutoff
+    @Modifying
+    @Query("UPDATE TaskOrderJob j SET j.status = com.justresults.hirepay.enumeration.JobStatus.QUEUED " +
+           "WHERE j.status = com.justresults.hirepay.enumeration.JobStatus.RUNNING " +
+           "AND COALESCE(j.heartbeatAt, j.startedAt) < :cutoff")
+    int requeueStale(@Param("cutoff") Instant cutoff);
+
+    // Results are written only by the run that still holds the job: 0 once it was requeued or
+    // claimed again after looking stale, so a late worker does not overwrite the newer run
+    @Modifying
+    @Query("UPDATE TaskOrderJob j SET j.status = com.justresults.hirepay.enumeration.JobStatus.QUEUED, " +
+           "j.nextAttemptAt = :next, j.error = :error " +
+           "WHERE j.id = :id AND j.attempts = :attempts " +
+           "AND j.status = com.justresults.hirepay.enumeration.JobStatus.RUNNING")
+    int requeueForRetry(@Param("id") String id, @Param("attempts") int attempts,
+                        @Param("next") Instant next, @Param("error") String error);
+
+    @Modifying
+    @Query("UPDATE TaskOrderJob j SET j.status = :status, j.finishedAt = :now, j.documentId = :documentId, " +
+           "j.error = :error " +
+           "WHERE j.id = :id AND j.attempts = :attempts " +
+           "AND j.status = com.justresults.hirepay.enumeration.JobStatus.RUNNING")
+    int finish(@Param("id") String id, @Param("attempts") int attempts, @Param("status") JobStatus status,
+               @Param("now") Instant now, @Param("documentId") Long documentId, @Param("error") String error);
+}
@@ -0,0 +1,108 @@
+package com.justresults.hirepay.security;
+
+import com.justresults.hirepay.dto.DocumentWorkflowDTOs.DownloadGrant;
+import com.justresults.hirepay.util.InvalidSignatureException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Issues and checks self-contained download tokens: the grant is encoded in the token and
+ * authenticated with HMAC-SHA256, so serving a download needs neither the database nor a JWT.
+ * Token layout is base64url(payload) "." base64url(mac), the payload being newline-separated
+ * fields behind a version tag.
+ * <p>
+ * The key is a secret of its own, never the JWT secret: anyone holding the key can mint a
+ * link to any stored location, so startup fails until one is configured.
+ */
+@Service
+public class DownloadUrlSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String VERSION = "v1";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final Duration maxExpiry;
+
+    public DownloadUrlSigner(@Value("${security.download-url.secret:}") String secret,
+                             @Value("${security.jwt.secret:}") String jwtSecret,
+                             @Value("${security.download-url.max-expiry-minutes:1440}") long maxExpiryMinutes) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("security.download-url.secret (DOWNLOAD_URL_SECRET) must be set");
+        }
+        if (secret.equals(jwtSecret)) {
+            throw new IllegalStateException("security.download-url.secret must differ from security.jwt.secret");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.maxExpiry = Duration.ofMinutes(maxExpiryMinutes);
+    }
+
+    /**
+     * Longest lifetime a URL may be issued for.
+     */
+    public Duration getMaxExpiry() {
+        return maxExpiry;
+    }
+
+    public String sign(DownloadGrant grant) {
+        String payload = String.join("\n",
+                VERSION,
+                String.valueOf(grant.getDocumentId()),
+                String.valueOf(grant.getExpiresAt().getEpochSecond()),
+                grant.getLocation(),
+                grant.getSha256() != null ? grant.getSha256() : "",
+                grant.getContentType(),
+                grant.getFilename());
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        return ENCODER.encodeToString(bytes) + "." + ENCODER.encodeToString(mac(bytes));
+    }
+
+    /**
+     * The grant carried by a token, provided its signature checks out and it has not expired.
+     */
+    public DownloadGrant verify(String token) {
+        int dot = token.indexOf('.');
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(token.substring(0, Math.max(dot, 0)));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidSignatureException("Malformed download link");
+        }
+        if (dot < 0 || !MessageDigest.isEqual(mac(payload), signature)) {
+            throw new InvalidSignatureException("Invalid download link");
+        }
+
+        String[] fields = new String(payload, StandardCharsets.UTF_8).split("\n", -1);
+        if (fields.length != 7 || !VERSION.equals(fields[0])) {
+            throw new InvalidSignatureException("Unsupported download link");
+        }
+        Instant expiresAt = Instant.ofEpochSecond(Long.parseLong(fields[2]));
+        if (Instant.now().isAfter(expiresAt)) {
+            throw new InvalidSignatureException("Download link has expired");
+        }
+        return new DownloadGrant(Long.valueOf(fields[1]), fields[3], fields[6], fields[5],
+                fields[4].isEmpty() ? null : fields[4], expiresAt);
+    }
+
+    private byte[] mac(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 not available", e);
+        }
+    }
+}
@@ -6,6 +6,9 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.info.InfoEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -41,6 +44,9 @@ public class SecurityConfig {
                 org.springframework.security.config.http.SessionCreationPolicy.STATELESS));
 
         http.authorizeHttpRequests(auth -> auth
+                // probes need health and info; the other endpoints expose data and trigger storage-wide work
+                .requestMatchers(EndpointRequest.to(HealthEndpoint.class, InfoEndpoint.class)).permitAll()
+                .requestMatchers(EndpointRequest.toAnyEndpoint()).hasRole("ADMIN")
                 // Temporarily allow all requests for testing
                 .anyRequest().permitAll()
         );
@@ -69,6 +75,12 @@ public class SecurityConfig {
             this.jwt = jwt; 
         }
 
+        // signed download links carry their own authorization
+        @Override
+        protected boolean shouldNotFilter(HttpServletRequest req) {
+            return req.getRequestURI().startsWith(req.getContextPath() + "/api/downloads/");
+        }
+
         @Override
         protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
                 throws IOException, ServletException {
@@ -0,0 +1,47 @@
+package com.justresults.hirepay.storage;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket over bytes, shared by every thread of a background job so that together they
+ * stay under one read rate. Callers take permits after each read; a burst of up to one second
+ * of budget passes without waiting.
+ */
+public class ByteRateLimiter {
+
+    private final long bytesPerSecond;
+    private double available;
+    private long refilledAt = System.nanoTime();
+
+    public ByteRateLimiter(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("bytesPerSecond must be positive");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.available = bytesPerSecond;
+    }
+
+    /**
+     * Account for bytes just read, sleeping until the budget allows them.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            available = Math.min(bytesPerSecond, available + (now - refilledAt) * bytesPerSecond / 1e9);
+            refilledAt = now;
+            available -= bytes;
+            // a deficit is slept off by this caller; later callers queue behind it
+            waitNanos = available < 0 ? (long) (-available * 1e9 / bytesPerSecond) : 0;
+        }
+        if (waitNanos > 0) {
+            long deadline = System.nanoTime() + waitNanos;
+            for (long left = waitNanos; left > 0; left = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(left);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.justresults.hirepay.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The object stored for a document kept as chunks: the key, hash and length of each chunk
+ * in file order. Layout: "HPCDC001", count, then per chunk writeUTF(key), writeUTF(sha256),
+ * length. Reads of any range open only the chunks that overlap it.
+ */
+public class ChunkRecipe {
+
+    static final byte[] MAGIC = "HPCDC001".getBytes(StandardCharsets.US_ASCII);
+
+    public record Entry(String key, String sha256, int length) { }
+
+    /** Opens a byte range of one chunk. */
+    public interface ChunkOpener {
+        InputStream open(String key, long offset, long length) throws IOException;
+    }
+
+    private final List<Entry> entries;
+    // offsets[i] is where entry i starts; offsets[count] is the total size
+    private final long[] offsets;
+
+    public ChunkRecipe(List<Entry> entries) {
+        this.entries = List.copyOf(entries);
+        this.offsets = new long[entries.size() + 1];
+        for (int i = 0; i < entries.size(); i++) {
+            offsets[i + 1] = offsets[i] + entries.get(i).length();
+        }
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public long getSize() {
+        return offsets[entries.size()];
+    }
+
+    public byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entries.size() * 120);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(MAGIC);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.key());
+                out.writeUTF(entry.sha256());
+                out.writeInt(entry.length());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    public static ChunkRecipe read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        byte[] magic = in.readNBytes(MAGIC.length);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a chunk recipe");
+        }
+        int count = in.readInt();
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new Entry(in.readUTF(), in.readUTF(), in.readInt()));
+        }
+        return new ChunkRecipe(entries);
+    }
+
+    /**
+     * Stream of the document bytes from offset, opening each chunk only when reading reaches it.
+     */
+    public InputStream open(ChunkOpener opener, long offset, long length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > getSize()) {
+            throw new IOException("Range " + offset + "+" + length + " outside document of " + getSize() + " bytes");
+        }
+        int first = Arrays.binarySearch(offsets, offset);
+        // an offset inside a chunk gives the insertion point after its start
+        int index = first >= 0 ? first : -first - 2;
+        return new InputStream() {
+            private int next = index;
+            private long position = offset;
+            private long remaining = length;
+            private InputStream current = InputStream.nullInputStream();
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                while (remaining > 0) {
+                    int n = current.read(b, off, (int) Math.min(len, remaining));
+                    if (n > 0) {
+                        position += n;
+                        remaining -= n;
+                        return n;
+                    }
+                    current.close();
+                    if (next >= entries.size()) {
+                        throw new IOException("Chunk data ends before the recipe does");
+                    }
+                    long within = position - offsets[next];
+                    long take = Math.min(entries.get(next).length() - within, remaining);
+                    current = opener.open(entries.get(next).key(), within, take);
+                    next++;
+                }
+                return -1;
+            }
+
+            @Override
+            public void close() throws IOException {
+                current.close();
+            }
+        };
+    }
+
+    /**
+     * Chunks ordered by hash, the order their reference counts are locked in, each repeated
+     * as often as it occurs in the document.
+     */
+    public List<Entry> entriesBySha() {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort((a, b) -> a.sha256().compareTo(b.sha256()));
+        return Collections.unmodifiableList(sorted);
+    }
+}
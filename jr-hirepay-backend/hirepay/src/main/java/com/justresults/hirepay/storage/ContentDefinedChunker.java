@@ -0,0 +1,91 @@
+package com.justresults.hirepay.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Splits a file into content-defined chunks with a gear rolling hash (as in FastCDC): a cut
+ * is made where the hash of the last 64 bytes matches a mask, so an edit only changes the
+ * chunks around it and the rest of the file splits exactly as before. Chunk sizes stay
+ * between {@code minSize} and {@code maxSize}, averaging about {@code minSize + avgSize}.
+ */
+public class ContentDefinedChunker {
+
+    public record Chunk(long offset, int length, String sha256) { }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // fixed seed: chunk boundaries must not change between releases or nothing would match
+    private static final long[] GEAR = new long[256];
+    static {
+        Random random = new Random(0x48504344433031L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minSize;
+    private final int maxSize;
+    // tests the top bits, which depend on the whole 64-byte window
+    private final long mask;
+
+    public ContentDefinedChunker(int minSize, int avgSize, int maxSize) {
+        if (minSize <= 0 || avgSize <= 0 || maxSize < minSize) {
+            throw new IllegalArgumentException("Invalid chunk sizes " + minSize + "/" + avgSize + "/" + maxSize);
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        int bits = 63 - Long.numberOfLeadingZeros(Integer.highestOneBit(avgSize));
+        this.mask = bits == 0 ? 0 : -1L << (64 - bits);
+    }
+
+    public List<Chunk> split(Path file) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long chunkStart = 0;
+        long position = 0;
+        int chunkLength = 0;
+        long hash = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                int segmentStart = 0;
+                for (int i = 0; i < n; i++) {
+                    hash = (hash << 1) + GEAR[buffer[i] & 0xFF];
+                    chunkLength++;
+                    if (chunkLength >= maxSize || (chunkLength >= minSize && (hash & mask) == 0)) {
+                        digest.update(buffer, segmentStart, i + 1 - segmentStart);
+                        chunks.add(new Chunk(chunkStart, chunkLength, HexFormat.of().formatHex(digest.digest())));
+                        chunkStart = position + i + 1;
+                        segmentStart = i + 1;
+                        chunkLength = 0;
+                        hash = 0;
+                    }
+                }
+                digest.update(buffer, segmentStart, n - segmentStart);
+                position += n;
+            }
+        }
+        if (chunkLength > 0) {
+            chunks.add(new Chunk(chunkStart, chunkLength, HexFormat.of().formatHex(digest.digest())));
+        }
+        return chunks;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.justresults.hirepay.storage;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decoded view of a gzip-compressed stored document.
+ */
+public class DecompressingResource extends AbstractResource {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Resource compressed;
+
+    public DecompressingResource(Resource compressed) {
+        this.compressed = compressed;
+    }
+
+    @Override
+    public String getDescription() {
+        return "decompressed " + compressed.getDescription();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new GZIPInputStream(compressed.getInputStream(), BUFFER_SIZE);
+    }
+
+    @Override
+    public boolean exists() {
+        return compressed.exists();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return compressed.lastModified();
+    }
+
+    @Override
+    public String getFilename() {
+        String name = compressed.getFilename();
+        return name != null && name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+    }
+}
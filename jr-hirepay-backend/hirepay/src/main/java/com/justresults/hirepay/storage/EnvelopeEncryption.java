@@ -0,0 +1,271 @@
+package com.justresults.hirepay.storage;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Envelope encryption of stored objects with AES-256-GCM. Every object gets its own data key,
+ * wrapped with the master key and kept in the header; the document follows in fixed-size
+ * chunks, each sealed separately, so any byte range can be decrypted by reading only the
+ * chunks it covers and memory use is one chunk whatever the file size.
+ * <p>
+ * Layout: magic, chunk size, plaintext size, wrap nonce, wrapped data key, then the chunks,
+ * each ciphertext followed by its 16-byte tag. A chunk's nonce is its index, which is safe
+ * because no data key encrypts more than one object. The header fields are authenticated
+ * when the data key is unwrapped, so truncating or resizing an object fails to decrypt.
+ */
+public class EnvelopeEncryption {
+
+    private static final byte[] MAGIC = "HPAES001".getBytes(StandardCharsets.US_ASCII);
+    private static final int KEY_LENGTH = 32;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final int HEADER_FIELDS_LENGTH = MAGIC.length + Integer.BYTES + Long.BYTES;
+    private static final int HEADER_LENGTH = HEADER_FIELDS_LENGTH + NONCE_LENGTH + KEY_LENGTH + TAG_LENGTH;
+
+    private final SecretKey masterKey;
+    private final int chunkSize;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param secret master secret; the key-encryption key is derived from it, so any length works
+     * @param chunkSize plaintext bytes per sealed chunk for new objects
+     */
+    public EnvelopeEncryption(String secret, int chunkSize) {
+        this.masterKey = new SecretKeySpec(derive(secret), "AES");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Encrypt a file into target, one chunk at a time.
+     */
+    public void encrypt(Path source, Path target) throws IOException {
+        long size = Files.size(source);
+        byte[] dataKey = new byte[KEY_LENGTH];
+        random.nextBytes(dataKey);
+        SecretKey key = new SecretKeySpec(dataKey, "AES");
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = Files.newOutputStream(target)) {
+            out.write(header(dataKey, size));
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            byte[] plain = new byte[chunkSize];
+            byte[] sealed = new byte[chunkSize + TAG_LENGTH];
+            long index = 0;
+            for (long remaining = size; remaining > 0; remaining -= chunkSize, index++) {
+                int length = (int) Math.min(chunkSize, remaining);
+                if (in.readNBytes(plain, 0, length) < length) {
+                    throw new IOException("Document changed while it was being encrypted");
+                }
+                cipher.init(Cipher.ENCRYPT_MODE, key, chunkNonce(index));
+                int n = cipher.doFinal(plain, 0, length, sealed, 0);
+                out.write(sealed, 0, n);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM not available", e);
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    /**
+     * Plaintext view of an encrypted object. Only the header is read here; ranges are
+     * decrypted as they are streamed.
+     */
+    public StoredContent decrypt(StoredContent stored) throws IOException {
+        if (stored.getSize() < HEADER_LENGTH) {
+            throw new IOException("Truncated encrypted document");
+        }
+        byte[] header;
+        try (InputStream in = stored.open(0, HEADER_LENGTH)) {
+            header = in.readNBytes(HEADER_LENGTH);
+        }
+        DataInputStream fields = new DataInputStream(new ByteArrayInputStream(header));
+        byte[] magic = new byte[MAGIC.length];
+        fields.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not an encrypted document");
+        }
+        int objectChunkSize = fields.readInt();
+        long size = fields.readLong();
+        if (objectChunkSize <= 0 || size < 0) {
+            throw new IOException("Corrupt encrypted document header");
+        }
+        SecretKey key = unwrap(header);
+        long chunks = (size + objectChunkSize - 1) / objectChunkSize;
+        if (stored.getSize() != HEADER_LENGTH + size + chunks * TAG_LENGTH) {
+            throw new IOException("Truncated encrypted document");
+        }
+        return new StoredContent() {
+            @Override public long getSize() { return size; }
+            @Override public Instant getLastModified() { return stored.getLastModified(); }
+            @Override public InputStream open(long offset, long length) throws IOException {
+                if (length <= 0) {
+                    return InputStream.nullInputStream();
+                }
+                long first = offset / objectChunkSize;
+                long last = Math.min(chunks - 1, (offset + length - 1) / objectChunkSize);
+                long sealedChunk = objectChunkSize + TAG_LENGTH;
+                long start = HEADER_LENGTH + first * sealedChunk;
+                long end = Math.min(stored.getSize(), HEADER_LENGTH + (last + 1) * sealedChunk);
+                InputStream sealed = stored.open(start, end - start);
+                return new RangeInputStream(new DecryptingInputStream(sealed, key, objectChunkSize, size, first,
+                        (int) (offset - first * objectChunkSize)), length);
+            }
+        };
+    }
+
+    private byte[] header(byte[] dataKey, long size) throws GeneralSecurityException, IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(HEADER_LENGTH);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.write(MAGIC);
+        out.writeInt(chunkSize);
+        out.writeLong(size);
+        byte[] fields = buffer.toByteArray();
+
+        byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        Cipher wrap = Cipher.getInstance("AES/GCM/NoPadding");
+        wrap.init(Cipher.ENCRYPT_MODE, masterKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        wrap.updateAAD(fields);
+        out.write(nonce);
+        out.write(wrap.doFinal(dataKey));
+        return buffer.toByteArray();
+    }
+
+    private SecretKey unwrap(byte[] header) throws IOException {
+        try {
+            Cipher unwrap = Cipher.getInstance("AES/GCM/NoPadding");
+            unwrap.init(Cipher.DECRYPT_MODE, masterKey,
+                    new GCMParameterSpec(TAG_LENGTH * 8, header, HEADER_FIELDS_LENGTH, NONCE_LENGTH));
+            unwrap.updateAAD(header, 0, HEADER_FIELDS_LENGTH);
+            byte[] dataKey = unwrap.doFinal(header, HEADER_FIELDS_LENGTH + NONCE_LENGTH, KEY_LENGTH + TAG_LENGTH);
+            return new SecretKeySpec(dataKey, "AES");
+        } catch (AEADBadTagException e) {
+            throw new IOException("Encrypted document header failed authentication (wrong master key?)", e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM not available", e);
+        }
+    }
+
+    private static GCMParameterSpec chunkNonce(long index) {
+        byte[] nonce = ByteBuffer.allocate(NONCE_LENGTH).putLong(NONCE_LENGTH - Long.BYTES, index).array();
+        return new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+    }
+
+    // HMAC-SHA256 as a KDF, so the configured secret can be a passphrase of any length
+    private static byte[] derive(String secret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac.doFinal("hirepay-storage-kek".getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    /**
+     * Decrypts consecutive sealed chunks, starting part-way into the first one.
+     */
+    private static class DecryptingInputStream extends InputStream {
+        private final InputStream sealed;
+        private final SecretKey key;
+        private final int chunkSize;
+        private final long size;
+        private final Cipher cipher;
+        private final byte[] sealedChunk;
+        private final byte[] plain;
+        private long index;
+        private int position;
+        private int limit;
+
+        DecryptingInputStream(InputStream sealed, SecretKey key, int chunkSize, long size, long firstChunk,
+                              int skip) throws IOException {
+            this.sealed = sealed;
+            this.key = key;
+            this.chunkSize = chunkSize;
+            this.size = size;
+            this.index = firstChunk;
+            this.sealedChunk = new byte[chunkSize + TAG_LENGTH];
+            this.plain = new byte[chunkSize];
+            try {
+                this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("AES-GCM not available", e);
+            }
+            if (nextChunk()) {
+                position = Math.min(skip, limit);
+            }
+        }
+
+        private boolean nextChunk() throws IOException {
+            long start = index * chunkSize;
+            if (start >= size) {
+                limit = position = 0;
+                return false;
+            }
+            int length = (int) Math.min(chunkSize, size - start);
+            int n = sealed.readNBytes(sealedChunk, 0, length + TAG_LENGTH);
+            if (n < length + TAG_LENGTH) {
+                throw new IOException("Truncated encrypted document");
+            }
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, chunkNonce(index));
+                limit = cipher.doFinal(sealedChunk, 0, n, plain, 0);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Encrypted document chunk " + index + " failed authentication", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not decrypt document chunk " + index, e);
+            }
+            position = 0;
+            index++;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !nextChunk()) {
+                return -1;
+            }
+            return plain[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit && !nextChunk()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(plain, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Arrays.fill(plain, (byte) 0);
+            sealed.close();
+        }
+    }
+}
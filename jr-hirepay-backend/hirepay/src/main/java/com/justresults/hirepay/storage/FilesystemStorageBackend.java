@@ -0,0 +1,175 @@
+package com.justresults.hirepay.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Stores each key as a file below a local (or network-mounted) root directory.
+ * Entries whose name starts with '.' (such as the upload spool) are not part of the key space.
+ */
+public class FilesystemStorageBackend implements StorageBackend {
+
+    private final Path root;
+
+    public FilesystemStorageBackend(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        Files.createDirectories(this.root);
+    }
+
+    public Path getRoot() { return root; }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        Path dest = resolve(key);
+        Files.createDirectories(dest.getParent());
+        try {
+            Files.move(source, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // source is on another file store
+            Files.move(source, dest, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        Path dest = resolve(key);
+        Files.createDirectories(dest.getParent());
+        Path tmp = Files.createTempFile(dest.getParent(), ".put-", ".part");
+        try {
+            Files.copy(content, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public InputStream open(String key, long offset, long length) throws IOException {
+        SeekableByteChannel channel = Files.newByteChannel(resolve(key), StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new RangeInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public Optional<StorageObjectInfo> stat(String key) throws IOException {
+        Path file = resolve(key);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        return Optional.of(new StorageObjectInfo(attrs.size(), attrs.lastModifiedTime().toInstant()));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public Stream<String> list(String prefix) throws IOException {
+        SortedWalk walk = new SortedWalk(prefix);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(walk,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        Path file = resolve(key);
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    private Path resolve(String key) {
+        Path file = root.resolve(key).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+        return file;
+    }
+
+    /**
+     * Depth-first walk that only ever holds one directory listing per level. Siblings are
+     * ordered with a trailing '/' on directory names, which makes the emitted keys come out in
+     * plain lexicographic order.
+     */
+    private class SortedWalk implements Iterator<String> {
+
+        private final String prefix;
+        private final Deque<Iterator<String>> stack = new ArrayDeque<>();
+        private String next;
+
+        SortedWalk(String prefix) throws IOException {
+            this.prefix = prefix == null ? "" : prefix;
+            stack.push(children(""));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !stack.isEmpty()) {
+                Iterator<String> level = stack.peek();
+                if (!level.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                String entry = level.next();
+                if (entry.endsWith("/")) {
+                    try {
+                        stack.push(children(entry));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                } else if (entry.startsWith(prefix)) {
+                    next = entry;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            String key = next;
+            next = null;
+            return key;
+        }
+
+        private Iterator<String> children(String dirKey) throws IOException {
+            Path dir = dirKey.isEmpty() ? root : root.resolve(dirKey);
+            List<String> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path child : stream) {
+                    String name = child.getFileName().toString();
+                    if (name.startsWith(".")) continue;
+                    String key = dirKey + name;
+                    if (Files.isDirectory(child)) {
+                        key += "/";
+                        // skip subtrees that cannot contain the prefix
+                        if (!key.startsWith(prefix) && !prefix.startsWith(key)) continue;
+                    }
+                    entries.add(key);
+                }
+            } catch (NoSuchFileException e) {
+                return Collections.emptyIterator();
+            }
+            Collections.sort(entries);
+            return entries.iterator();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.justresults.hirepay.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Heap cache of small, frequently read objects, bounded by total bytes and evicted least
+ * recently used first. Stored keys never change content (they are hashes or UUIDs written
+ * once), so entries need no validation, only eviction when the object is released.
+ *
+ * <p>A key is admitted on its second miss within a window of recently missed keys, so one-off
+ * reads (exports, archiving, previews) do not push out documents that are downloaded all the
+ * time. Entries are softly referenced and give way to heap pressure before the bound is hit.
+ */
+public class HotBlobCache {
+
+    private static final int DOORKEEPER_SIZE = 4096;
+
+    private final long maxBytes;
+    private final long maxEntrySize;
+    private final ReferenceQueue<byte[]> collected = new ReferenceQueue<>();
+    private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // keys missed recently; a second miss while still listed gets the object cached
+    private final Map<String, Boolean> doorkeeper = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > DOORKEEPER_SIZE;
+        }
+    };
+    private long currentBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter bytesServed;
+
+    public HotBlobCache(long maxBytes, long maxEntrySize, MeterRegistry meterRegistry) {
+        this.maxBytes = maxBytes;
+        this.maxEntrySize = Math.min(maxEntrySize, maxBytes);
+        this.hits = Counter.builder("hirepay.storage.cache.requests")
+                .description("Stored object reads answered from the hot cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("hirepay.storage.cache.requests")
+                .description("Stored object reads that went to the backend")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("hirepay.storage.cache.evictions")
+                .description("Entries dropped for space, heap pressure or release")
+                .register(meterRegistry);
+        this.bytesServed = Counter.builder("hirepay.storage.cache.served")
+                .description("Bytes of cached objects handed out")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("hirepay.storage.cache.size", this, HotBlobCache::currentBytes)
+                .description("Bytes held by the hot cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("hirepay.storage.cache.entries", this, HotBlobCache::entryCount)
+                .description("Objects held by the hot cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The cached object, counting a hit or miss.
+     */
+    public synchronized Optional<StoredContent> get(String key) {
+        expungeCollected();
+        Entry entry = entries.get(key);
+        byte[] bytes = entry != null ? entry.get() : null;
+        if (bytes == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        bytesServed.increment(bytes.length);
+        return Optional.of(content(bytes, entry.lastModified));
+    }
+
+    /**
+     * Whether an object just missed is worth reading into the cache.
+     */
+    public synchronized boolean admit(String key, long size) {
+        if (size > maxEntrySize) {
+            return false;
+        }
+        return doorkeeper.put(key, Boolean.TRUE) != null;
+    }
+
+    /**
+     * Cache an object read in full and return a view of it.
+     */
+    public synchronized StoredContent put(String key, byte[] bytes, Instant lastModified) {
+        expungeCollected();
+        remove(key);
+        doorkeeper.remove(key);
+        entries.put(key, new Entry(key, bytes, lastModified, collected));
+        currentBytes += bytes.length;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            currentBytes -= evicted.size;
+            evictions.increment();
+        }
+        return content(bytes, lastModified);
+    }
+
+    public synchronized void evict(String key) {
+        if (remove(key)) {
+            evictions.increment();
+        }
+    }
+
+    private boolean remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        currentBytes -= entry.size;
+        return true;
+    }
+
+    // drop entries whose bytes the collector reclaimed
+    private void expungeCollected() {
+        Reference<? extends byte[]> ref;
+        while ((ref = collected.poll()) != null) {
+            Entry entry = (Entry) ref;
+            if (entries.get(entry.key) == entry) {
+                entries.remove(entry.key);
+                currentBytes -= entry.size;
+                evictions.increment();
+            }
+        }
+    }
+
+    private synchronized long currentBytes() {
+        return currentBytes;
+    }
+
+    private synchronized int entryCount() {
+        return entries.size();
+    }
+
+    private static StoredContent content(byte[] bytes, Instant lastModified) {
+        return new StoredContent() {
+            @Override public long getSize() { return bytes.length; }
+            @Override public Instant getLastModified() { return lastModified; }
+            @Override public InputStream open(long offset, long length) throws IOException {
+                return new ByteArrayInputStream(bytes, (int) offset, (int) length);
+            }
+        };
+    }
+
+    private static final class Entry extends SoftReference<byte[]> {
+        final String key;
+        final long size;
+        final Instant lastModified;
+
+        Entry(String key, byte[] bytes, Instant lastModified, ReferenceQueue<byte[]> queue) {
+            super(bytes, queue);
+            this.key = key;
+            this.size = bytes.length;
+            this.lastModified = lastModified;
+        }
+    }
+}
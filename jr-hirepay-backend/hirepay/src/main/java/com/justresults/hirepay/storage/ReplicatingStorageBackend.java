@@ -0,0 +1,77 @@
+package com.justresults.hirepay.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Passes every call through to the primary backend and reports each key written or deleted,
+ * so a replication stage can bring a mirror up to date later. The caller pays for the report,
+ * never for a second copy of the bytes.
+ */
+public class ReplicatingStorageBackend implements StorageBackend, AutoCloseable {
+
+    private final StorageBackend primary;
+    private final Consumer<String> changed;
+
+    public ReplicatingStorageBackend(StorageBackend primary, Consumer<String> changed) {
+        this.primary = primary;
+        this.changed = changed;
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        primary.put(key, source);
+        changed.accept(key);
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        primary.put(key, content, length);
+        changed.accept(key);
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return primary.open(key);
+    }
+
+    @Override
+    public InputStream open(String key, long offset, long length) throws IOException {
+        return primary.open(key, offset, length);
+    }
+
+    @Override
+    public Optional<StorageObjectInfo> stat(String key) throws IOException {
+        return primary.stat(key);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        boolean deleted = primary.delete(key);
+        if (deleted) {
+            changed.accept(key);
+        }
+        return deleted;
+    }
+
+    @Override
+    public Stream<String> list(String prefix) throws IOException {
+        return primary.list(prefix);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return primary.localPath(key);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (primary instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
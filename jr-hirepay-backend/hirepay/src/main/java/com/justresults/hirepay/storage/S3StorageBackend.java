@@ -0,0 +1,144 @@
+package com.justresults.hirepay.storage;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Stores keys as objects in an S3-compatible bucket (AWS S3, MinIO, Ceph RGW, ...),
+ * optionally below a key prefix shared with other applications.
+ */
+public class S3StorageBackend implements StorageBackend, AutoCloseable {
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String keyPrefix;
+
+    public S3StorageBackend(S3Client s3, String bucket, String keyPrefix) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.keyPrefix = keyPrefix == null || keyPrefix.isEmpty() || keyPrefix.endsWith("/")
+                ? (keyPrefix == null ? "" : keyPrefix)
+                : keyPrefix + "/";
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        try {
+            s3.putObject(PutObjectRequest.builder()
+                            .bucket(bucket)
+                            .key(objectKey(key))
+                            .contentLength(Files.size(source))
+                            .build(),
+                    RequestBody.fromFile(source));
+        } catch (SdkException e) {
+            throw new IOException("Could not upload " + key, e);
+        }
+        Files.deleteIfExists(source);
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        try {
+            s3.putObject(PutObjectRequest.builder()
+                            .bucket(bucket)
+                            .key(objectKey(key))
+                            .contentLength(length)
+                            .build(),
+                    RequestBody.fromInputStream(content, length));
+        } catch (SdkException e) {
+            throw new IOException("Could not upload " + key, e);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return get(key, GetObjectRequest.builder().bucket(bucket).key(objectKey(key)).build());
+    }
+
+    @Override
+    public InputStream open(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        return get(key, GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(objectKey(key))
+                .range("bytes=" + offset + "-" + (offset + length - 1))
+                .build());
+    }
+
+    private InputStream get(String key, GetObjectRequest request) throws IOException {
+        try {
+            return s3.getObject(request);
+        } catch (NoSuchKeyException e) {
+            throw new FileNotFoundException(key);
+        } catch (SdkException e) {
+            throw new IOException("Could not read " + key, e);
+        }
+    }
+
+    @Override
+    public Optional<StorageObjectInfo> stat(String key) throws IOException {
+        try {
+            HeadObjectResponse head = s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(objectKey(key)).build());
+            return Optional.of(new StorageObjectInfo(head.contentLength(), head.lastModified()));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException("Could not stat " + key, e);
+        } catch (SdkException e) {
+            throw new IOException("Could not stat " + key, e);
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        // S3 deletes are idempotent and do not say whether anything was there
+        boolean existed = exists(key);
+        try {
+            s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(objectKey(key)).build());
+        } catch (SdkException e) {
+            throw new IOException("Could not delete " + key, e);
+        }
+        return existed;
+    }
+
+    @Override
+    public Stream<String> list(String prefix) throws IOException {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucket)
+                .prefix(objectKey(prefix == null ? "" : prefix))
+                .build();
+        try {
+            // ListObjectsV2 pages are returned in ascending key order
+            return s3.listObjectsV2Paginator(request).contents().stream()
+                    .map(S3Object::key)
+                    .map(k -> k.substring(keyPrefix.length()));
+        } catch (SdkException e) {
+            throw new IOException("Could not list " + prefix, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        s3.close();
+    }
+
+    private String objectKey(String key) {
+        return keyPrefix + key;
+    }
+}
@@ -0,0 +1,82 @@
+package com.justresults.hirepay.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Entry table of a segment written by {@link SegmentWriter}, read from the footer with two
+ * small ranged reads so it works the same on every backend.
+ */
+public final class SegmentIndex {
+
+    static final byte[] MAGIC = "HPSEG001".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] INDEX_MAGIC = "HPSEGIDX".getBytes(StandardCharsets.US_ASCII);
+    // index offset + INDEX_MAGIC
+    private static final int FOOTER_SIZE = Long.BYTES + 8;
+
+    public record Entry(String name, long offset, long length) { }
+
+    private final Map<String, Entry> entries;
+
+    private SegmentIndex(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static SegmentIndex read(StorageBackend backend, String key) throws IOException {
+        long size = backend.stat(key).orElseThrow(() -> new IOException("Segment not found: " + key)).getSize();
+        if (size < MAGIC.length + Integer.BYTES + FOOTER_SIZE) {
+            throw new IOException("Truncated segment: " + key);
+        }
+        byte[] footer = readRange(backend, key, size - FOOTER_SIZE, FOOTER_SIZE);
+        ByteBuffer buffer = ByteBuffer.wrap(footer);
+        long indexOffset = buffer.getLong();
+        if (!Arrays.equals(footer, Long.BYTES, footer.length, INDEX_MAGIC, 0, INDEX_MAGIC.length)
+                || indexOffset < MAGIC.length || indexOffset > size - FOOTER_SIZE) {
+            throw new IOException("Corrupt segment footer: " + key);
+        }
+
+        byte[] index = readRange(backend, key, indexOffset, size - FOOTER_SIZE - indexOffset);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(index))) {
+            int count = in.readInt();
+            Map<String, Entry> entries = new HashMap<>(Math.max(16, count * 2));
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong());
+                if (entry.offset() < MAGIC.length || entry.offset() + entry.length() > indexOffset) {
+                    throw new IOException("Corrupt segment index: " + key);
+                }
+                entries.put(entry.name(), entry);
+            }
+            return new SegmentIndex(entries);
+        }
+    }
+
+    public Optional<Entry> find(String name) {
+        return Optional.ofNullable(entries.get(name));
+    }
+
+    public Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    private static byte[] readRange(StorageBackend backend, String key, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Segment index too large: " + key);
+        }
+        try (InputStream in = backend.open(key, offset, length)) {
+            byte[] bytes = in.readNBytes((int) length);
+            if (bytes.length != length) {
+                throw new IOException("Truncated segment: " + key);
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.justresults.hirepay.storage;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read side of archived segments. Indexes are cached per segment (segments are never rewritten,
+ * a repack always gets a new key), and entries in local segments are read through a memory
+ * mapping of just that entry's region.
+ */
+public class SegmentStore {
+
+    private static final int MAX_CACHED_INDEXES = 1024;
+
+    private final StorageBackend backend;
+    private final Map<String, SegmentIndex> indexes = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SegmentIndex> eldest) {
+            return size() > MAX_CACHED_INDEXES;
+        }
+    };
+
+    public SegmentStore(StorageBackend backend) {
+        this.backend = backend;
+    }
+
+    public StoredContent open(String segmentKey, String entryName) throws IOException {
+        SegmentIndex.Entry entry = index(segmentKey).find(entryName)
+                .orElseThrow(() -> new FileNotFoundException("No entry " + entryName + " in segment " + segmentKey));
+        StorageObjectInfo info = backend.stat(segmentKey)
+                .orElseThrow(() -> new FileNotFoundException("Segment not found: " + segmentKey));
+        Optional<Path> local = backend.localPath(segmentKey);
+
+        return new StoredContent() {
+            @Override public long getSize() { return entry.length(); }
+            @Override public Instant getLastModified() { return info.getLastModified(); }
+            @Override public InputStream open(long offset, long length) throws IOException {
+                long start = entry.offset() + offset;
+                if (local.isEmpty()) {
+                    return backend.open(segmentKey, start, length);
+                }
+                try (FileChannel channel = FileChannel.open(local.get(), StandardOpenOption.READ)) {
+                    if (length <= Integer.MAX_VALUE) {
+                        // the mapping stays valid after the channel is closed
+                        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                        return new ByteBufferInputStream(region);
+                    }
+                }
+                // a single mapping is limited to 2GB
+                FileChannel channel = FileChannel.open(local.get(), StandardOpenOption.READ);
+                channel.position(start);
+                return new RangeInputStream(Channels.newInputStream(channel), length);
+            }
+        };
+    }
+
+    private SegmentIndex index(String segmentKey) throws IOException {
+        synchronized (indexes) {
+            SegmentIndex cached = indexes.get(segmentKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        SegmentIndex index = SegmentIndex.read(backend, segmentKey);
+        synchronized (indexes) {
+            indexes.put(segmentKey, index);
+        }
+        return index;
+    }
+
+    /**
+     * Forget a segment that has been deleted.
+     */
+    public void evict(String segmentKey) {
+        synchronized (indexes) {
+            indexes.remove(segmentKey);
+        }
+    }
+}
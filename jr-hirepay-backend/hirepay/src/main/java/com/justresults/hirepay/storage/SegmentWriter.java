@@ -0,0 +1,105 @@
+package com.justresults.hirepay.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs many stored objects into one append-only segment file:
+ * <pre>
+ *   "HPSEG001" | entry bytes ... | index | index offset (8) | "HPSEGIDX"
+ * </pre>
+ * The index lists each entry's name, offset and length and is read back by {@link SegmentIndex}.
+ * Entries are copied byte for byte, so compressed objects stay compressed.
+ */
+public class SegmentWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final List<SegmentIndex.Entry> entries = new ArrayList<>();
+
+    public SegmentWriter(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.CREATE);
+        writeFully(ByteBuffer.wrap(SegmentIndex.MAGIC));
+    }
+
+    /**
+     * Append a local file; on most platforms the copy stays in the kernel.
+     */
+    public void add(String name, Path file) throws IOException {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long offset = channel.position();
+            long length = source.size();
+            long copied = 0;
+            while (copied < length) {
+                long n = source.transferTo(copied, length - copied, channel);
+                if (n <= 0) {
+                    throw new IOException("Short read from " + file);
+                }
+                copied += n;
+            }
+            channel.position(offset + length);
+            entries.add(new SegmentIndex.Entry(name, offset, length));
+        }
+    }
+
+    public void add(String name, InputStream content, long length) throws IOException {
+        long offset = channel.position();
+        ReadableByteChannel source = Channels.newChannel(content);
+        long copied = 0;
+        while (copied < length) {
+            long n = channel.transferFrom(source, offset + copied, length - copied);
+            if (n <= 0) {
+                throw new IOException("Short read for segment entry " + name);
+            }
+            copied += n;
+        }
+        channel.position(offset + length);
+        entries.add(new SegmentIndex.Entry(name, offset, length));
+    }
+
+    /**
+     * Write the index and footer and flush the segment to disk.
+     */
+    public void finish() throws IOException {
+        long indexOffset = channel.position();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(index)) {
+            out.writeInt(entries.size());
+            for (SegmentIndex.Entry entry : entries) {
+                out.writeUTF(entry.name());
+                out.writeLong(entry.offset());
+                out.writeLong(entry.length());
+            }
+            out.writeLong(indexOffset);
+            out.write(SegmentIndex.INDEX_MAGIC);
+        }
+        writeFully(ByteBuffer.wrap(index.toByteArray()));
+        channel.force(true);
+    }
+
+    public List<SegmentIndex.Entry> getEntries() {
+        return List.copyOf(entries);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
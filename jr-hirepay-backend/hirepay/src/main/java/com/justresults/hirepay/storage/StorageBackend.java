@@ -0,0 +1,58 @@
+package com.justresults.hirepay.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Where document bytes physically live. Keys are relative, '/'-separated names such as
+ * {@code <procedureUuid>/<uuid>.pdf}; {@link com.justresults.hirepay.util.DocumentStorageService}
+ * turns them into backend-neutral {@code storage://} locations so any app node can read them.
+ */
+public interface StorageBackend {
+
+    /**
+     * Move a fully written local file into the store under {@code key}. The source file is
+     * consumed: it no longer exists once this returns.
+     */
+    void put(String key, Path source) throws IOException;
+
+    /**
+     * Write {@code length} bytes from {@code content} under {@code key}.
+     */
+    void put(String key, InputStream content, long length) throws IOException;
+
+    InputStream open(String key) throws IOException;
+
+    /**
+     * Open {@code length} bytes starting at {@code offset}.
+     */
+    InputStream open(String key, long offset, long length) throws IOException;
+
+    Optional<StorageObjectInfo> stat(String key) throws IOException;
+
+    default boolean exists(String key) throws IOException {
+        return stat(key).isPresent();
+    }
+
+    /**
+     * @return true if something was deleted
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Lazily list every key under {@code prefix} in ascending lexicographic order, so callers can
+     * merge the listing against other sorted sources without holding it in memory.
+     * The stream must be closed.
+     */
+    Stream<String> list(String prefix) throws IOException;
+
+    /**
+     * The file backing {@code key} when it is on a local disk, for zero-copy serving.
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,17 @@
+package com.justresults.hirepay.storage;
+
+import java.time.Instant;
+
+public final class StorageObjectInfo {
+
+    private final long size;
+    private final Instant lastModified;
+
+    public StorageObjectInfo(long size, Instant lastModified) {
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public long getSize() { return size; }
+    public Instant getLastModified() { return lastModified; }
+}
@@ -0,0 +1,55 @@
+package com.justresults.hirepay.storage;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Spring {@link org.springframework.core.io.Resource} view of a key in a {@link StorageBackend}.
+ */
+public class StorageResource extends AbstractResource {
+
+    private final StorageBackend backend;
+    private final String key;
+
+    public StorageResource(StorageBackend backend, String key) {
+        this.backend = backend;
+        this.key = key;
+    }
+
+    @Override
+    public String getDescription() {
+        return "storage object [" + key + "]";
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return backend.open(key);
+    }
+
+    @Override
+    public boolean exists() {
+        try {
+            return backend.exists(key);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return backend.stat(key).orElseThrow(() -> new FileNotFoundException(key)).getSize();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return backend.stat(key).orElseThrow(() -> new FileNotFoundException(key)).getLastModified().toEpochMilli();
+    }
+
+    @Override
+    public String getFilename() {
+        return key.substring(key.lastIndexOf('/') + 1);
+    }
+}
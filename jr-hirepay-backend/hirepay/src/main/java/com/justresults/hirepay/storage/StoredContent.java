@@ -0,0 +1,48 @@
+package com.justresults.hirepay.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Readable view of one stored document, resolved from its location. Supports reading
+ * an arbitrary byte range so downloads can honour HTTP Range requests.
+ */
+public interface StoredContent {
+
+    long getSize();
+
+    Instant getLastModified();
+
+    /**
+     * Local file holding exactly these bytes, when one exists, so they can be sent with
+     * {@code FileChannel.transferTo}/sendfile instead of being copied through the heap.
+     */
+    default Optional<Path> getLocalFile() {
+        return Optional.empty();
+    }
+
+    InputStream open(long offset, long length) throws IOException;
+
+    /**
+     * Content-Encoding of the stored form when it differs from the document bytes
+     * (e.g. "gzip"), or null when the document is stored as is.
+     */
+    default String getContentEncoding() {
+        return null;
+    }
+
+    /**
+     * The stored form itself, which clients that accept {@link #getContentEncoding()} can be
+     * sent without decoding it first.
+     */
+    default StoredContent encoded() {
+        return this;
+    }
+
+    default InputStream open() throws IOException {
+        return open(0, getSize());
+    }
+}
@@ -0,0 +1,51 @@
+package com.justresults.hirepay.storage;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Spring {@link org.springframework.core.io.Resource} view of a {@link StoredContent}, for
+ * documents that are not an object of their own (e.g. entries of an archive segment).
+ */
+public class StoredContentResource extends AbstractResource {
+
+    private final StoredContent content;
+    private final String filename;
+
+    public StoredContentResource(StoredContent content, String filename) {
+        this.content = content;
+        this.filename = filename;
+    }
+
+    @Override
+    public String getDescription() {
+        return "stored content [" + filename + "]";
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return content.open();
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return content.getSize();
+    }
+
+    @Override
+    public long lastModified() {
+        return content.getLastModified().toEpochMilli();
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+}
@@ -0,0 +1,149 @@
+package com.justresults.hirepay.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streaming writer for POSIX (pax) tar archives. Each entry is written straight through as it
+ * is read, so an archive of any size needs one copy buffer of memory and no scratch space.
+ * Names over 100 bytes and entries of 8GB or more get a pax extended header, which GNU tar,
+ * bsdtar and every tar library understand.
+ */
+public class TarWriter implements Closeable {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int NAME_LENGTH = 100;
+    // largest size that fits the 11 octal digits of the ustar header
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+    private boolean finished;
+
+    public TarWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Add an entry of exactly {@code size} bytes read from {@code content}; fails if the
+     * stream ends early, since the header already promised that many bytes.
+     */
+    public void putEntry(String name, long size, Instant modified, InputStream content) throws IOException {
+        writeHeader(name, size, modified);
+        long remaining = size;
+        while (remaining > 0) {
+            int n = content.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new EOFException(name + " ended " + remaining + " bytes short of its size");
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+        pad(size);
+    }
+
+    public void putEntry(String name, byte[] content, Instant modified) throws IOException {
+        putEntry(name, content.length, modified, new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Write the end-of-archive marker. The underlying stream is left open.
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            out.write(new byte[BLOCK_SIZE * 2]);
+            out.flush();
+            finished = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    private void writeHeader(String name, long size, Instant modified) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        Map<String, String> pax = new LinkedHashMap<>();
+        if (nameBytes.length > NAME_LENGTH) {
+            pax.put("path", name);
+        }
+        if (size > MAX_USTAR_SIZE) {
+            pax.put("size", Long.toString(size));
+        }
+        if (!pax.isEmpty()) {
+            byte[] records = paxRecords(pax);
+            out.write(header("PaxHeaders/" + Math.abs(name.hashCode()), records.length, modified, (byte) 'x'));
+            out.write(records);
+            pad(records.length);
+        }
+        out.write(header(name, size, modified, (byte) '0'));
+    }
+
+    private static byte[] header(String name, long size, Instant modified, byte type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        // the pax header carries the full name; this is what tools without pax support show
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, NAME_LENGTH));
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, Math.min(size, MAX_USTAR_SIZE));
+        octal(header, 136, 12, modified.getEpochSecond());
+        header[156] = type;
+        byte[] magic = "ustar\00000".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(magic, 0, header, 257, magic.length);
+
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        octal(header, 148, 7, checksum);
+        return header;
+    }
+
+    // zero-padded octal digits followed by a NUL
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int width = length - 1;
+        for (int i = 0; i < width; i++) {
+            int digit = i - (width - digits.length());
+            header[offset + i] = (byte) (digit < 0 ? '0' : digits.charAt(digit));
+        }
+        header[offset + width] = 0;
+    }
+
+    // "<length> <key>=<value>\n", where length counts the whole record including itself
+    private static byte[] paxRecords(Map<String, String> records) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> record : records.entrySet()) {
+            int body = (" " + record.getKey() + "=" + record.getValue() + "\n").getBytes(StandardCharsets.UTF_8).length;
+            int length = body + Integer.toString(body).length();
+            if (Integer.toString(length).length() != Integer.toString(body).length()) {
+                length++;
+            }
+            out.writeBytes((length + " " + record.getKey() + "=" + record.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private void pad(long size) throws IOException {
+        int remainder = (int) (size % BLOCK_SIZE);
+        if (remainder != 0) {
+            out.write(new byte[BLOCK_SIZE - remainder]);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.justresults.hirepay.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Detects a document's content type from its leading bytes instead of trusting
+ * the client-supplied header or file extension.
+ */
+public final class ContentTypeSniffer {
+
+    /** Number of leading bytes needed to recognise every signature below. */
+    public static final int HEAD_LENGTH = 16;
+
+    private static final byte[] PDF = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OLE = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+    private static final byte[] ZIP = {0x50, 0x4B, 0x03, 0x04};
+    private static final byte[] PNG = {(byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A};
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] GZIP = {0x1F, (byte) 0x8B};
+
+    private ContentTypeSniffer() { }
+
+    public static String detect(byte[] head, int length, String filename) {
+        if (startsWith(head, length, PDF)) return "application/pdf";
+        if (startsWith(head, length, OLE)) return "application/msword";
+        if (startsWith(head, length, ZIP)) {
+            // DOCX is a zip container; only the extension tells them apart without unpacking
+            return "docx".equalsIgnoreCase(extension(filename))
+                    ? "application/vnd.openxmlformats-officedocument.wordprocessingml.document"
+                    : "application/zip";
+        }
+        if (startsWith(head, length, PNG)) return "image/png";
+        if (startsWith(head, length, JPEG)) return "image/jpeg";
+        if (startsWith(head, length, GZIP)) return "application/gzip";
+        if (length > 0 && isText(head, length)) {
+            String ext = extension(filename);
+            if ("html".equalsIgnoreCase(ext) || "htm".equalsIgnoreCase(ext)) return "text/html";
+            return "text/plain";
+        }
+        return "application/octet-stream";
+    }
+
+    private static boolean startsWith(byte[] head, int length, byte[] signature) {
+        if (length < signature.length) return false;
+        for (int i = 0; i < signature.length; i++) {
+            if (head[i] != signature[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isText(byte[] head, int length) {
+        for (int i = 0; i < length; i++) {
+            int b = head[i] & 0xFF;
+            // allow tab/newline/carriage return and anything printable, including UTF-8 lead/continuation bytes
+            if (b < 0x09 || (b > 0x0D && b < 0x20) || b == 0x7F) return false;
+        }
+        return true;
+    }
+
+    private static String extension(String name) {
+        if (name == null) return "";
+        int i = name.lastIndexOf('.');
+        return i > 0 ? name.substring(i + 1) : "";
+    }
+}
@@ -0,0 +1,141 @@
+package com.justresults.hirepay.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Write side of the ingestion pipeline. Bytes go straight to a spool file while the
+ * size, SHA-256 and leading signature bytes are captured in the same pass, so no
+ * caller ever needs the whole document on the heap. {@link #commit()} hands the
+ * spooled file to {@link DocumentStorageService}; closing without committing discards it.
+ */
+public class DocumentSink extends OutputStream {
+
+    interface Committer {
+        StoredDocument commit(DocumentSink sink) throws IOException;
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String procedureUuid;
+    private final String filename;
+    private final Path spoolFile;
+    private final Committer committer;
+    private final OutputStream out;
+    private final MessageDigest digest;
+    private final byte[] head = new byte[ContentTypeSniffer.HEAD_LENGTH];
+    private int headLength;
+    private long size;
+    private String sha256Hex;
+    private boolean streamClosed;
+    private boolean committed;
+
+    // when false the spool file was written by someone else and only its bytes are fed through
+    private final boolean ownsSpool;
+
+    DocumentSink(String procedureUuid, String filename, Path spoolFile, Committer committer) throws IOException {
+        this(procedureUuid, filename, spoolFile, committer, true);
+    }
+
+    private DocumentSink(String procedureUuid, String filename, Path spoolFile, Committer committer,
+                         boolean ownsSpool) throws IOException {
+        this.procedureUuid = procedureUuid;
+        this.filename = filename;
+        this.spoolFile = spoolFile;
+        this.committer = committer;
+        this.ownsSpool = ownsSpool;
+        this.digest = sha256();
+        this.out = ownsSpool
+                ? new BufferedOutputStream(Files.newOutputStream(spoolFile), BUFFER_SIZE)
+                : OutputStream.nullOutputStream();
+    }
+
+    /**
+     * Sink over a file that is already fully written: feeding it its own bytes computes the
+     * metadata, and commit moves the file into storage. It is left in place if not committed.
+     */
+    static DocumentSink adopt(String procedureUuid, String filename, Path file, Committer committer) throws IOException {
+        return new DocumentSink(procedureUuid, filename, file, committer, false);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        digest.update((byte) b);
+        if (headLength < head.length) {
+            head[headLength++] = (byte) b;
+        }
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        digest.update(b, off, len);
+        if (headLength < head.length) {
+            int n = Math.min(len, head.length - headLength);
+            System.arraycopy(b, off, head, headLength, n);
+            headLength += n;
+        }
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Finish the upload and move it into permanent storage.
+     */
+    public StoredDocument commit() throws IOException {
+        if (committed) {
+            throw new IllegalStateException("Document sink already committed");
+        }
+        closeStream();
+        StoredDocument stored = committer.commit(this);
+        committed = true;
+        return stored;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeStream();
+        if (!committed && ownsSpool) {
+            Files.deleteIfExists(spoolFile);
+        }
+    }
+
+    private void closeStream() throws IOException {
+        if (!streamClosed) {
+            streamClosed = true;
+            out.close();
+            sha256Hex = HexFormat.of().formatHex(digest.digest());
+        }
+    }
+
+    String getProcedureUuid() { return procedureUuid; }
+    String getFilename() { return filename; }
+    Path getSpoolFile() { return spoolFile; }
+    long getSize() { return size; }
+
+    String getSha256() { return sha256Hex; }
+
+    String getContentType() {
+        return ContentTypeSniffer.detect(head, headLength, filename);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,47 +1,620 @@
 package com.justresults.hirepay.util;
 
+import com.justresults.hirepay.business.events.DocumentStoredEvent;
 import com.justresults.hirepay.config.StorageProperties;
+import com.justresults.hirepay.domain.DocumentBlob;
+import com.justresults.hirepay.enumeration.DocReference;
+import com.justresults.hirepay.repository.DocumentBlobRepository;
+import com.justresults.hirepay.storage.ChunkRecipe;
+import com.justresults.hirepay.storage.ContentDefinedChunker;
+import com.justresults.hirepay.storage.DecompressingResource;
+import com.justresults.hirepay.storage.EnvelopeEncryption;
+import com.justresults.hirepay.storage.HotBlobCache;
+import com.justresults.hirepay.storage.RangeInputStream;
+import com.justresults.hirepay.storage.SegmentStore;
+import com.justresults.hirepay.storage.StorageBackend;
+import com.justresults.hirepay.storage.StorageObjectInfo;
+import com.justresults.hirepay.storage.StorageResource;
+import com.justresults.hirepay.storage.StoredContent;
+import com.justresults.hirepay.storage.StoredContentResource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @Service
 public class DocumentStorageService {
 
+    private static final Logger log = LoggerFactory.getLogger(DocumentStorageService.class);
+    // shorter secrets are guessable, and the key is derived from it alone
+    private static final int MIN_MASTER_KEY_LENGTH = 32;
+
+    /** Prefix of backend-neutral locations persisted in ProcedureDocument.location. */
+    public static final String LOCATION_SCHEME = "storage://";
+
+    /** Separates a segment key from the entry name in the location of an archived document. */
+    public static final String SEGMENT_ENTRY_SEPARATOR = "!";
+
+    /** Key prefix of content-addressed blobs shared between documents. */
+    public static final String BLOB_PREFIX = "blobs/";
+
+    /** Key prefix of content-defined chunks of documents stored as deltas. */
+    public static final String CHUNK_PREFIX = "chunks/";
+
+    /** Suffix of the recipe that lists a chunked document's chunks ("x.pdf.cdc"). */
+    public static final String CHUNKED_SUFFIX = ".cdc";
+
+    /** Suffix of documents encrypted at rest ("x.pdf.enc"). */
+    public static final String ENCRYPTED_SUFFIX = ".enc";
+
+    private static final String COMPRESSED_SUFFIX = ".gz";
+    private static final int COMPRESSION_BUFFER_SIZE = 64 * 1024;
+    // CRC32 + ISIZE
+    private static final int GZIP_TRAILER_SIZE = 8;
+    // spares the sink's per-byte hashing when writers emit many small writes
+    private static final int WRITER_BUFFER_SIZE = 64 * 1024;
+
     private final Path root;
+    // uploads are written here first and moved into place once fully received
+    private final Path spool;
+    private final boolean dedup;
+    private final StorageProperties.Compression compression;
+    private final StorageProperties.Delta delta;
+    private final ContentDefinedChunker chunker;
+    private final StorageProperties.Encryption encryption;
+    // null when no master key is configured; encrypted documents then cannot be stored or read
+    private final EnvelopeEncryption envelope;
+    private final StorageBackend backend;
+    private final DocumentBlobRepository blobRepository;
+    private final SegmentStore segments;
+    // null when storage.cache.enabled=false
+    private final HotBlobCache hotBlobs;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StorageHealthMonitor health;
+    // reference counts are committed on their own so a lock on a popular blob is held only briefly
+    private final TransactionTemplate blobTx;
 
-    public DocumentStorageService(StorageProperties props) throws IOException {
+    public DocumentStorageService(StorageProperties props,
+                                  StorageBackend backend,
+                                  DocumentBlobRepository blobRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  ApplicationEventPublisher eventPublisher,
+                                  StorageHealthMonitor health,
+                                  MeterRegistry meterRegistry) throws IOException {
         this.root = Paths.get(props.getFolder()).toAbsolutePath().normalize();
+        this.spool = root.resolve(".incoming");
+        this.dedup = props.isDedup();
+        this.compression = props.getCompression();
+        this.delta = props.getDelta();
+        this.chunker = new ContentDefinedChunker((int) delta.getMinChunkSize().toBytes(),
+                (int) delta.getAvgChunkSize().toBytes(), (int) delta.getMaxChunkSize().toBytes());
+        this.encryption = props.getEncryption();
+        String masterKey = encryption.getMasterKey();
+        if (masterKey != null && !masterKey.isBlank() && masterKey.length() < MIN_MASTER_KEY_LENGTH) {
+            throw new IllegalStateException("storage.encryption.master-key (STORAGE_ENCRYPTION_KEY) must be at least "
+                    + MIN_MASTER_KEY_LENGTH + " characters");
+        }
+        this.envelope = masterKey != null && !masterKey.isBlank()
+                ? new EnvelopeEncryption(masterKey, (int) encryption.getChunkSize().toBytes())
+                : null;
+        if (envelope == null && encryption.isEnabled() && !encryption.getDocReferences().isEmpty()) {
+            throw new IllegalStateException("storage.encryption.master-key (STORAGE_ENCRYPTION_KEY) must be set"
+                    + " while storage.encryption is enabled");
+        }
+        this.backend = backend;
+        this.blobRepository = blobRepository;
+        this.segments = new SegmentStore(backend);
+        StorageProperties.Cache cache = props.getCache();
+        this.hotBlobs = cache.isEnabled()
+                ? new HotBlobCache(cache.getMaxSize().toBytes(), cache.getMaxEntrySize().toBytes(), meterRegistry)
+                : null;
+        this.eventPublisher = eventPublisher;
+        this.health = health;
+        this.blobTx = new TransactionTemplate(transactionManager);
+        this.blobTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
         Files.createDirectories(this.root);
+        Files.createDirectories(this.spool);
     }
 
-    public String store(String procedureUuid, MultipartFile file) throws IOException {
-        String ext = getExt(file.getOriginalFilename());
-        String filename = UUID.randomUUID() + (ext.isEmpty() ? "" : "." + ext);
-        Path dir = root.resolve(procedureUuid);
-        Files.createDirectories(dir);
-        Path dest = dir.resolve(filename);
-        Files.copy(file.getInputStream(), dest, StandardCopyOption.REPLACE_EXISTING);
-        return dest.toString();
+    public StoredDocument store(String procedureUuid, MultipartFile file) throws IOException {
+        return store(procedureUuid, file, null);
     }
 
-    public String store(String procedureUuid, byte[] content, String filename) throws IOException {
-        String ext = getExt(filename);
-        String finalFilename = UUID.randomUUID() + (ext.isEmpty() ? "" : "." + ext);
-        Path dir = root.resolve(procedureUuid);
-        Files.createDirectories(dir);
-        Path dest = dir.resolve(finalFilename);
-        Files.write(dest, content, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
-        return dest.toString();
+    /**
+     * Store a new version of a document type. Types listed under storage.delta are kept as
+     * chunks, so the chunks a version shares with earlier ones are stored only once; types
+     * listed under storage.encryption are encrypted before they reach the backend.
+     */
+    public StoredDocument store(String procedureUuid, MultipartFile file, DocReference docReference) throws IOException {
+        if (file instanceof SpooledMultipartFile spooled) {
+            return store(procedureUuid, spooled.getFile(), file.getOriginalFilename(), docReference);
+        }
+        try (InputStream in = file.getInputStream()) {
+            return store(procedureUuid, in, file.getOriginalFilename(), docReference);
+        }
+    }
+
+    // Small generated content only; uploads should use the streaming overloads
+    public StoredDocument store(String procedureUuid, byte[] content, String filename) throws IOException {
+        return store(procedureUuid, content, filename, null);
+    }
+
+    public StoredDocument store(String procedureUuid, byte[] content, String filename, DocReference docReference) throws IOException {
+        return store(procedureUuid, new ByteArrayInputStream(content), filename, docReference);
+    }
+
+    /**
+     * Single ingestion path for every document: streams the content to disk while computing
+     * size, SHA-256 and the sniffed content type, without buffering the file on the heap.
+     * Nothing is spooled while storage is nearly full, and nothing committed while it is full
+     * or overloaded; the caller gets a {@link StorageUnavailableException} instead of an I/O
+     * error part-way through.
+     */
+    public StoredDocument store(String procedureUuid, InputStream content, String filename) throws IOException {
+        return store(procedureUuid, content, filename, null);
+    }
+
+    private StoredDocument store(String procedureUuid, InputStream content, String filename,
+                                 DocReference docReference) throws IOException {
+        health.checkSpace(0);
+        try (DocumentSink sink = openSink(procedureUuid, filename, docReference)) {
+            content.transferTo(sink);
+            return commitAdmitted(sink);
+        }
+    }
+
+    /**
+     * Store a document that {@code writer} produces, such as a PDF being rendered: it writes
+     * straight into the spool file, so generated documents never sit on the heap in one
+     * piece either. Closing the stream it is given does not end the document. As with
+     * uploads, only the commit waits for a write slot; rendering does not hold one.
+     */
+    public StoredDocument store(String procedureUuid, String filename, ContentWriter writer) throws IOException {
+        health.checkSpace(0);
+        try (DocumentSink sink = openSink(procedureUuid, filename, null)) {
+            OutputStream content = new BufferedOutputStream(sink, WRITER_BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            writer.writeTo(content);
+            content.flush();
+            return commitAdmitted(sink);
+        }
+    }
+
+    /**
+     * Take over a file that is already complete on local disk, such as a finished resumable
+     * upload. It is read once for the metadata and then moved, not copied, into storage.
+     */
+    public StoredDocument store(String procedureUuid, Path file, String filename) throws IOException {
+        return store(procedureUuid, file, filename, null);
+    }
+
+    private StoredDocument store(String procedureUuid, Path file, String filename, DocReference docReference) throws IOException {
+        health.checkSpace(0);
+        try (DocumentSink sink = DocumentSink.adopt(procedureUuid, filename, file, s -> commit(s, docReference));
+             InputStream in = Files.newInputStream(file)) {
+            in.transferTo(sink);
+            return commitAdmitted(sink);
+        }
+    }
+
+    // a slow store queues only the commit, not clients still sending their spool
+    private StoredDocument commitAdmitted(DocumentSink sink) throws IOException {
+        try (StorageHealthMonitor.WritePermit permit = health.admitWrite()) {
+            return sink.commit();
+        }
+    }
+
+    private DocumentSink openSink(String procedureUuid, String filename, DocReference docReference) throws IOException {
+        Path spoolFile = Files.createTempFile(spool, "ingest-", ".part");
+        return new DocumentSink(procedureUuid, filename, spoolFile, sink -> commit(sink, docReference));
+    }
+
+    // timed for the storage health indicator; spooling is left out as it runs at the client's pace
+    private StoredDocument commit(DocumentSink sink, DocReference docReference) throws IOException {
+        long started = System.nanoTime();
+        try {
+            return encryption.appliesTo(docReference) ? commitEncrypted(sink) : commitPlain(sink, docReference);
+        } finally {
+            health.recordWrite(started, sink.getSize());
+        }
+    }
+
+    private StoredDocument commitPlain(DocumentSink sink, DocReference docReference) throws IOException {
+        String chunkedKey = delta.appliesTo(docReference, sink.getSize()) ? commitChunked(sink) : null;
+        // chunks are stored as is so that unchanged ones keep matching
+        Path compressed = chunkedKey == null ? compress(sink) : null;
+        try {
+            String key = chunkedKey != null ? chunkedKey
+                    : dedup ? commitShared(sink, compressed) : commitUnique(sink, compressed);
+            // drop the original if a compressed copy or an existing blob was stored instead
+            Files.deleteIfExists(sink.getSpoolFile());
+            releaseOnRollback(toLocation(key));
+            eventPublisher.publishEvent(new DocumentStoredEvent(toLocation(key), sink.getSha256(), sink.getContentType()));
+            return new StoredDocument(toLocation(key), sink.getFilename(), sink.getContentType(),
+                    sink.getSize(), sink.getSha256());
+        } finally {
+            if (compressed != null) {
+                Files.deleteIfExists(compressed);
+            }
+        }
+    }
+
+    /**
+     * Encrypt the spooled document chunk by chunk into a second spool file and store that.
+     * Encrypted documents are never compressed, chunked or shared through dedup: each has
+     * its own data key, and the plaintext never leaves the spool directory.
+     */
+    private StoredDocument commitEncrypted(DocumentSink sink) throws IOException {
+        if (envelope == null) {
+            throw new IllegalStateException("storage.encryption.master-key is not set");
+        }
+        Path encrypted = Files.createTempFile(spool, "ingest-", ".enc");
+        try {
+            envelope.encrypt(sink.getSpoolFile(), encrypted);
+            String key = sink.getProcedureUuid() + "/" + UUID.randomUUID() + suffix(sink.getFilename(), ENCRYPTED_SUFFIX);
+            backend.put(key, encrypted);
+            Files.deleteIfExists(sink.getSpoolFile());
+            releaseOnRollback(toLocation(key));
+            eventPublisher.publishEvent(new DocumentStoredEvent(toLocation(key), sink.getSha256(), sink.getContentType()));
+            return new StoredDocument(toLocation(key), sink.getFilename(), sink.getContentType(),
+                    sink.getSize(), sink.getSha256());
+        } finally {
+            Files.deleteIfExists(encrypted);
+        }
+    }
+
+    private String commitUnique(DocumentSink sink, Path compressed) throws IOException {
+        String key = sink.getProcedureUuid() + "/" + UUID.randomUUID() + suffix(sink.getFilename(), compressed != null ? COMPRESSED_SUFFIX : null);
+        // on the filesystem backend this is a rename of the spool file rather than a copy
+        backend.put(key, compressed != null ? compressed : sink.getSpoolFile());
+        return key;
+    }
+
+    /**
+     * Gzip the spooled document if its type is configured for compression and it actually
+     * shrinks enough to be worth decoding on every read. Returns null to store it as is.
+     */
+    private Path compress(DocumentSink sink) throws IOException {
+        if (!compression.appliesTo(sink.getContentType(), sink.getSize())) {
+            return null;
+        }
+        Path compressed = gzip(sink.getSpoolFile());
+        if (Files.size(compressed) > sink.getSize() * compression.getMaxRatio()) {
+            Files.delete(compressed);
+            return null;
+        }
+        return compressed;
+    }
+
+    private Path gzip(Path source) throws IOException {
+        Path target = Files.createTempFile(spool, "ingest-", ".gz");
+        int level = compression.getLevel();
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(target), COMPRESSION_BUFFER_SIZE) {
+                 { def.setLevel(level); }
+             }) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+        return target;
+    }
+
+    /**
+     * Content-addressed commit: the first copy of a hash becomes the shared blob, later
+     * copies just take a reference and drop their spool file.
+     */
+    private String commitShared(DocumentSink sink, Path compressed) throws IOException {
+        try {
+            return blobTx.execute(status -> takeReference(sink, compressed));
+        } catch (DataIntegrityViolationException e) {
+            // another upload inserted the same hash first; its row is there now
+            return blobTx.execute(status -> takeReference(sink, compressed));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private String takeReference(DocumentSink sink, Path compressed) {
+        String sha256 = sink.getSha256();
+        try {
+            Optional<DocumentBlob> existing = blobRepository.findForUpdate(sha256);
+            if (existing.isPresent()) {
+                DocumentBlob blob = existing.get();
+                String key = keyOf(blob.getLocation());
+                if (!backend.exists(key)) {
+                    // heal a blob that went missing with the identical bytes we just received,
+                    // in whichever form the blob was first stored
+                    Path payload = isCompressedKey(key)
+                            ? (compressed != null ? compressed : gzip(sink.getSpoolFile()))
+                            : sink.getSpoolFile();
+                    try {
+                        backend.put(key, payload);
+                    } finally {
+                        if (payload != compressed && payload != sink.getSpoolFile()) {
+                            Files.deleteIfExists(payload);
+                        }
+                    }
+                }
+                blob.setRefCount(blob.getRefCount() + 1);
+                return key;
+            }
+
+            String key = BLOB_PREFIX + sha256.substring(0, 2) + "/" + sha256 + suffix(sink.getFilename(), compressed != null ? COMPRESSED_SUFFIX : null);
+            backend.put(key, compressed != null ? compressed : sink.getSpoolFile());
+
+            DocumentBlob blob = new DocumentBlob();
+            blob.setSha256(sha256);
+            blob.setLocation(toLocation(key));
+            blob.setSize(sink.getSize());
+            blob.setRefCount(1);
+            blobRepository.saveAndFlush(blob);
+            return key;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Store the document as content-defined chunks plus a recipe listing them. Chunks are
+     * content-addressed and reference counted in document_blobs like whole-file blobs, so the
+     * chunks a new version shares with an earlier one only gain a reference. Returns null for
+     * files that make a single chunk, which are better stored whole.
+     */
+    private String commitChunked(DocumentSink sink) throws IOException {
+        List<ContentDefinedChunker.Chunk> chunks = chunker.split(sink.getSpoolFile());
+        if (chunks.size() < 2) {
+            return null;
+        }
+        ChunkRecipe recipe;
+        try {
+            recipe = blobTx.execute(status -> takeChunkReferences(sink.getSpoolFile(), chunks));
+        } catch (DataIntegrityViolationException e) {
+            // another upload inserted one of the chunks first; its row is there now
+            recipe = blobTx.execute(status -> takeChunkReferences(sink.getSpoolFile(), chunks));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        String key = sink.getProcedureUuid() + "/" + UUID.randomUUID() + suffix(sink.getFilename(), CHUNKED_SUFFIX);
+        try {
+            byte[] bytes = recipe.toBytes();
+            backend.put(key, new ByteArrayInputStream(bytes), bytes.length);
+        } catch (IOException | RuntimeException e) {
+            releaseChunks(recipe);
+            throw e;
+        }
+        return key;
+    }
+
+    private ChunkRecipe takeChunkReferences(Path file, List<ContentDefinedChunker.Chunk> chunks) {
+        // rows are locked in hash order so concurrent commits sharing chunks cannot deadlock
+        Map<String, List<ContentDefinedChunker.Chunk>> bySha = new TreeMap<>();
+        for (ContentDefinedChunker.Chunk chunk : chunks) {
+            bySha.computeIfAbsent(chunk.sha256(), sha -> new ArrayList<>()).add(chunk);
+        }
+        Map<String, String> keys = new HashMap<>();
+        try {
+            for (Map.Entry<String, List<ContentDefinedChunker.Chunk>> entry : bySha.entrySet()) {
+                String sha256 = entry.getKey();
+                ContentDefinedChunker.Chunk chunk = entry.getValue().get(0);
+                int occurrences = entry.getValue().size();
+                Optional<DocumentBlob> existing = blobRepository.findForUpdate(sha256);
+                String key;
+                if (existing.isPresent()) {
+                    DocumentBlob blob = existing.get();
+                    key = keyOf(blob.getLocation());
+                    if (!isCompressedKey(key) && !backend.exists(key)) {
+                        putChunk(key, file, chunk);
+                    }
+                    blob.setRefCount(blob.getRefCount() + occurrences);
+                } else {
+                    key = CHUNK_PREFIX + sha256.substring(0, 2) + "/" + sha256;
+                    putChunk(key, file, chunk);
+                    DocumentBlob blob = new DocumentBlob();
+                    blob.setSha256(sha256);
+                    blob.setLocation(toLocation(key));
+                    blob.setSize(chunk.length());
+                    blob.setRefCount(occurrences);
+                    blobRepository.saveAndFlush(blob);
+                }
+                keys.put(sha256, key);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ChunkRecipe(chunks.stream()
+                .map(chunk -> new ChunkRecipe.Entry(keys.get(chunk.sha256()), chunk.sha256(), chunk.length()))
+                .toList());
+    }
+
+    private void putChunk(String key, Path file, ContentDefinedChunker.Chunk chunk) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ)) {
+            channel.position(chunk.offset());
+            backend.put(key, new RangeInputStream(Channels.newInputStream(channel), chunk.length()), chunk.length());
+        }
+    }
+
+    private void releaseChunks(ChunkRecipe recipe) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (ChunkRecipe.Entry entry : recipe.getEntries()) {
+            counts.merge(entry.sha256(), 1, Integer::sum);
+        }
+        blobTx.executeWithoutResult(status -> counts.forEach((sha256, count) -> blobRepository.findForUpdate(sha256)
+                .ifPresent(blob -> {
+                    if (blob.getRefCount() > count) {
+                        blob.setRefCount(blob.getRefCount() - count);
+                        return;
+                    }
+                    blobRepository.delete(blob);
+                    String key = keyOf(blob.getLocation());
+                    if (hotBlobs != null) {
+                        hotBlobs.evict(key);
+                    }
+                    try {
+                        backend.delete(key);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })));
+    }
+
+    /**
+     * Drop a location that no document points at any more, once the surrounding transaction
+     * commits: shared blobs lose a reference (and go with the last one), per-upload objects are
+     * deleted. Entries of archive segments are left to the segment.
+     */
+    public void release(String location) {
+        if (location == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    releaseNow(location);
+                }
+            });
+        } else {
+            releaseNow(location);
+        }
+    }
+
+    /**
+     * Undo a store if the transaction it belongs to rolls back, so failed requests do not
+     * leave unreferenced files behind.
+     */
+    private void releaseOnRollback(String location) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    releaseNow(location);
+                }
+            }
+        });
+    }
+
+    private void releaseNow(String location) {
+        String key = keyOf(location);
+        if (key == null || isSegmentKey(key)) {
+            return;
+        }
+        if (hotBlobs != null) {
+            hotBlobs.evict(key);
+        }
+        try {
+            if (key.startsWith(BLOB_PREFIX)) {
+                releaseBlob(location);
+            } else if (isChunkedKey(key)) {
+                ChunkRecipe recipe;
+                try (InputStream in = backend.open(key)) {
+                    recipe = ChunkRecipe.read(in);
+                }
+                releaseChunks(recipe);
+                backend.delete(key);
+            } else {
+                backend.delete(key);
+            }
+        } catch (IOException | RuntimeException e) {
+            // the transaction is already over; the orphan sweep will pick the file up
+            log.warn("Could not release {}", location, e);
+        }
+    }
+
+    private void releaseBlob(String location) {
+        blobTx.executeWithoutResult(status -> blobRepository.findByLocation(location)
+                .flatMap(blob -> blobRepository.findForUpdate(blob.getSha256()))
+                .ifPresent(blob -> {
+                    if (blob.getRefCount() > 1) {
+                        blob.setRefCount(blob.getRefCount() - 1);
+                        return;
+                    }
+                    blobRepository.delete(blob);
+                    try {
+                        backend.delete(keyOf(blob.getLocation()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
     }
 
     public Resource loadAsResource(String location) throws IOException {
+        long started = System.nanoTime();
+        try {
+            return resolveResource(location);
+        } finally {
+            health.recordRead(started);
+        }
+    }
+
+    private Resource resolveResource(String location) throws IOException {
+        String key = keyOf(location);
+        if (key != null && (isSegmentKey(key) || isChunkedKey(key) || isEncryptedKey(key))) {
+            return new StoredContentResource(openContent(location, hotBlobs != null), documentName(key));
+        }
+        if (key != null && hotBlobs != null) {
+            Optional<StoredContent> hit = hotBlobs.get(key);
+            if (hit.isPresent()) {
+                String name = key.substring(key.lastIndexOf('/') + 1);
+                return isCompressedKey(key)
+                        ? new DecompressingResource(new StoredContentResource(hit.get(), name))
+                        : new StoredContentResource(hit.get(), name);
+            }
+        }
+        if (key != null) {
+            Optional<Path> local = backend.localPath(key);
+            Resource resource = local.isPresent()
+                    ? new UrlResource(local.get().toUri())
+                    : new StorageResource(backend, key);
+            if (!resource.exists()) {
+                throw new IOException("Could not read file: " + location);
+            }
+            return isCompressedKey(key) ? new DecompressingResource(resource) : resource;
+        }
+
+        // location outside the store (hand-entered path); read it directly
         try {
             Path file = Paths.get(location);
             Resource resource = new UrlResource(file.toUri());
@@ -50,14 +623,272 @@ public class DocumentStorageService {
             } else {
                 throw new IOException("Could not read file: " + location);
             }
-        } catch (MalformedURLException e) {
+        } catch (MalformedURLException | InvalidPathException e) {
             throw new IOException("Could not read file: " + location, e);
         }
     }
 
+    /**
+     * Resolve a location for ranged reads. Sizes and timestamps come from the backend, so this
+     * works for any location {@link #loadAsResource} accepts.
+     */
+    public StoredContent openContent(String location) throws IOException {
+        long started = System.nanoTime();
+        try {
+            return openContent(location, hotBlobs != null);
+        } finally {
+            health.recordRead(started);
+        }
+    }
+
+    /**
+     * Like {@link #openContent} but always reads the backend, never the heap cache, so what
+     * comes back is what is actually on disk or in the bucket. For integrity checks.
+     */
+    public StoredContent openFromStorage(String location) throws IOException {
+        return openContent(location, false);
+    }
+
+    private StoredContent openContent(String location, boolean useCache) throws IOException {
+        String key = keyOf(location);
+        if (key != null) {
+            // decoding happens on top of the cached (encoded) bytes
+            String name = isSegmentKey(key) ? key.substring(key.indexOf(SEGMENT_ENTRY_SEPARATOR) + 1) : key;
+            StoredContent stored = useCache ? cached(key) : openStored(key);
+            if (isChunkedKey(name)) {
+                return chunked(stored, useCache);
+            }
+            if (isEncryptedKey(name)) {
+                return decrypted(stored);
+            }
+            return isCompressedKey(name) ? decompressed(stored) : stored;
+        }
+
+        Path file;
+        try {
+            file = Paths.get(location);
+        } catch (InvalidPathException e) {
+            throw new IOException("Could not read file: " + location, e);
+        }
+        if (!Files.isReadable(file)) {
+            throw new FileNotFoundException("Could not read file: " + location);
+        }
+        long size = Files.size(file);
+        Instant lastModified = Files.getLastModifiedTime(file).toInstant();
+        return new StoredContent() {
+            @Override public long getSize() { return size; }
+            @Override public Instant getLastModified() { return lastModified; }
+            @Override public Optional<Path> getLocalFile() { return Optional.of(file); }
+            @Override public InputStream open(long offset, long length) throws IOException {
+                SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ);
+                channel.position(offset);
+                return new RangeInputStream(Channels.newInputStream(channel), length);
+            }
+        };
+    }
+
+    private StoredContent cached(String key) throws IOException {
+        Optional<StoredContent> hit = hotBlobs.get(key);
+        if (hit.isPresent()) {
+            return hit.get();
+        }
+        StoredContent stored = openStored(key);
+        if (!hotBlobs.admit(key, stored.getSize())) {
+            return stored;
+        }
+        byte[] bytes;
+        try (InputStream in = stored.open()) {
+            bytes = in.readAllBytes();
+        }
+        return hotBlobs.put(key, bytes, stored.getLastModified());
+    }
+
+    // the object under a key as stored, i.e. still compressed if it was stored that way
+    private StoredContent openStored(String key) throws IOException {
+        if (isSegmentKey(key)) {
+            int separator = key.indexOf(SEGMENT_ENTRY_SEPARATOR);
+            return segments.open(key.substring(0, separator), key.substring(separator + 1));
+        }
+        StorageObjectInfo info = backend.stat(key)
+                .orElseThrow(() -> new FileNotFoundException("Could not read file: " + toLocation(key)));
+        Optional<Path> local = backend.localPath(key);
+        return new StoredContent() {
+            @Override public long getSize() { return info.getSize(); }
+            @Override public Instant getLastModified() { return info.getLastModified(); }
+            @Override public Optional<Path> getLocalFile() { return local; }
+            @Override public InputStream open(long offset, long length) throws IOException {
+                return backend.open(key, offset, length);
+            }
+        };
+    }
+
+    /**
+     * Document reassembled from the chunks its recipe lists; a range read opens only the
+     * chunks it overlaps.
+     */
+    private StoredContent chunked(StoredContent stored, boolean useCache) throws IOException {
+        ChunkRecipe recipe;
+        try (InputStream in = stored.open()) {
+            recipe = ChunkRecipe.read(in);
+        }
+        return new StoredContent() {
+            @Override public long getSize() { return recipe.getSize(); }
+            @Override public Instant getLastModified() { return stored.getLastModified(); }
+            @Override public InputStream open(long offset, long length) throws IOException {
+                return recipe.open((chunkKey, chunkOffset, chunkLength) ->
+                        openContent(toLocation(chunkKey), useCache).open(chunkOffset, chunkLength), offset, length);
+            }
+        };
+    }
+
+    private StoredContent decrypted(StoredContent stored) throws IOException {
+        if (envelope == null) {
+            throw new IOException("Document is encrypted but storage.encryption.master-key is not set");
+        }
+        return envelope.decrypt(stored);
+    }
+
+    /**
+     * Decoded view of a gzip-compressed object. Ranges are served by inflating from the start
+     * and skipping, which is fine for the text-like documents that get compressed.
+     */
+    private static StoredContent decompressed(StoredContent stored) throws IOException {
+        long size = gzipDecodedSize(stored);
+        return new StoredContent() {
+            @Override public long getSize() { return size; }
+            @Override public Instant getLastModified() { return stored.getLastModified(); }
+            @Override public InputStream open(long offset, long length) throws IOException {
+                InputStream in = new GZIPInputStream(stored.open(), COMPRESSION_BUFFER_SIZE);
+                try {
+                    in.skipNBytes(offset);
+                } catch (IOException e) {
+                    in.close();
+                    throw e;
+                }
+                return new RangeInputStream(in, length);
+            }
+            @Override public String getContentEncoding() { return "gzip"; }
+            @Override public StoredContent encoded() { return stored; }
+        };
+    }
+
+    // ISIZE from the gzip trailer: the decoded length modulo 2^32, exact for anything we accept
+    private static long gzipDecodedSize(StoredContent stored) throws IOException {
+        if (stored.getSize() < GZIP_TRAILER_SIZE) {
+            throw new IOException("Truncated compressed document");
+        }
+        try (InputStream in = stored.open(stored.getSize() - 4, 4)) {
+            byte[] isize = in.readNBytes(4);
+            if (isize.length < 4) {
+                throw new IOException("Truncated compressed document");
+            }
+            return (isize[0] & 0xFFL) | (isize[1] & 0xFFL) << 8 | (isize[2] & 0xFFL) << 16 | (isize[3] & 0xFFL) << 24;
+        }
+    }
+
+    /**
+     * Whether a key holds a gzip-compressed document. Compressed keys always carry the
+     * original extension before ".gz" ("x.pdf.gz", "x.bin.gz"), while stored names are
+     * otherwise UUIDs or hashes with a single extension, so an uploaded ".gz" file is never
+     * mistaken for one.
+     */
+    public static boolean isCompressedKey(String key) {
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        return name.endsWith(COMPRESSED_SUFFIX) && name.indexOf('.') < name.length() - COMPRESSED_SUFFIX.length();
+    }
+
+    /**
+     * Whether a key holds the chunk recipe of a document stored as a delta. Like compressed
+     * keys, recipes carry the original extension before the suffix ("x.pdf.cdc").
+     */
+    public static boolean isChunkedKey(String key) {
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        return name.endsWith(CHUNKED_SUFFIX) && name.indexOf('.') < name.length() - CHUNKED_SUFFIX.length();
+    }
+
+    /**
+     * Whether a key holds a document encrypted at rest ("x.pdf.enc").
+     */
+    public static boolean isEncryptedKey(String key) {
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        return name.endsWith(ENCRYPTED_SUFFIX) && name.indexOf('.') < name.length() - ENCRYPTED_SUFFIX.length();
+    }
+
+    /**
+     * File name a key or location stands for: the last path element, without the suffix of
+     * a compressed, chunked or encrypted object. For a segment entry, the entry's name.
+     */
+    public static String documentName(String key) {
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        for (String storageSuffix : List.of(COMPRESSED_SUFFIX, CHUNKED_SUFFIX, ENCRYPTED_SUFFIX)) {
+            if (name.endsWith(storageSuffix) && name.indexOf('.') < name.length() - storageSuffix.length()) {
+                return name.substring(0, name.length() - storageSuffix.length());
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Whether a key addresses an entry inside an archive segment rather than an object.
+     */
+    public static boolean isSegmentKey(String key) {
+        return key.contains(SEGMENT_ENTRY_SEPARATOR);
+    }
+
+    public String toSegmentLocation(String segmentKey, String entryName) {
+        return toLocation(segmentKey + SEGMENT_ENTRY_SEPARATOR + entryName);
+    }
+
+    /**
+     * Storage key for a persisted location, or null when the location is not inside the store.
+     * Absolute paths written before locations became backend-neutral are mapped relative to
+     * storage.folder, so those files keep working once copied to another backend with the same layout.
+     */
+    public String keyOf(String location) {
+        if (location == null) {
+            return null;
+        }
+        if (location.startsWith(LOCATION_SCHEME)) {
+            return location.substring(LOCATION_SCHEME.length());
+        }
+        try {
+            Path path = location.startsWith("file:") ? Paths.get(URI.create(location)) : Paths.get(location);
+            path = path.toAbsolutePath().normalize();
+            if (path.startsWith(root) && !path.equals(root)) {
+                return root.relativize(path).toString().replace('\\', '/');
+            }
+        } catch (IllegalArgumentException e) {
+            // not a path we understand
+        }
+        return null;
+    }
+
+    public String toLocation(String key) {
+        return LOCATION_SCHEME + key;
+    }
+
+    // storageSuffix marks an encoded object (".gz", ".cdc", ".enc"), or is null for a plain one
+    private static String suffix(String filename, String storageSuffix) {
+        String ext = getExt(filename);
+        if (storageSuffix != null) {
+            return "." + (ext.isEmpty() ? "bin" : ext) + storageSuffix;
+        }
+        return ext.isEmpty() ? "" : "." + ext;
+    }
+
     private static String getExt(String name) {
         if (name == null) return "";
         int i = name.lastIndexOf('.');
-        return i > 0 ? name.substring(i + 1) : "";
+        String ext = i > 0 ? name.substring(i + 1) : "";
+        // the extension ends up in the storage key, where only a plain suffix is safe
+        return ext.matches("[A-Za-z0-9]{1,16}") ? ext : "";
+    }
+
+    /**
+     * Produces a document into the stream it is given.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
     }
 }
@@ -0,0 +1,6 @@
+package com.justresults.hirepay.util;
+
+
+public class ForbiddenException extends RuntimeException {
+    public ForbiddenException(String message) { super(message); }
+}
@@ -0,0 +1,6 @@
+package com.justresults.hirepay.util;
+
+
+public class InvalidSignatureException extends RuntimeException {
+    public InvalidSignatureException(String message) { super(message); }
+}
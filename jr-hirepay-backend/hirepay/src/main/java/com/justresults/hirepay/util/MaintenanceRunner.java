@@ -0,0 +1,73 @@
+package com.justresults.hirepay.util;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs long maintenance passes (scrub, reconciliation, backup) on threads of their own. The
+ * scheduled methods that trigger them return at once, so the scheduler's threads stay free
+ * for the short polling jobs instead of sitting in a pass that can take hours.
+ * <p>
+ * A pass that is still running or waiting is not started a second time. Since the trigger
+ * returns immediately, a pass's fixed delay counts from when it was started.
+ */
+@Component
+public class MaintenanceRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(MaintenanceRunner.class);
+
+    private final ThreadPoolExecutor executor;
+    private final Set<String> active = ConcurrentHashMap.newKeySet();
+
+    public MaintenanceRunner(@Value("${maintenance.threads:3}") int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        int size = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(size, size, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, "maintenance-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Start {@code pass} in the background unless a pass of the same name is already running
+     * or waiting. Failures are logged; the pass reports its own results.
+     */
+    public void run(String name, Runnable pass) {
+        if (!active.add(name)) {
+            log.info("{} is still running; skipping this run", name);
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    pass.run();
+                } catch (RuntimeException e) {
+                    log.warn("{} failed", name, e);
+                } finally {
+                    active.remove(name);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            active.remove(name);
+            log.warn("{} could not be started: {}", name, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
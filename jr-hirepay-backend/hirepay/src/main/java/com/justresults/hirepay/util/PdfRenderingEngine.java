@@ -0,0 +1,255 @@
+package com.justresults.hirepay.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openhtmltopdf.extend.FSStream;
+import com.openhtmltopdf.extend.FSSupplier;
+import com.openhtmltopdf.extend.impl.FSDefaultCacheStore;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns a Thymeleaf template into a PDF. Everything a render needs besides the document
+ * itself is prepared once: stylesheets and fonts under templates/pdf/ are read into memory
+ * at startup and served from there, and font metrics are kept in a cache shared by all
+ * renders. Templates link their stylesheet as {@code pdf:<name>.css}.
+ * <p>
+ * The PDF goes straight to the stream the caller passes in, usually a document being stored,
+ * so no render keeps a copy of its output in the heap. What a render does allocate, mostly
+ * the PDF library's page layout, is recorded in hirepay.pdf.render.allocated.
+ * <p>
+ * Once the application is ready, each template in pdf.render.warm-up-templates is rendered
+ * and thrown away, so class loading, the PDF library's own font tables and the Thymeleaf
+ * template cache are paid for before the first real request instead of during it.
+ * <p>
+ * {@link #cacheKey} names the output of a render without doing it: a hash of the template
+ * source, the stylesheets and fonts, and the variables. Any edit to the template gives
+ * new keys, so callers can memoize rendered documents by key.
+ */
+@Component
+public class PdfRenderingEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(PdfRenderingEngine.class);
+    private static final String RESOURCE_SCHEME = "pdf";
+    private static final String RESOURCE_LOCATION = "classpath*:templates/pdf/**";
+    private static final String TEMPLATE_LOCATION = "classpath:templates/";
+    private static final String TEMPLATE_SUFFIX = ".html";
+
+    private final TemplateEngine templateEngine;
+    private final ResourceLoader resourceLoader;
+    private final ObjectMapper objectMapper;
+    private final Map<String, byte[]> resources = new HashMap<>();
+    private final Map<String, byte[]> fonts = new HashMap<>();
+    private final FSDefaultCacheStore fontMetrics = new FSDefaultCacheStore();
+    private final List<String> warmUpTemplates;
+    private final Timer renders;
+    private final DistributionSummary allocations;
+    private final com.sun.management.ThreadMXBean threads;
+    // hash of every preloaded stylesheet and font; they only change with a restart
+    private String resourcesDigest;
+    private final Map<String, TemplateVersion> templateVersions = new ConcurrentHashMap<>();
+
+    public PdfRenderingEngine(TemplateEngine templateEngine,
+                              ResourceLoader resourceLoader,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${pdf.render.warm-up-templates:task-order}") List<String> warmUpTemplates) throws IOException {
+        this.templateEngine = templateEngine;
+        this.resourceLoader = resourceLoader;
+        this.objectMapper = objectMapper;
+        this.warmUpTemplates = warmUpTemplates;
+        this.renders = Timer.builder("hirepay.pdf.render")
+                .description("Time to render a template to PDF")
+                .register(meterRegistry);
+        this.allocations = DistributionSummary.builder("hirepay.pdf.render.allocated")
+                .description("Heap allocated by the rendering thread during one render")
+                .baseUnit("bytes")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+        this.threads = allocationCounter();
+        loadResources();
+    }
+
+    private void loadResources() throws IOException {
+        MessageDigest digest = sha256();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(RESOURCE_LOCATION)) {
+            String name = resource.getFilename();
+            if (name == null || !resource.isReadable()) {
+                continue;
+            }
+            byte[] bytes;
+            try (InputStream in = resource.getInputStream()) {
+                bytes = in.readAllBytes();
+            }
+            String lower = name.toLowerCase();
+            if (lower.endsWith(".ttf") || lower.endsWith(".otf")) {
+                // registered under its file name, e.g. font-family: "NotoSans-Regular"
+                fonts.put(name.substring(0, name.lastIndexOf('.')), bytes);
+            } else {
+                resources.put(name, bytes);
+            }
+        }
+        new TreeMap<>(resources).forEach((name, bytes) -> digest.update(bytes));
+        new TreeMap<>(fonts).forEach((name, bytes) -> digest.update(bytes));
+        resourcesDigest = HexFormat.of().formatHex(digest.digest());
+        log.info("Loaded {} PDF stylesheet(s) and {} font(s)", resources.size(), fonts.size());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        for (String template : warmUpTemplates) {
+            long started = System.nanoTime();
+            try {
+                render(template, Map.of(), OutputStream.nullOutputStream());
+                log.info("Warmed up PDF template {} in {}ms", template, (System.nanoTime() - started) / 1_000_000);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Warm-up render of PDF template {} failed: {}", template, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Render the template with the given variables into {@code out}, which is flushed but
+     * left open.
+     */
+    public void render(String template, Map<String, Object> variables, OutputStream out) throws IOException {
+        long allocatedBefore = allocatedBytes();
+        Context context = new Context();
+        context.setVariables(variables);
+        String html = templateEngine.process(template, context);
+
+        long started = System.nanoTime();
+        PdfRendererBuilder builder = new PdfRendererBuilder();
+        builder.useCacheStore(PdfRendererBuilder.CacheStore.PDF_FONT_METRICS, fontMetrics);
+        builder.useUriResolver(PdfRenderingEngine::resolveUri);
+        builder.useProtocolsStreamImplementation(this::openResource, RESOURCE_SCHEME);
+        for (Map.Entry<String, byte[]> font : fonts.entrySet()) {
+            byte[] bytes = font.getValue();
+            builder.useFont((FSSupplier<InputStream>) () -> new ByteArrayInputStream(bytes), font.getKey());
+        }
+        builder.withHtmlContent(html, RESOURCE_SCHEME + ":/");
+        builder.toStream(out);
+        builder.run();
+        out.flush();
+        renders.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        if (allocatedBefore >= 0) {
+            allocations.record(allocatedBytes() - allocatedBefore);
+        }
+    }
+
+    /**
+     * Hex SHA-256 naming what {@link #render} would produce for these arguments. Variables
+     * are taken in key order, so two maps with the same entries give the same key.
+     */
+    public String cacheKey(String template, Map<String, Object> variables) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(templateVersion(template).getBytes(StandardCharsets.UTF_8));
+        digest.update(resourcesDigest.getBytes(StandardCharsets.UTF_8));
+        digest.update(objectMapper.writeValueAsBytes(new TreeMap<>(variables)));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hash of the template source, read again only when the file's modification time
+     * changes, so an edited template is noticed even while the application runs.
+     */
+    public String templateVersion(String template) throws IOException {
+        Resource resource = resourceLoader.getResource(TEMPLATE_LOCATION + template + TEMPLATE_SUFFIX);
+        long modified = resource.lastModified();
+        TemplateVersion known = templateVersions.get(template);
+        if (known != null && known.modified() == modified) {
+            return known.sha256();
+        }
+        try (InputStream in = resource.getInputStream()) {
+            String sha256 = HexFormat.of().formatHex(sha256().digest(in.readAllBytes()));
+            templateVersions.put(template, new TemplateVersion(modified, sha256));
+            return sha256;
+        }
+    }
+
+    // HotSpot counts the bytes each thread allocates; elsewhere the metric simply stays empty
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads;
+        }
+        log.info("Per-thread allocation counting is not available; hirepay.pdf.render.allocated stays empty");
+        return null;
+    }
+
+    // -1 when allocations are not being counted
+    private long allocatedBytes() {
+        return threads != null ? threads.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    // "pdf:task-order.css" and plain "task-order.css" both name a preloaded resource
+    private static String resolveUri(String baseUri, String uri) {
+        if (uri == null || uri.isEmpty()) {
+            return null;
+        }
+        if (uri.startsWith(RESOURCE_SCHEME + ":") || uri.contains("://")) {
+            return uri;
+        }
+        return RESOURCE_SCHEME + ":" + uri.substring(uri.lastIndexOf('/') + 1);
+    }
+
+    private FSStream openResource(String uri) {
+        String name = uri.substring(uri.lastIndexOf(':') + 1);
+        byte[] bytes = resources.get(name.substring(name.lastIndexOf('/') + 1));
+        if (bytes == null) {
+            log.warn("PDF resource not found: {}", uri);
+            return null;
+        }
+        return new FSStream() {
+            @Override
+            public InputStream getStream() {
+                return new ByteArrayInputStream(bytes);
+            }
+
+            @Override
+            public Reader getReader() {
+                return new InputStreamReader(getStream(), StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record TemplateVersion(long modified, String sha256) { }
+}
@@ -0,0 +1,6 @@
+package com.justresults.hirepay.util;
+
+
+public class QuotaExceededException extends RuntimeException {
+    public QuotaExceededException(String message) { super(message); }
+}
@@ -0,0 +1,67 @@
+package com.justresults.hirepay.util;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Presents a file that is already on local disk (e.g. a finished resumable upload) as a
+ * {@link MultipartFile}, so it can go through the same service methods as a form upload.
+ * {@link DocumentStorageService} recognises it and moves the file instead of copying it.
+ */
+public class SpooledMultipartFile implements MultipartFile {
+
+    private final Path file;
+    private final String originalFilename;
+    private final String contentType;
+
+    public SpooledMultipartFile(Path file, String originalFilename, String contentType) {
+        this.file = file;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+    }
+
+    public Path getFile() { return file; }
+
+    @Override
+    public String getName() { return "file"; }
+
+    @Override
+    public String getOriginalFilename() { return originalFilename; }
+
+    @Override
+    public String getContentType() { return contentType; }
+
+    @Override
+    public boolean isEmpty() { return getSize() == 0; }
+
+    @Override
+    public long getSize() {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+        return Files.readAllBytes(file);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException {
+        Files.copy(file, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,276 @@
+package com.justresults.hirepay.util;
+
+import com.justresults.hirepay.config.StorageProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Watches the volume under storage.folder and the latency of the store itself, and decides
+ * whether a new write may start. Free space and inodes come from the file system; write and
+ * read latencies are timed around the real commit and open calls of DocumentStorageService
+ * over a rolling window of a few minutes. Commits are timed per MiB, so a few large
+ * documents do not make the store look slow to small ones.
+ * <p>
+ * Inode counts come from df, which can hang on a sick mount; it runs on a background
+ * thread every 30s and callers only ever see the last reading.
+ * <p>
+ * Writes are refused while the volume is below its free space or inode floor, since they
+ * would only fail part-way through. While writes are merely slow they queue for a few slots,
+ * so a struggling disk sees a handful of uploads at a time instead of all of them.
+ */
+@Component
+public class StorageHealthMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageHealthMonitor.class);
+    private static final long INODE_SAMPLE_INTERVAL_SECONDS = 30;
+    private static final long DF_TIMEOUT_SECONDS = 5;
+    private static final long MIB = 1024 * 1024;
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final Path root;
+    private final FileStore fileStore;
+    private final StorageProperties.Health settings;
+    private final MeterRegistry meterRegistry;
+    private final Timer writes;
+    private final Timer reads;
+    private final Semaphore slowWriteSlots;
+
+    private final ScheduledExecutorService inodeSampler;
+    private volatile InodeUsage inodes;
+
+    public StorageHealthMonitor(StorageProperties props, MeterRegistry meterRegistry) throws IOException {
+        this.root = Paths.get(props.getFolder()).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        this.fileStore = Files.getFileStore(root);
+        this.settings = props.getHealth();
+        this.meterRegistry = meterRegistry;
+        this.slowWriteSlots = new Semaphore(Math.max(1, settings.getSlowWriteConcurrency()), true);
+        this.writes = latencyTimer("write", "Time to commit a document to storage, per MiB for documents over 1MiB", meterRegistry);
+        this.reads = latencyTimer("read", "Time to open a stored document for reading", meterRegistry);
+        Gauge.builder("hirepay.storage.free", this, StorageHealthMonitor::getUsableSpace)
+                .description("Usable bytes left on the storage volume")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.inodeSampler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "storage-inodes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        inodeSampler.scheduleWithFixedDelay(this::sampleInodes, 0, INODE_SAMPLE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        inodeSampler.shutdownNow();
+    }
+
+    /**
+     * Rolling percentiles; samples older than the expiry drop out, so a disk that has
+     * recovered stops looking slow a few minutes later.
+     */
+    private static Timer latencyTimer(String operation, String description, MeterRegistry meterRegistry) {
+        return Timer.builder("hirepay.storage.latency")
+                .description(description)
+                .tag("operation", operation)
+                .publishPercentiles(PERCENTILES)
+                .distributionStatisticExpiry(Duration.ofMinutes(2))
+                .distributionStatisticBufferLength(3)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record a commit of {@code bytes}. Documents over 1MiB are recorded as their time per
+     * MiB, so the write threshold means the same for a form and a large deliverable.
+     */
+    public void recordWrite(long startedNanos, long bytes) {
+        long elapsed = System.nanoTime() - startedNanos;
+        writes.record(bytes > MIB ? (long) (elapsed * ((double) MIB / bytes)) : elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRead(long startedNanos) {
+        reads.record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Wait for permission to write one document. The permit must be closed once the
+     * document is committed or abandoned.
+     *
+     * @throws StorageUnavailableException if the volume is nearly full, or writes are slow
+     *         and no slot frees up within storage.health.queue-timeout
+     */
+    public WritePermit admitWrite() {
+        checkSpace(0);
+        if (latency(writes, 0.95).compareTo(settings.getMaxWriteLatency()) <= 0) {
+            return () -> { };
+        }
+        boolean acquired;
+        try {
+            acquired = slowWriteSlots.tryAcquire(settings.getQueueTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            throw refused("latency", "Storage is responding slowly; please retry the upload shortly");
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                slowWriteSlots.release();
+            }
+        };
+    }
+
+    /**
+     * Refuse a write of the given size if it would take the volume below its free space or
+     * inode floor.
+     */
+    public void checkSpace(long bytes) {
+        long usable = getUsableSpace();
+        if (usable >= 0 && usable - bytes < settings.getMinFreeSpace().toBytes()) {
+            log.warn("Refusing a {} byte write: {} bytes usable under {}", bytes, usable, root);
+            throw refused("space", "Storage is almost full; uploads are paused");
+        }
+        InodeUsage inodeUsage = getInodes();
+        if (inodeUsage != null && inodeUsage.free() < settings.getMinFreeInodes()) {
+            log.warn("Refusing a write: {} inodes left under {}", inodeUsage.free(), root);
+            throw refused("inodes", "Storage is almost full; uploads are paused");
+        }
+    }
+
+    /**
+     * Thresholds currently crossed, for the health indicator; empty when storage is healthy.
+     */
+    public List<String> getProblems() {
+        List<String> problems = new ArrayList<>();
+        long usable = getUsableSpace();
+        if (usable >= 0 && usable < settings.getMinFreeSpace().toBytes()) {
+            problems.add("usable space " + DataSize.ofBytes(usable).toMegabytes() + "MB is below "
+                    + settings.getMinFreeSpace().toMegabytes() + "MB");
+        }
+        InodeUsage inodeUsage = getInodes();
+        if (inodeUsage != null && inodeUsage.free() < settings.getMinFreeInodes()) {
+            problems.add(inodeUsage.free() + " free inodes is below " + settings.getMinFreeInodes());
+        }
+        Duration write = latency(writes, 0.95);
+        if (write.compareTo(settings.getMaxWriteLatency()) > 0) {
+            problems.add("p95 write latency " + write.toMillis() + "ms is above " + settings.getMaxWriteLatency().toMillis() + "ms");
+        }
+        Duration read = latency(reads, 0.95);
+        if (read.compareTo(settings.getMaxReadLatency()) > 0) {
+            problems.add("p95 read latency " + read.toMillis() + "ms is above " + settings.getMaxReadLatency().toMillis() + "ms");
+        }
+        return problems;
+    }
+
+    public Path getRoot() { return root; }
+
+    // -1 when the file store cannot be queried
+    public long getUsableSpace() {
+        try {
+            return fileStore.getUsableSpace();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    public long getTotalSpace() {
+        try {
+            return fileStore.getTotalSpace();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /** Last reading; null where the file system does not report inodes or none was taken yet. */
+    public InodeUsage getInodes() {
+        return inodes;
+    }
+
+    public Duration getWriteLatency(double percentile) {
+        return latency(writes, percentile);
+    }
+
+    public Duration getReadLatency(double percentile) {
+        return latency(reads, percentile);
+    }
+
+    private static Duration latency(Timer timer, double percentile) {
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                return Duration.ofNanos((long) value.value(TimeUnit.NANOSECONDS));
+            }
+        }
+        return Duration.ZERO;
+    }
+
+    // Java has no portable inode count, so ask POSIX df; gives up for good where df is missing
+    private void sampleInodes() {
+        try {
+            Process df = new ProcessBuilder("df", "-Pi", root.toString()).redirectErrorStream(true).start();
+            // df prints a couple of lines, well within the pipe buffer, so it can finish unread
+            if (!df.waitFor(DF_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                df.destroyForcibly();
+                log.warn("df did not answer within {}s for {}; keeping the last inode reading", DF_TIMEOUT_SECONDS, root);
+                return;
+            }
+            if (df.exitValue() != 0) {
+                return;
+            }
+            String output;
+            try (InputStream in = df.getInputStream()) {
+                output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            String[] lines = output.trim().split("\n");
+            String[] columns = lines[lines.length - 1].trim().split("\\s+");
+            long total = Long.parseLong(columns[1]);
+            long free = Long.parseLong(columns[3]);
+            // file systems without a fixed inode table report 0
+            inodes = total > 0 ? new InodeUsage(total, free) : null;
+        } catch (IOException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            log.info("Inode counts unavailable for {}: {}", root, e.getMessage());
+            inodes = null;
+            inodeSampler.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private StorageUnavailableException refused(String reason, String message) {
+        meterRegistry.counter("hirepay.storage.writes.refused", "reason", reason).increment();
+        return new StorageUnavailableException(message, settings.getRetryAfter());
+    }
+
+    public record InodeUsage(long total, long free) { }
+
+    /**
+     * Held for the duration of one write.
+     */
+    public interface WritePermit extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
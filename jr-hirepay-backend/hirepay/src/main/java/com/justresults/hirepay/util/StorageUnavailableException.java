@@ -0,0 +1,14 @@
+package com.justresults.hirepay.util;
+
+import java.time.Duration;
+
+public class StorageUnavailableException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public StorageUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() { return retryAfter; }
+}
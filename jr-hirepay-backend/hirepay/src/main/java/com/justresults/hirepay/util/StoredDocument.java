@@ -0,0 +1,74 @@
+package com.justresults.hirepay.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Result of writing a document through {@link DocumentStorageService}: where it landed
+ * plus the size, SHA-256 and sniffed content type computed while the bytes were written.
+ * The same fields are persisted as {@code ProcedureDocument.metadataJson}.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class StoredDocument {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private String location;
+    private String originalFilename;
+    private String contentType;
+    private long size;
+    private String sha256;
+
+    public StoredDocument() { }
+
+    public StoredDocument(String location, String originalFilename, String contentType, long size, String sha256) {
+        this.location = location;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+        this.size = size;
+        this.sha256 = sha256;
+    }
+
+    /**
+     * Rebuild the stored-document view of a persisted record; returns null when the
+     * record predates metadata capture or the JSON cannot be read.
+     */
+    public static StoredDocument fromMetadataJson(String location, String metadataJson) {
+        if (metadataJson == null || metadataJson.isBlank()) {
+            return null;
+        }
+        try {
+            StoredDocument stored = MAPPER.readValue(metadataJson, StoredDocument.class);
+            stored.location = location;
+            return stored;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    public String toMetadataJson() {
+        try {
+            return MAPPER.writeValueAsString(this);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize document metadata", e);
+        }
+    }
+
+    // location is stored in its own column, keep it out of the JSON
+    @JsonIgnore
+    public String getLocation() { return location; }
+
+    public String getOriginalFilename() { return originalFilename; }
+    public void setOriginalFilename(String originalFilename) { this.originalFilename = originalFilename; }
+
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public String getSha256() { return sha256; }
+    public void setSha256(String sha256) { this.sha256 = sha256; }
+}
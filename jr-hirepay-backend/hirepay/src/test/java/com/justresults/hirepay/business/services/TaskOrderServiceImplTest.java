@@ -0,0 +1,95 @@
+package com.justresults.hirepay.business.services;
+
+import com.justresults.hirepay.domain.Procedure;
+import com.justresults.hirepay.domain.ProcedureDocument;
+import com.justresults.hirepay.enumeration.ProcedureStatus;
+import com.justresults.hirepay.enumeration.ProductType;
+import com.justresults.hirepay.repository.ProcedureRepository;
+import com.justresults.hirepay.util.DocumentStorageService;
+import com.justresults.hirepay.util.PdfRenderingEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:task-order-test;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "security.download-url.secret=task-order-test-download-secret",
+        "storage.gc.enabled=false"
+})
+class TaskOrderServiceImplTest {
+
+    @TempDir
+    static Path storageRoot;
+
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) {
+        registry.add("storage.folder", () -> storageRoot.toString());
+    }
+
+    @Autowired
+    private TaskOrderService taskOrderService;
+
+    @Autowired
+    private ProcedureRepository procedureRepository;
+
+    @Autowired
+    private DocumentStorageService documentStorageService;
+
+    @MockitoSpyBean
+    private PdfRenderingEngine pdfRenderingEngine;
+
+    @MockitoSpyBean
+    private DocumentVersionService documentVersionService;
+
+    @Test
+    void retryAfterAFailedWriteReusesTheRender() throws IOException {
+        Procedure procedure = approvedProcedure();
+        clearInvocations(pdfRenderingEngine);
+        doThrow(new IllegalStateException("write failed")).doCallRealMethod()
+                .when(documentVersionService).saveNewVersion(any());
+
+        assertThatThrownBy(() -> taskOrderService.generateTaskOrder(procedure.getUuid(), "a@x.com"))
+                .hasMessage("write failed");
+        ProcedureDocument document = taskOrderService.generateTaskOrder(procedure.getUuid(), "a@x.com");
+
+        verify(pdfRenderingEngine, times(1)).render(eq("task-order"), anyMap(), any());
+        assertThat(procedureRepository.findByUuid(procedure.getUuid()))
+                .hasValueSatisfying(p -> assertThat(p.getStatus()).isEqualTo(ProcedureStatus.TASK_ORDER_GENERATED));
+        try (InputStream in = documentStorageService.openContent(document.getLocation()).open()) {
+            assertThat(new String(in.readNBytes(5), StandardCharsets.US_ASCII)).isEqualTo("%PDF-");
+        }
+    }
+
+    private Procedure approvedProcedure() {
+        Procedure procedure = new Procedure();
+        procedure.setProduct(ProductType.HIRING);
+        procedure.setStatus(ProcedureStatus.PAYMENT_TAX_APPROVED);
+        procedure.setConsultantEmail("consultant@x.com");
+        procedure.setConsultantName("Con Sultant");
+        return procedureRepository.save(procedure);
+    }
+}
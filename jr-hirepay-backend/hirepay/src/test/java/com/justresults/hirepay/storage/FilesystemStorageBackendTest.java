@@ -0,0 +1,57 @@
+package com.justresults.hirepay.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FilesystemStorageBackendTest extends StorageBackendContractTest {
+
+    @TempDir
+    Path root;
+
+    private FilesystemStorageBackend backend;
+
+    @BeforeEach
+    void createBackend() throws IOException {
+        backend = new FilesystemStorageBackend(root);
+    }
+
+    @Override
+    protected StorageBackend backend() {
+        return backend;
+    }
+
+    @Test
+    void hiddenEntriesAreNotKeys() throws IOException {
+        Files.createDirectories(root.resolve(".spool"));
+        Files.writeString(root.resolve(".spool/upload.part"), "partial");
+        Files.createDirectories(root.resolve("p1"));
+        Files.writeString(root.resolve("p1/doc.pdf"), "pdf");
+
+        try (Stream<String> keys = backend.list("")) {
+            assertThat(keys).containsExactly("p1/doc.pdf");
+        }
+    }
+
+    @Test
+    void keysCannotEscapeTheRoot() {
+        assertThatThrownBy(() -> backend.open("../outside.pdf")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void localPathPointsAtTheStoredFile() throws IOException {
+        Files.createDirectories(root.resolve("p1"));
+        Files.writeString(root.resolve("p1/doc.pdf"), "pdf");
+
+        assertThat(backend.localPath("p1/doc.pdf")).contains(root.resolve("p1/doc.pdf").toAbsolutePath().normalize());
+        assertThat(backend.localPath("p1/missing.pdf")).isEmpty();
+    }
+}
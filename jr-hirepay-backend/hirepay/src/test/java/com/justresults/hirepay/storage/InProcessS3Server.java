@@ -0,0 +1,276 @@
+package com.justresults.hirepay.storage;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Just enough of the S3 REST API, path-style and for a single bucket, to run
+ * {@link S3StorageBackend} against: PutObject (plain or aws-chunked bodies), GetObject with
+ * Range, HeadObject, DeleteObject and paginated ListObjectsV2. Requests are not
+ * authenticated. Listings are cut into small pages so pagination is exercised.
+ */
+class InProcessS3Server implements AutoCloseable {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private final String bucket;
+    private final int pageSize;
+    private final NavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    private final HttpServer server;
+
+    InProcessS3Server(String bucket, int pageSize) throws IOException {
+        this.bucket = bucket;
+        this.pageSize = pageSize;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Object keys as the bucket holds them, for checking what a backend wrote.
+     */
+    NavigableMap<String, StoredObject> objects() {
+        return objects;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String bucketPath = "/" + bucket;
+            if (!path.equals(bucketPath) && !path.startsWith(bucketPath + "/")) {
+                error(exchange, 404, "NoSuchBucket");
+                return;
+            }
+            String key = path.length() > bucketPath.length() + 1 ? path.substring(bucketPath.length() + 1) : "";
+            String method = exchange.getRequestMethod();
+            if (key.isEmpty()) {
+                if (method.equals("GET")) {
+                    list(exchange, query(exchange.getRequestURI().getRawQuery()));
+                } else {
+                    error(exchange, 405, "MethodNotAllowed");
+                }
+                return;
+            }
+            switch (method) {
+                case "PUT" -> put(exchange, key);
+                case "GET" -> get(exchange, key, false);
+                case "HEAD" -> get(exchange, key, true);
+                case "DELETE" -> {
+                    objects.remove(key);
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> error(exchange, 405, "MethodNotAllowed");
+            }
+        }
+    }
+
+    private void put(HttpExchange exchange, String key) throws IOException {
+        Headers headers = exchange.getRequestHeaders();
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        String encoding = headers.getFirst("Content-Encoding");
+        String sha256 = headers.getFirst("x-amz-content-sha256");
+        if ((encoding != null && encoding.contains("aws-chunked")) || (sha256 != null && sha256.startsWith("STREAMING-"))) {
+            body = decodeChunked(body);
+        }
+        String etag = "\"" + HexFormat.of().formatHex(md5(body)) + "\"";
+        objects.put(key, new StoredObject(body, Instant.now().truncatedTo(ChronoUnit.SECONDS), etag));
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void get(HttpExchange exchange, String key, boolean headOnly) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            if (headOnly) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                error(exchange, 404, "NoSuchKey");
+            }
+            return;
+        }
+        byte[] data = object.data();
+        int from = 0;
+        int to = data.length - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && !headOnly) {
+            Matcher m = RANGE.matcher(range);
+            if (!m.matches() || Integer.parseInt(m.group(1)) >= data.length) {
+                error(exchange, 416, "InvalidRange");
+                return;
+            }
+            from = Integer.parseInt(m.group(1));
+            if (!m.group(2).isEmpty()) {
+                to = Math.min(to, Integer.parseInt(m.group(2)));
+            }
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + data.length);
+        }
+        Headers response = exchange.getResponseHeaders();
+        response.set("ETag", object.etag());
+        response.set("Last-Modified", HTTP_DATE.format(object.lastModified()));
+        response.set("Content-Type", "application/octet-stream");
+        int length = to - from + 1;
+        if (headOnly) {
+            response.set("Content-Length", Integer.toString(data.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data, from, length);
+        }
+    }
+
+    private void list(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String prefix = query.getOrDefault("prefix", "");
+        String token = query.get("continuation-token");
+        String after = token == null ? null : new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int maxKeys = Math.min(pageSize, Integer.parseInt(query.getOrDefault("max-keys", "1000")));
+
+        StringBuilder contents = new StringBuilder();
+        int count = 0;
+        String last = null;
+        boolean truncated = false;
+        NavigableMap<String, StoredObject> candidates = after == null ? objects : objects.tailMap(after, false);
+        for (Map.Entry<String, StoredObject> entry : candidates.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                if (entry.getKey().compareTo(prefix) > 0) break;
+                continue;
+            }
+            if (count == maxKeys) {
+                truncated = true;
+                break;
+            }
+            StoredObject object = entry.getValue();
+            contents.append("<Contents><Key>").append(xml(entry.getKey())).append("</Key>")
+                    .append("<LastModified>").append(DateTimeFormatter.ISO_INSTANT.format(object.lastModified())).append("</LastModified>")
+                    .append("<ETag>").append(xml(object.etag())).append("</ETag>")
+                    .append("<Size>").append(object.data().length).append("</Size>")
+                    .append("<StorageClass>STANDARD</StorageClass></Contents>");
+            last = entry.getKey();
+            count++;
+        }
+
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>").append(xml(bucket)).append("</Name>")
+                .append("<Prefix>").append(xml(prefix)).append("</Prefix>")
+                .append("<KeyCount>").append(count).append("</KeyCount>")
+                .append("<MaxKeys>").append(maxKeys).append("</MaxKeys>")
+                .append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (token != null) {
+            xml.append("<ContinuationToken>").append(xml(token)).append("</ContinuationToken>");
+        }
+        if (truncated) {
+            String next = Base64.getUrlEncoder().withoutPadding().encodeToString(last.getBytes(StandardCharsets.UTF_8));
+            xml.append("<NextContinuationToken>").append(next).append("</NextContinuationToken>");
+        }
+        xml.append(contents).append("</ListBucketResult>");
+        send(exchange, 200, xml.toString());
+    }
+
+    private static void error(HttpExchange exchange, int status, String code) throws IOException {
+        send(exchange, status, "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code
+                + "</Code><Message>" + code + "</Message></Error>");
+    }
+
+    private static void send(HttpExchange exchange, int status, String xml) throws IOException {
+        byte[] body = xml.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // "<hex size>[;extensions]\r\n<bytes>\r\n" until a zero-size chunk, then trailers
+    private static byte[] decodeChunked(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length);
+        int pos = 0;
+        while (pos < body.length) {
+            int lineEnd = indexOfCrlf(body, pos);
+            String header = new String(body, pos, lineEnd - pos, StandardCharsets.US_ASCII);
+            int semicolon = header.indexOf(';');
+            int size = Integer.parseInt((semicolon < 0 ? header : header.substring(0, semicolon)).trim(), 16);
+            pos = lineEnd + 2;
+            if (size == 0) {
+                break;
+            }
+            out.write(body, pos, size);
+            pos += size + 2;
+        }
+        return out.toByteArray();
+    }
+
+    private static int indexOfCrlf(byte[] body, int from) {
+        for (int i = from; i < body.length - 1; i++) {
+            if (body[i] == '\r' && body[i + 1] == '\n') {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Malformed aws-chunked body");
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static String xml(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static byte[] md5(byte[] data) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    record StoredObject(byte[] data, Instant lastModified, String etag) { }
+}
@@ -0,0 +1,78 @@
+package com.justresults.hirepay.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the backend contract over real HTTP, through the AWS SDK, against an in-process
+ * stand-in for S3. The backend shares its bucket under a key prefix, as it can in production.
+ */
+class S3StorageBackendTest extends StorageBackendContractTest {
+
+    private static final String BUCKET = "hirepay-documents";
+    private static final String KEY_PREFIX = "hirepay";
+
+    private InProcessS3Server server;
+    private S3StorageBackend backend;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new InProcessS3Server(BUCKET, 4);
+        S3Client client = S3Client.builder()
+                .endpointOverride(server.endpoint())
+                .region(Region.US_EAST_1)
+                .forcePathStyle(true)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                .build();
+        backend = new S3StorageBackend(client, BUCKET, KEY_PREFIX);
+    }
+
+    @AfterEach
+    void stopServer() {
+        backend.close();
+        server.close();
+    }
+
+    @Override
+    protected StorageBackend backend() {
+        return backend;
+    }
+
+    @Test
+    void keysAreStoredBelowThePrefix() throws IOException {
+        byte[] content = "pdf".getBytes(StandardCharsets.UTF_8);
+        backend.put("p1/doc.pdf", new ByteArrayInputStream(content), content.length);
+
+        assertThat(server.objects()).containsOnlyKeys("hirepay/p1/doc.pdf");
+    }
+
+    @Test
+    void objectsOutsideThePrefixAreNotListed() throws IOException {
+        byte[] content = "other".getBytes(StandardCharsets.UTF_8);
+        backend.put("p1/doc.pdf", new ByteArrayInputStream(content), content.length);
+        server.objects().put("other-app/p1/doc.pdf", server.objects().get("hirepay/p1/doc.pdf"));
+
+        try (Stream<String> keys = backend.list("")) {
+            assertThat(keys).containsExactly("p1/doc.pdf");
+        }
+    }
+
+    @Test
+    void openingAMissingKeyIsFileNotFound() {
+        assertThatThrownBy(() -> backend.open("p1/missing.pdf")).isInstanceOf(FileNotFoundException.class);
+    }
+}
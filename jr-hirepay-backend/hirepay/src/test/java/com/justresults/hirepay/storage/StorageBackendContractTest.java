@@ -0,0 +1,173 @@
+package com.justresults.hirepay.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * What every {@link StorageBackend} must do, run against each implementation by a subclass
+ * that supplies a fresh, empty backend.
+ */
+abstract class StorageBackendContractTest {
+
+    @TempDir
+    Path scratch;
+
+    protected abstract StorageBackend backend();
+
+    @Test
+    void putFromStreamThenOpen() throws IOException {
+        byte[] content = bytes(10_000);
+        backend().put("p1/doc.pdf", new ByteArrayInputStream(content), content.length);
+
+        assertThat(read(backend().open("p1/doc.pdf"))).isEqualTo(content);
+    }
+
+    @Test
+    void putFromPathConsumesTheSource() throws IOException {
+        Path source = scratch.resolve("upload.part");
+        Files.write(source, text("hello"));
+
+        backend().put("p1/hello.txt", source);
+
+        assertThat(source).doesNotExist();
+        assertThat(read(backend().open("p1/hello.txt"))).isEqualTo(text("hello"));
+    }
+
+    @Test
+    void putReplacesAnExistingKey() throws IOException {
+        put("p1/doc.txt", text("first version"));
+        put("p1/doc.txt", text("second"));
+
+        assertThat(read(backend().open("p1/doc.txt"))).isEqualTo(text("second"));
+        assertThat(backend().stat("p1/doc.txt")).get().extracting(StorageObjectInfo::getSize).isEqualTo(6L);
+    }
+
+    @Test
+    void rangedOpenReturnsExactlyTheRange() throws IOException {
+        byte[] content = bytes(5_000);
+        put("p1/doc.pdf", content);
+
+        assertThat(read(backend().open("p1/doc.pdf", 100, 250))).isEqualTo(slice(content, 100, 250));
+        assertThat(read(backend().open("p1/doc.pdf", 0, 1))).isEqualTo(slice(content, 0, 1));
+        assertThat(read(backend().open("p1/doc.pdf", 4_000, 1_000))).isEqualTo(slice(content, 4_000, 1_000));
+        assertThat(read(backend().open("p1/doc.pdf", 10, 0))).isEmpty();
+    }
+
+    @Test
+    void statReportsSizeAndModificationTime() throws IOException {
+        put("p1/doc.pdf", bytes(1234));
+
+        Optional<StorageObjectInfo> info = backend().stat("p1/doc.pdf");
+
+        assertThat(info).isPresent();
+        assertThat(info.get().getSize()).isEqualTo(1234);
+        assertThat(info.get().getLastModified()).isNotNull();
+        assertThat(backend().exists("p1/doc.pdf")).isTrue();
+    }
+
+    @Test
+    void missingKeysAreAbsent() throws IOException {
+        assertThat(backend().stat("p1/missing.pdf")).isEmpty();
+        assertThat(backend().exists("p1/missing.pdf")).isFalse();
+        assertThatThrownBy(() -> read(backend().open("p1/missing.pdf"))).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void deleteSaysWhetherSomethingWasDeleted() throws IOException {
+        put("p1/doc.pdf", bytes(10));
+
+        assertThat(backend().delete("p1/doc.pdf")).isTrue();
+        assertThat(backend().exists("p1/doc.pdf")).isFalse();
+        assertThat(backend().delete("p1/doc.pdf")).isFalse();
+    }
+
+    @Test
+    void listReturnsEveryKeyInLexicographicOrder() throws IOException {
+        // '-' sorts before '/', which sorts before letters: a naive directory walk gets this wrong
+        List<String> keys = List.of("ab.pdf", "a/c/d.pdf", "a-b.pdf", "a/b.pdf", "b/a.pdf", "a/c.pdf");
+        for (String key : keys) {
+            put(key, text(key));
+        }
+
+        List<String> expected = new ArrayList<>(keys);
+        expected.sort(null);
+        assertThat(list("")).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void listOnlyReturnsKeysUnderThePrefix() throws IOException {
+        for (String key : List.of("a/b.pdf", "a/c/d.pdf", "ab.pdf", "b/a.pdf")) {
+            put(key, text(key));
+        }
+
+        assertThat(list("a/")).containsExactly("a/b.pdf", "a/c/d.pdf");
+        assertThat(list("a")).containsExactly("a/b.pdf", "a/c/d.pdf", "ab.pdf");
+        assertThat(list("c/")).isEmpty();
+    }
+
+    @Test
+    void listOfAnEmptyStoreIsEmpty() throws IOException {
+        assertThat(list("")).isEmpty();
+    }
+
+    @Test
+    void listSpansManyKeys() throws IOException {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            String key = "p" + (i % 3) + "/" + i + ".txt";
+            put(key, text(key));
+            expected.add(key);
+        }
+        expected.sort(null);
+
+        assertThat(list("")).containsExactlyElementsOf(expected);
+    }
+
+    private void put(String key, byte[] content) throws IOException {
+        backend().put(key, new ByteArrayInputStream(content), content.length);
+    }
+
+    private List<String> list(String prefix) throws IOException {
+        try (Stream<String> keys = backend().list(prefix)) {
+            return keys.toList();
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31 + i / 7);
+        }
+        return content;
+    }
+
+    private static byte[] slice(byte[] content, int offset, int length) {
+        byte[] slice = new byte[length];
+        System.arraycopy(content, offset, slice, 0, length);
+        return slice;
+    }
+
+    private static byte[] text(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,40 @@
+-- Running storage totals per uploader (USER, owner = actor_email) and per procedure
+-- (PROCEDURE, owner = procedure uuid). Bytes are document sizes as uploaded, taken from
+-- metadata_json; documents without metadata, or whose metadata is not valid JSON with a
+-- numeric size (some legacy rows), count as files of size 0.
+-- Run once before enabling quotas on a database that already holds documents.
+
+CREATE TABLE IF NOT EXISTS storage_usage (
+    id BIGSERIAL PRIMARY KEY,
+    scope VARCHAR(16) NOT NULL,
+    owner VARCHAR(255) NOT NULL,
+    bytes BIGINT NOT NULL DEFAULT 0,
+    files BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_storage_usage_scope_owner UNIQUE (scope, owner)
+);
+
+-- Session-local helper: a single malformed metadata_json must not abort the whole migration
+CREATE OR REPLACE FUNCTION pg_temp.document_size(metadata TEXT) RETURNS BIGINT AS $$
+BEGIN
+    RETURN (metadata::json ->> 'size')::BIGINT;
+EXCEPTION WHEN others THEN
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+INSERT INTO storage_usage (scope, owner, bytes, files)
+SELECT 'USER', pd.actor_email,
+       COALESCE(SUM(pg_temp.document_size(pd.metadata_json)), 0), COUNT(*)
+FROM procedure_documents pd
+WHERE pd.actor_email IS NOT NULL
+GROUP BY pd.actor_email
+ON CONFLICT (scope, owner) DO UPDATE SET bytes = EXCLUDED.bytes, files = EXCLUDED.files;
+
+INSERT INTO storage_usage (scope, owner, bytes, files)
+SELECT 'PROCEDURE', p.uuid,
+       COALESCE(SUM(pg_temp.document_size(pd.metadata_json)), 0), COUNT(*)
+FROM procedure_documents pd
+JOIN procedures p ON p.id = pd.procedure_id
+GROUP BY p.uuid
+ON CONFLICT (scope, owner) DO UPDATE SET bytes = EXCLUDED.bytes, files = EXCLUDED.files;
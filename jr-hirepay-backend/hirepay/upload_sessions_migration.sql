@@ -0,0 +1,20 @@
+-- Resumable (chunked) uploads
+-- received_bytes is the offset the next chunk must start at; document_id is set on finalize.
+
+CREATE TABLE IF NOT EXISTS upload_sessions (
+    id VARCHAR(36) PRIMARY KEY,
+    target VARCHAR(32) NOT NULL,
+    procedure_uuid VARCHAR(64),
+    doc_reference VARCHAR(64) NOT NULL,
+    filename VARCHAR(255) NOT NULL,
+    content_type VARCHAR(128),
+    total_size BIGINT NOT NULL,
+    received_bytes BIGINT NOT NULL,
+    actor_email VARCHAR(128) NOT NULL,
+    notes TEXT,
+    document_id BIGINT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_upload_sessions_updated_at ON upload_sessions (updated_at);